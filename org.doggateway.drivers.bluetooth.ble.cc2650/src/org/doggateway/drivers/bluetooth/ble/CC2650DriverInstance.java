@@ -27,6 +27,7 @@ import javax.measure.unit.UnitFormat;
 import org.doggateway.drivers.bluetooth.ble.network.BLEDriverInstance;
 import org.doggateway.drivers.bluetooth.ble.network.info.BLEDeviceRegistration;
 import org.doggateway.drivers.bluetooth.ble.network.info.CharacteristicMonitorSpec;
+import org.doggateway.drivers.bluetooth.ble.network.info.CharacteristicMonitorSpec.DeliveryMode;
 import org.doggateway.drivers.bluetooth.ble.network.info.ServiceMonitorSpec;
 import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLENetwork;
 import org.osgi.framework.BundleContext;
@@ -68,6 +69,7 @@ public class CC2650DriverInstance extends BLEDriverInstance
 	public static final String MOVEMENT_SENSOR_SERVICE_UUID = "f000aa80-0451-4000-b000-000000000000";
 	public static final String MOVEMENT_SENSOR_CHAR_UUID = "f000aa81-0451-4000-b000-000000000000";
 	public static final String MOVEMENT_SENSOR_CONFIG_UUID = "f000aa82-0451-4000-b000-000000000000";
+	public static final String MOVEMENT_SENSOR_PERIOD_UUID = "f000aa83-0451-4000-b000-000000000000";
 	public static final String MOVEMENT_SENSOR_ENABLE_UUID = "f0002902-0451-4000-b000-000000000000";
 	public static final byte[] MOVEMENT_SENSOR_CONFIG = { (byte) 0xff,
 			(byte) 0x02 };
@@ -77,21 +79,25 @@ public class CC2650DriverInstance extends BLEDriverInstance
 	public static final String IR_SENSOR_SERVICE_UUID = "f000aa00-0451-4000-b000-000000000000";
 	public static final String IR_SENSOR_CHAR_UUID = "f000aa01-0451-4000-b000-000000000000";
 	public static final String IR_SENSOR_CONFIG_UUID = "f000aa02-0451-4000-b000-000000000000";
+	public static final String IR_SENSOR_PERIOD_UUID = "f000aa03-0451-4000-b000-000000000000";
 	public static final byte[] IR_SENSOR_CONFIG = { (byte) 0x01 };
 
 	public static final String HUMIDITY_SENSOR_SERVICE_UUID = "f000aa20-0451-4000-b000-000000000000";
 	public static final String HUMIDITY_SENSOR_CHAR_UUID = "f000aa21-0451-4000-b000-000000000000";
 	public static final String HUMIDITY_SENSOR_CONFIG_UUID = "f000aa22-0451-4000-b000-000000000000";
+	public static final String HUMIDITY_SENSOR_PERIOD_UUID = "f000aa23-0451-4000-b000-000000000000";
 	public static final byte[] HUMIDITY_SENSOR_CONFIG = { (byte) 0x01 };
 
 	public static final String PRESSURE_SENSOR_SERVICE_UUID = "f000aa40-0451-4000-b000-000000000000";
 	public static final String PRESSURE_SENSOR_CHAR_UUID = "f000aa41-0451-4000-b000-000000000000";
 	public static final String PRESSURE_SENSOR_CONFIG_UUID = "f000aa42-0451-4000-b000-000000000000";
+	public static final String PRESSURE_SENSOR_PERIOD_UUID = "f000aa43-0451-4000-b000-000000000000";
 	public static final byte[] PRESSURE_SENSOR_CONFIG = { (byte) 0x01 };
 
 	public static final String OPTICAL_SENSOR_SERVICE_UUID = "f000aa70-0451-4000-b000-000000000000";
 	public static final String OPTICAL_SENSOR_CHAR_UUID = "f000aa71-0451-4000-b000-000000000000";
 	public static final String OPTICAL_SENSOR_CONFIG_UUID = "f000aa72-0451-4000-b000-000000000000";
+	public static final String OPTICAL_SENSOR_PERIOD_UUID = "f000aa73-0451-4000-b000-000000000000";
 	public static final byte[] OPTICAL_SENSOR_CONFIG = { (byte) 0x01 };
 
 	public static final String IO_SERVICE_UUID = "f000aa64-0451-4000-b000-000000000000";
@@ -99,6 +105,30 @@ public class CC2650DriverInstance extends BLEDriverInstance
 	public static final String IO_CONFIG_UUID = "f000aa66-0451-4000-b000-000000000000";
 	public static final byte[] IO_CONFIG = { (byte) 0x01 };
 
+	// the sensor data characteristics, all supporting notifications, with
+	// the characteristic setting their notification period
+	private static final String[][] NOTIFYING_SENSORS = {
+			{ MOVEMENT_SENSOR_SERVICE_UUID, MOVEMENT_SENSOR_CHAR_UUID,
+					MOVEMENT_SENSOR_PERIOD_UUID },
+			{ IR_SENSOR_SERVICE_UUID, IR_SENSOR_CHAR_UUID,
+					IR_SENSOR_PERIOD_UUID },
+			{ HUMIDITY_SENSOR_SERVICE_UUID, HUMIDITY_SENSOR_CHAR_UUID,
+					HUMIDITY_SENSOR_PERIOD_UUID },
+			{ PRESSURE_SENSOR_SERVICE_UUID, PRESSURE_SENSOR_CHAR_UUID,
+					PRESSURE_SENSOR_PERIOD_UUID },
+			{ OPTICAL_SENSOR_SERVICE_UUID, OPTICAL_SENSOR_CHAR_UUID,
+					OPTICAL_SENSOR_PERIOD_UUID } };
+
+	// the shortest notification period supported by each of the notifying
+	// sensors above, in the same order
+	private static final int[] MIN_PERIOD_MILLIS = { 100, 300, 100, 100,
+			800 };
+
+	// periods are expressed in units of 10ms, on a single byte
+	private static final int PERIOD_UNIT_MILLIS = 10;
+	private static final int MAX_PERIOD_MILLIS = 255
+			* CC2650DriverInstance.PERIOD_UNIT_MILLIS;
+
 	// the movement polling rate
 	private int movementPollingTimeMillis;
 
@@ -135,6 +165,26 @@ public class CC2650DriverInstance extends BLEDriverInstance
 			}
 		}
 
+		// sensor data is notified by the device, no need to poll it
+		for (String[] sensor : CC2650DriverInstance.NOTIFYING_SENSORS)
+		{
+			// get the service spec
+			ServiceMonitorSpec serviceSpec = this.bleDevReg
+					.getServiceSpec(sensor[0]);
+
+			// check not null
+			if (serviceSpec != null)
+			{
+				// get the characteristic spec
+				CharacteristicMonitorSpec charSpec = serviceSpec
+						.getCharacteristicSpec(sensor[1]);
+
+				// set the delivery mode
+				if (charSpec != null)
+					charSpec.setDeliveryMode(DeliveryMode.NOTIFY);
+			}
+		}
+
 		// register the device on the network driver
 		this.network.addDeviceRegistration(bleDevReg);
 
@@ -204,8 +254,8 @@ public class CC2650DriverInstance extends BLEDriverInstance
 	@Override
 	public void on()
 	{
-		// turn on the buzzer
-		this.network.writeValue(this.getDeviceMacAddress(),
+		// turn on the buzzer, without blocking the calling thread
+		this.network.writeValueAsync(this.getDeviceMacAddress(),
 				CC2650DriverInstance.IO_SERVICE_UUID,
 				CC2650DriverInstance.IO_CHAR_UUID, new byte[] { (byte) 0x07 });
 
@@ -218,8 +268,8 @@ public class CC2650DriverInstance extends BLEDriverInstance
 	@Override
 	public void off()
 	{
-		// turn off the buzzer
-		this.network.writeValue(this.getDeviceMacAddress(),
+		// turn off the buzzer, without blocking the calling thread
+		this.network.writeValueAsync(this.getDeviceMacAddress(),
 				CC2650DriverInstance.IO_SERVICE_UUID,
 				CC2650DriverInstance.IO_CHAR_UUID, new byte[] { (byte) 0x00 });
 
@@ -518,6 +568,47 @@ public class CC2650DriverInstance extends BLEDriverInstance
 
 	}
 
+	@Override
+	public void notificationsEnabled(String characteristicUUID,
+			String serviceUUID)
+	{
+		// notifications are sent at the sensor period, which is reset when
+		// the device is power-cycled: set it to the configured polling time
+		// at each subscription
+		for (int i = 0; i < CC2650DriverInstance.NOTIFYING_SENSORS.length; i++)
+		{
+			String[] sensor = CC2650DriverInstance.NOTIFYING_SENSORS[i];
+
+			if ((sensor[0].equalsIgnoreCase(serviceUUID))
+					&& (sensor[1].equalsIgnoreCase(characteristicUUID)))
+			{
+				// get the service spec
+				ServiceMonitorSpec serviceSpec = this.bleDevReg
+						.getServiceSpec(sensor[0]);
+
+				// get the characteristic spec
+				CharacteristicMonitorSpec charSpec = (serviceSpec != null)
+						? serviceSpec.getCharacteristicSpec(sensor[1]) : null;
+
+				if (charSpec != null)
+				{
+					// clamp the configured time to the supported range
+					int periodMillis = Math.max(
+							CC2650DriverInstance.MIN_PERIOD_MILLIS[i],
+							Math.min(CC2650DriverInstance.MAX_PERIOD_MILLIS,
+									charSpec.getMaximumAcceptablePollingTimeMillis()));
+
+					// write the period, after the subscription, without
+					// blocking the dispatching thread
+					this.network.writeValueAsync(this.getDeviceMacAddress(),
+							sensor[0], sensor[2],
+							new byte[] { (byte) (periodMillis
+									/ CC2650DriverInstance.PERIOD_UNIT_MILLIS) });
+				}
+			}
+		}
+	}
+
 	private void handleIRSensorData(byte[] value)
 	{
 
@@ -17,9 +17,13 @@
  */
 package org.doggateway.drivers.bluetooth.ble.gateway;
 
+import java.util.List;
+
+import org.doggateway.drivers.bluetooth.ble.network.BLEDiscoveryFilters;
 import org.doggateway.drivers.bluetooth.ble.network.BLEDriverInstance;
 import org.doggateway.drivers.bluetooth.ble.network.info.BLEDeviceRegistration;
-import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLEDiscoveryListener;
+import org.doggateway.drivers.bluetooth.ble.network.info.DiscoveredDevice;
+import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLEDiscoveryBatchListener;
 import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLENetwork;
 import org.osgi.service.log.LogService;
 
@@ -37,7 +41,7 @@ import it.polito.elite.dog.core.library.util.LogHelper;
  *
  */
 public class BLEAdapterDriverInstance extends BLEDriverInstance
-		implements BluetoothAdapter, BLEDiscoveryListener
+		implements BluetoothAdapter, BLEDiscoveryBatchListener
 {
 
 	public BLEAdapterDriverInstance(BLENetwork network,
@@ -54,8 +58,10 @@ public class BLEAdapterDriverInstance extends BLEDriverInstance
 		// initialize the state
 		this.initializeStates();
 
-		// add this driver instance as discovery listener
-		network.addDiscoveryListener(this);
+		// add this driver instance as discovery listener, only for devices
+		// not already managed
+		network.addDiscoveryBatchListener(this,
+				BLEDiscoveryFilters.unmanagedOnly());
 
 	}
 
@@ -111,13 +117,14 @@ public class BLEAdapterDriverInstance extends BLEDriverInstance
 	}
 
 	@Override
-	public void discoveredDevice(String devName, String devAddress, short rssi,
-			boolean managed)
+	public void discoveredDevices(List<DiscoveredDevice> discovered,
+			List<DiscoveredDevice> lost)
 	{
-		// notify the discovery if not already managed
-		if (!managed)
-			this.notifyDiscoveredDevice(devName, rssi, devAddress);
-
+		// notify the discovery, managed devices are already filtered out.
+		// Lost devices are not notified as adapters do not notify them.
+		for (DiscoveredDevice device : discovered)
+			this.notifyDiscoveredDevice(device.getName(), device.getRssi(),
+					device.getAddress());
 	}
 
 	@Override
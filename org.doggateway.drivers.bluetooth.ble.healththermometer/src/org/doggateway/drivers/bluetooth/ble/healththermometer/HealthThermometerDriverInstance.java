@@ -26,6 +26,9 @@ import javax.measure.unit.UnitFormat;
 
 import org.doggateway.drivers.bluetooth.ble.network.BLEDriverInstance;
 import org.doggateway.drivers.bluetooth.ble.network.info.BLEDeviceRegistration;
+import org.doggateway.drivers.bluetooth.ble.network.info.CharacteristicMonitorSpec;
+import org.doggateway.drivers.bluetooth.ble.network.info.CharacteristicMonitorSpec.DeliveryMode;
+import org.doggateway.drivers.bluetooth.ble.network.info.ServiceMonitorSpec;
 import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLENetwork;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.log.LogService;
@@ -40,7 +43,9 @@ import it.polito.elite.dog.core.library.model.statevalue.TemperatureStateValue;
 import it.polito.elite.dog.core.library.util.LogHelper;
 
 /**
- * Currently NOT WORKING due to missing support for notifications in tinyB library!!!
+ * Driver for Health Thermometer profile devices, temperature measurements are
+ * delivered by the device through GATT indications.
+ * 
  * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>no
  *
  */
@@ -50,9 +55,6 @@ public class HealthThermometerDriverInstance extends BLEDriverInstance
 	public static final String SERVICE_UUID = "00001809-0000-1000-8000-00805f9b34fb";
 	public static final String CHARACTERISTIC_UUID = "00002a1c-0000-1000-8000-00805f9b34fb";
 
-	// 0x2902
-	public static final String CONFIG_UUID = "00002a1d-0000-1000-8000-00805f9b34fb";
-
 	public HealthThermometerDriverInstance(BLENetwork bleNetwork,
 			ControllableDevice device, String gwMacAddress,
 			int pollingTimeMillis, BundleContext context)
@@ -131,32 +133,35 @@ public class HealthThermometerDriverInstance extends BLEDriverInstance
 	@Override
 	protected void addToNetworkDriver(BLEDeviceRegistration bleDevReg)
 	{
+		// temperature measurements are indicated by the device, the network
+		// driver subscribes the characteristic as soon as the device is
+		// reachable
+		this.enableCharacteristicsIndication(bleDevReg);
+
 		// add the ble registration to the driver
 		this.network.addDeviceRegistration(bleDevReg);
-
-		// try turning on the notification at ble level
-		// can be done on the sole basis of configuration information
-		// but since this is a device-specific driver, we can use explicit
-		// information here!?!?
-		this.enableCharacteristicsNotification();
-
 	}
 
 	@Override
 	public void newMessageFromHouse(String characteristicUUID,
 			String serviceUUID, byte[] value)
+	{
+		// wrap the value, no copy needed
+		this.newMessageFromHouse(characteristicUUID, serviceUUID,
+				ByteBuffer.wrap(value));
+	}
+
+	@Override
+	public void newMessageFromHouse(String characteristicUUID,
+			String serviceUUID, ByteBuffer value)
 	{
 		// only one characteristic is listened at now
-		if (characteristicUUID
+		if ((characteristicUUID
 				.equals(HealthThermometerDriverInstance.CHARACTERISTIC_UUID))
+				&& (value.limit() >= 5))
 		{
-			// 32bit IEEE floating point
-			byte[] tempraw = { value[1], value[2], value[3], value[4] };
-
-			// wrap the buffer
-			ByteBuffer buffer = ByteBuffer.wrap(tempraw);
-			// interpret the value
-			float tempValue = buffer.getFloat();
+			// 32bit IEEE floating point, after the flags byte, read in place
+			float tempValue = value.getFloat(1);
 
 			// update status and notify
 			this.updateAndNotify((double) tempValue);
@@ -184,16 +189,31 @@ public class HealthThermometerDriverInstance extends BLEDriverInstance
 				tState);
 	}
 
-	private void enableCharacteristicsNotification()
+	/**
+	 * Requires the temperature measurement characteristic to be delivered
+	 * through indications rather than by polling
+	 * 
+	 * @param bleDevReg
+	 *            The registration to update
+	 */
+	private void enableCharacteristicsIndication(
+			BLEDeviceRegistration bleDevReg)
 	{
-		// WARNING: this probably fails if the device is not in range, we shall
-		// probably address a way to enable characteristic notifications!
-		byte[] enable = { 0x01 };
-		this.network.writeValue(this.getDeviceMacAddress(),
-				HealthThermometerDriverInstance.SERVICE_UUID,
-				HealthThermometerDriverInstance.CONFIG_UUID, enable);
+		// get the service spec
+		ServiceMonitorSpec serviceSpec = bleDevReg
+				.getServiceSpec(HealthThermometerDriverInstance.SERVICE_UUID);
 
-		// TODO: handle actual notification now that the notifications are supported by TinyB!!
+		if (serviceSpec != null)
+		{
+			// get the characteristic spec
+			CharacteristicMonitorSpec charSpec = serviceSpec
+					.getCharacteristicSpec(
+							HealthThermometerDriverInstance.CHARACTERISTIC_UUID);
+
+			// set the delivery mode
+			if (charSpec != null)
+				charSpec.setDeliveryMode(DeliveryMode.INDICATE);
+		}
 	}
 
 	/**
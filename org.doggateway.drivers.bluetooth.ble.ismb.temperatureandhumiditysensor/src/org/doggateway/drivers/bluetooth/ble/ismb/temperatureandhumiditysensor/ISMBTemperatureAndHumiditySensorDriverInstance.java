@@ -161,35 +161,36 @@ public class ISMBTemperatureAndHumiditySensorDriverInstance
 	public void newMessageFromHouse(String characteristicUUID,
 			String serviceUUID, byte[] value)
 	{
-		if (characteristicUUID.equals(
+		// wrap the value, no copy needed
+		this.newMessageFromHouse(characteristicUUID, serviceUUID,
+				ByteBuffer.wrap(value));
+	}
+
+	@Override
+	public void newMessageFromHouse(String characteristicUUID,
+			String serviceUUID, ByteBuffer value)
+	{
+		if ((characteristicUUID.equals(
 				ISMBTemperatureAndHumiditySensorDriverInstance.TEMPERATURE_UUID))
+				&& (value.limit() >= 5))
 		{
-			// 32bit IEEE floating point
-			byte[] tempraw = { value[1], value[2], value[3], value[4] };
-
-			// wrap the buffer
-			ByteBuffer buffer = ByteBuffer.wrap(tempraw);
-			// interpret the value
-			float tempValue = buffer.getFloat();
+			// 32bit IEEE floating point, read in place
+			float tempValue = value.getFloat(1);
 
 			// update status and notify
 			this.updateAndNotifyTemperature((double) tempValue);
 
 		}
-		else if (characteristicUUID.equals(
+		else if ((characteristicUUID.equals(
 				ISMBTemperatureAndHumiditySensorDriverInstance.HUMIDITY_UUID))
+				&& (value.limit() >= 3))
 		{
 			// TODO check byte order to perform more direct and esy to
 			// understand unwrapping!!
 
-			// unpack / interpret the humidity value (uint 16)
-			byte[] rawHumidity = { value[1], value[2] };
-
-			// wrap the buffer
-			ByteBuffer buffer = ByteBuffer.wrap(rawHumidity);
-
-			// get the value as a signed short
-			short signedHumidityValue = buffer.getShort();
+			// unpack / interpret the humidity value (uint 16), get the value
+			// as a signed short, read in place
+			short signedHumidityValue = value.getShort(1);
 
 			// get the unsigned value
 			int uHumidityValue = 0x0000ffff & ((int) signedHumidityValue);
@@ -0,0 +1,317 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import tinyb.BluetoothAdapter;
+
+/**
+ * Keeps one {@link BLEAdapterContext} per Bluetooth adapter and assigns
+ * managed devices to adapters. Devices pinned to an adapter by their
+ * registration are always assigned to that adapter; other devices are
+ * assigned to the available adapter having the lowest cost, computed as the
+ * adapter load (assigned devices plus live connections) weighted by the
+ * observed operation latency. Adapters with no latency sample yet are
+ * preferred, so that new adapters are put to use immediately.
+ * 
+ * Until the first adapter is available, devices are assigned to the
+ * default adapter, i.e., the one chosen by the Bluetooth service. When an
+ * adapter fails, its devices are moved to the available adapter selected
+ * in the same way.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class BLEAdapterBalancer
+{
+	// the key identifying the default adapter, used for devices not
+	// specifying any adapter while no adapter is detected
+	public static final String DEFAULT_ADAPTER_KEY = "default";
+
+	// the driver
+	private BLENetworkDriverImpl theDriver;
+
+	// the adapter contexts, by adapter key
+	private ConcurrentHashMap<String, BLEAdapterContext> adapters;
+
+	/**
+	 * Builds a new balancer with no adapter
+	 * 
+	 * @param theDriver
+	 *            The network driver
+	 */
+	public BLEAdapterBalancer(BLENetworkDriverImpl theDriver)
+	{
+		this.theDriver = theDriver;
+		this.adapters = new ConcurrentHashMap<String, BLEAdapterContext>();
+	}
+
+	/**
+	 * Gets the key identifying the adapter having the given MAC address
+	 * 
+	 * @param adapterMacAddress
+	 *            The adapter MAC address, or null for the default adapter
+	 * @return The adapter key
+	 */
+	public static String keyOf(String adapterMacAddress)
+	{
+		return ((adapterMacAddress != null) && (!adapterMacAddress.isEmpty())
+				&& (!BLEAdapterBalancer.DEFAULT_ADAPTER_KEY
+						.equals(adapterMacAddress)))
+								? adapterMacAddress.toUpperCase()
+								: BLEAdapterBalancer.DEFAULT_ADAPTER_KEY;
+	}
+
+	/**
+	 * Gets the context of the adapter having the given MAC address, creating
+	 * it if needed
+	 * 
+	 * @param adapterMacAddress
+	 *            The adapter MAC address, or null for the default adapter
+	 * @return The adapter context
+	 */
+	public BLEAdapterContext getAdapter(String adapterMacAddress)
+	{
+		String key = BLEAdapterBalancer.keyOf(adapterMacAddress);
+
+		// lock-free on the common path
+		BLEAdapterContext adapter = this.adapters.get(key);
+		if (adapter == null)
+		{
+			synchronized (this)
+			{
+				adapter = this.adapters.get(key);
+				if (adapter == null)
+				{
+					adapter = new BLEAdapterContext(key,
+							this.theDriver.getMaxConcurrentPolls());
+					this.adapters.put(key, adapter);
+				}
+			}
+		}
+
+		return adapter;
+	}
+
+	/**
+	 * Gets the contexts of all the known adapters
+	 * 
+	 * @return the adapter contexts
+	 */
+	public Collection<BLEAdapterContext> getAdapters()
+	{
+		return this.adapters.values();
+	}
+
+	/**
+	 * Gets the number of available adapters
+	 * 
+	 * @return the number of available adapters
+	 */
+	public int getAvailableAdapterCount()
+	{
+		int available = 0;
+		for (BLEAdapterContext adapter : this.adapters.values())
+		{
+			if (adapter.isAvailable())
+				available++;
+		}
+		return available;
+	}
+
+	/**
+	 * Gets the available low-level adapters
+	 * 
+	 * @return the list of available adapters, possibly empty
+	 */
+	public List<BluetoothAdapter> getLowAdapters()
+	{
+		List<BluetoothAdapter> lowAdapters = new ArrayList<BluetoothAdapter>();
+		for (BLEAdapterContext adapter : this.adapters.values())
+		{
+			BluetoothAdapter lowAdapter = adapter.getLowAdapter();
+			if ((adapter.isAvailable()) && (lowAdapter != null))
+				lowAdapters.add(lowAdapter);
+		}
+		return lowAdapters;
+	}
+
+	/**
+	 * Assigns a new device to an adapter
+	 * 
+	 * @param pinnedAdapterMacAddress
+	 *            The MAC address of the adapter to which the device is
+	 *            pinned, or null if the device can be assigned to any adapter
+	 * @return The context of the assigned adapter
+	 */
+	public synchronized BLEAdapterContext assign(
+			String pinnedAdapterMacAddress)
+	{
+		BLEAdapterContext assigned = null;
+
+		if ((pinnedAdapterMacAddress != null)
+				&& (!pinnedAdapterMacAddress.isEmpty()))
+		{
+			// respect the pin
+			assigned = this.getAdapter(pinnedAdapterMacAddress);
+		}
+		else
+		{
+			// the available adapter with the lowest cost, or the default
+			// adapter if none is available
+			assigned = this.selectAvailable(null);
+			if (assigned == null)
+				assigned = this.getAdapter(null);
+		}
+
+		assigned.assigned();
+		return assigned;
+	}
+
+	/**
+	 * Selects the available adapter to which a device shall be moved, e.g.,
+	 * upon failure of its current adapter, without counting the device
+	 * 
+	 * @param pinnedAdapterMacAddress
+	 *            The MAC address of the adapter to which the device is
+	 *            pinned, used if available, or null if the device can be
+	 *            assigned to any adapter
+	 * @return The selected adapter, or null if no adapter is available
+	 */
+	public synchronized BLEAdapterContext selectAvailable(
+			String pinnedAdapterMacAddress)
+	{
+		BLEAdapterContext selected = null;
+
+		// the pinned adapter, if available
+		if ((pinnedAdapterMacAddress != null)
+				&& (!pinnedAdapterMacAddress.isEmpty()))
+		{
+			BLEAdapterContext pinned = this.adapters
+					.get(BLEAdapterBalancer.keyOf(pinnedAdapterMacAddress));
+			if ((pinned != null) && (pinned.isAvailable()))
+				selected = pinned;
+		}
+
+		if (selected == null)
+		{
+			// the available adapter with the lowest cost
+			long lowestCost = Long.MAX_VALUE;
+			for (BLEAdapterContext adapter : this.adapters.values())
+			{
+				if (adapter.isAvailable())
+				{
+					long cost = this.costOf(adapter);
+					if ((cost < lowestCost) || ((cost == lowestCost)
+							&& (adapter.getAssignedDevices() < selected
+									.getAssignedDevices())))
+					{
+						lowestCost = cost;
+						selected = adapter;
+					}
+				}
+			}
+		}
+
+		return selected;
+	}
+
+	/**
+	 * Counts a device moved from the adapter having the given key to the
+	 * given adapter
+	 * 
+	 * @param previousKey
+	 *            The key of the previous adapter, possibly null
+	 * @param adapter
+	 *            The new adapter
+	 */
+	public synchronized void move(String previousKey, BLEAdapterContext adapter)
+	{
+		this.release(previousKey);
+		adapter.assigned();
+	}
+
+	/**
+	 * Releases a device previously assigned to the adapter having the given
+	 * key
+	 * 
+	 * @param adapterKey
+	 *            The key of the adapter
+	 */
+	public synchronized void release(String adapterKey)
+	{
+		BLEAdapterContext adapter = (adapterKey != null)
+				? this.adapters.get(adapterKey) : null;
+		if (adapter != null)
+			adapter.released();
+	}
+
+	/**
+	 * Applies the given maximum number of concurrent operations to all the
+	 * adapters
+	 * 
+	 * @param maxConcurrentPolls
+	 *            The maximum number of concurrent operations per adapter
+	 */
+	public void setMaxConcurrentPolls(int maxConcurrentPolls)
+	{
+		synchronized (this)
+		{
+			for (BLEAdapterContext adapter : this.adapters.values())
+				adapter.setMaxConcurrentPolls(maxConcurrentPolls);
+		}
+	}
+
+	/**
+	 * Stops the pools of all the adapters
+	 */
+	public void shutdown()
+	{
+		for (BLEAdapterContext adapter : this.adapters.values())
+		{
+			ThreadPoolExecutor pool = adapter.getPool();
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Computes the cost of assigning one more device to the given adapter
+	 * 
+	 * @param adapter
+	 *            The adapter
+	 * @return The assignment cost
+	 */
+	private long costOf(BLEAdapterContext adapter)
+	{
+		// the adapter load, including the new device
+		long load = adapter.getAssignedDevices() + this.theDriver
+				.getConnectionManager().getConnectionCount(adapter.getKey())
+				+ 1;
+
+		// weighted by the observed latency, unmeasured adapters come first
+		long latencyNanos = adapter.getLatencyNanos();
+		return (latencyNanos < 0) ? 0
+				: load * (TimeUnit.NANOSECONDS.toMillis(latencyNanos) + 1);
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import tinyb.BluetoothAdapter;
+
+/**
+ * The state kept by the network driver for one Bluetooth adapter: the
+ * bounded pool on which operations of the devices assigned to the adapter
+ * are executed, the number of assigned devices and the observed operation
+ * latency, used to balance new devices over the available adapters, and the
+ * adapter availability, i.e., detected and powered.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class BLEAdapterContext
+{
+	// the keep alive time of idle polling threads
+	private static final long POLLING_THREAD_KEEP_ALIVE_MILLIS = 60000;
+
+	// the weight of the newest sample in the latency moving average, as
+	// right shift, i.e., 1/8
+	private static final int LATENCY_SMOOTHING_SHIFT = 3;
+
+	// the key identifying the adapter, i.e., its upper-case MAC address
+	private String key;
+
+	// the low-level adapter, null until the adapter is detected and after
+	// the adapter is removed
+	private volatile BluetoothAdapter lowAdapter;
+
+	// true if the adapter is detected and powered
+	private AtomicBoolean available;
+
+	// the bounded pool on which device operations are executed
+	private ThreadPoolExecutor pool;
+
+	// the number of devices assigned to the adapter
+	private AtomicInteger assignedDevices;
+
+	// the exponentially weighted moving average of operation latencies, in
+	// nanoseconds, -1 if no operation has been observed yet
+	private volatile long latencyNanos;
+
+	/**
+	 * Builds a new adapter context
+	 * 
+	 * @param key
+	 *            The key identifying the adapter
+	 * @param maxConcurrentPolls
+	 *            The maximum number of operations concurrently executed on
+	 *            the adapter
+	 */
+	public BLEAdapterContext(String key, int maxConcurrentPolls)
+	{
+		// store the key
+		this.key = key;
+
+		// at most maxConcurrentPolls threads, idle threads are released after
+		// the keep alive time
+		this.pool = new ThreadPoolExecutor(maxConcurrentPolls,
+				maxConcurrentPolls,
+				BLEAdapterContext.POLLING_THREAD_KEEP_ALIVE_MILLIS,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+		this.pool.allowCoreThreadTimeOut(true);
+
+		// not yet detected, no device, no latency
+		this.available = new AtomicBoolean(false);
+		this.assignedDevices = new AtomicInteger();
+		this.latencyNanos = -1;
+	}
+
+	/**
+	 * Gets the key identifying the adapter
+	 * 
+	 * @return the key
+	 */
+	public String getKey()
+	{
+		return key;
+	}
+
+	/**
+	 * Gets the low-level adapter
+	 * 
+	 * @return the low-level adapter, or null if not detected
+	 */
+	public BluetoothAdapter getLowAdapter()
+	{
+		return lowAdapter;
+	}
+
+	/**
+	 * Sets the low-level adapter
+	 * 
+	 * @param lowAdapter
+	 *            the low-level adapter to set
+	 */
+	public void setLowAdapter(BluetoothAdapter lowAdapter)
+	{
+		this.lowAdapter = lowAdapter;
+	}
+
+	/**
+	 * Checks if the adapter is available, i.e., detected and powered
+	 * 
+	 * @return true if available, false otherwise
+	 */
+	public boolean isAvailable()
+	{
+		return this.available.get();
+	}
+
+	/**
+	 * Sets the adapter availability
+	 * 
+	 * @param available
+	 *            true if the adapter is detected and powered, false otherwise
+	 * @return true if the availability changed, false otherwise
+	 */
+	public boolean setAvailable(boolean available)
+	{
+		return this.available.compareAndSet(!available, available);
+	}
+
+	/**
+	 * Gets the bounded pool on which operations of the devices assigned to
+	 * the adapter are executed
+	 * 
+	 * @return the pool
+	 */
+	public ThreadPoolExecutor getPool()
+	{
+		return pool;
+	}
+
+	/**
+	 * Gets the number of devices assigned to the adapter
+	 * 
+	 * @return the number of assigned devices
+	 */
+	public int getAssignedDevices()
+	{
+		return this.assignedDevices.get();
+	}
+
+	/**
+	 * Counts a device assigned to the adapter
+	 */
+	void assigned()
+	{
+		this.assignedDevices.incrementAndGet();
+	}
+
+	/**
+	 * Counts a device no more assigned to the adapter
+	 */
+	void released()
+	{
+		this.assignedDevices.decrementAndGet();
+	}
+
+	/**
+	 * Records the latency of an operation executed through the adapter.
+	 * Concurrent updates might lose samples, which is acceptable for an
+	 * average.
+	 * 
+	 * @param nanos
+	 *            The operation latency, in nanoseconds
+	 */
+	public void recordLatency(long nanos)
+	{
+		long current = this.latencyNanos;
+		this.latencyNanos = (current < 0) ? nanos
+				: current + ((nanos - current)
+						>> BLEAdapterContext.LATENCY_SMOOTHING_SHIFT);
+	}
+
+	/**
+	 * Gets the moving average of operation latencies
+	 * 
+	 * @return the average latency in nanoseconds, or -1 if no operation has
+	 *         been observed yet
+	 */
+	public long getLatencyNanos()
+	{
+		return this.latencyNanos;
+	}
+
+	/**
+	 * Sets the maximum number of operations concurrently executed on the
+	 * adapter
+	 * 
+	 * @param maxConcurrentPolls
+	 *            The maximum number of concurrent operations, at least 1
+	 */
+	public void setMaxConcurrentPolls(int maxConcurrentPolls)
+	{
+		// the maximum pool size can never be lower than the core size
+		if (maxConcurrentPolls > this.pool.getMaximumPoolSize())
+		{
+			this.pool.setMaximumPoolSize(maxConcurrentPolls);
+			this.pool.setCorePoolSize(maxConcurrentPolls);
+		}
+		else
+		{
+			this.pool.setCorePoolSize(maxConcurrentPolls);
+			this.pool.setMaximumPoolSize(maxConcurrentPolls);
+		}
+	}
+}
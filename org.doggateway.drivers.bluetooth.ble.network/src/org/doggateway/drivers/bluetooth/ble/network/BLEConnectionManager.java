@@ -0,0 +1,622 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network;
+
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.doggateway.drivers.bluetooth.ble.network.info.LatencyStats.Metric;
+import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothDevice;
+import org.osgi.service.log.LogService;
+
+import tinyb.BluetoothDevice;
+import tinyb.BluetoothException;
+
+/**
+ * Keeps a bounded set of live connections per adapter. Connected devices are
+ * tracked in least-recently-used order and, when an adapter reaches the
+ * maximum number of connections, the least recently used idle device is
+ * disconnected to make room for the new connection. Devices having pending
+ * operations or active notification subscriptions are never evicted.
+ * Evicted devices are disconnected by the requesting thread, holding their
+ * lock, before the new connection is opened: eviction never interrupts an
+ * ongoing GATT exchange and the evicted device keeps its slot until it is
+ * actually disconnected. Devices requesting a connection or being evicted
+ * are never selected for eviction, thus two requesters can never wait for
+ * each other's lock. Devices found already connected, e.g., by discovery,
+ * notifications or other bundles, count against the limit as well.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class BLEConnectionManager
+{
+	// the driver
+	private BLENetworkDriverImpl theDriver;
+
+	// the maximum number of live connections per adapter
+	private volatile int maxConnections;
+
+	// the connected devices, per adapter, in least-recently-used order
+	private Hashtable<String, LinkedHashMap<ManagedBluetoothDevice, Boolean>> connections;
+
+	// the devices currently reserving a connection slot, their lock is held
+	// by the reserving thread
+	private Set<ManagedBluetoothDevice> requesting;
+
+	// the devices currently being disconnected to make room for new
+	// connections
+	private Set<ManagedBluetoothDevice> evicting;
+
+	// the number of connections currently tracked, over all adapters
+	private AtomicInteger liveConnections;
+
+	// the number of operations served by an already connected device
+	private AtomicLong hits;
+
+	// the number of operations requiring a new connection
+	private AtomicLong misses;
+
+	// the number of connections closed to make room for new ones
+	private AtomicLong evictions;
+
+	// the number of connections refused as no idle device could be evicted
+	private AtomicLong rejections;
+
+	/**
+	 * Builds a new connection manager allowing at most the given number of
+	 * live connections per adapter
+	 * 
+	 * @param theDriver
+	 *            The network driver
+	 * @param maxConnections
+	 *            The maximum number of live connections per adapter
+	 */
+	public BLEConnectionManager(BLENetworkDriverImpl theDriver,
+			int maxConnections)
+	{
+		// store the values
+		this.theDriver = theDriver;
+		this.maxConnections = maxConnections;
+
+		// build inner data structures
+		this.connections = new Hashtable<String, LinkedHashMap<ManagedBluetoothDevice, Boolean>>();
+		this.requesting = Collections.newSetFromMap(
+				new ConcurrentHashMap<ManagedBluetoothDevice, Boolean>());
+		this.evicting = Collections.newSetFromMap(
+				new ConcurrentHashMap<ManagedBluetoothDevice, Boolean>());
+		this.liveConnections = new AtomicInteger();
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.evictions = new AtomicLong();
+		this.rejections = new AtomicLong();
+	}
+
+	/**
+	 * Connects the given device, if not already connected, possibly evicting
+	 * the least recently used idle device of the same adapter. The caller
+	 * shall hold the device lock. The outcome is always reported to the
+	 * device health, therefore a breaker trial never remains pending.
+	 * 
+	 * @param device
+	 *            The device to connect, should be attached to a low-level
+	 *            device
+	 * @return true if the device is connected, false otherwise
+	 */
+	public boolean connect(ManagedBluetoothDevice device)
+	{
+		boolean connected = false;
+
+		// true once the outcome has been reported to the device health
+		boolean settled = false;
+
+		try
+		{
+			// get the low-level device, which might have been detached in the
+			// meanwhile, e.g., when re-homing the device
+			BluetoothDevice lowDevice = device.getLowDevice();
+			if (lowDevice != null)
+			{
+				// check the current connection state
+				boolean alreadyConnected = false;
+				try
+				{
+					alreadyConnected = lowDevice.getConnected();
+				}
+				catch (BluetoothException e)
+				{
+					// the device cannot even be queried, count as a failure
+					this.connectFailed(device, device.getDeviceMacAddress());
+					settled = true;
+				}
+
+				if (!settled)
+				{
+					if (alreadyConnected)
+						connected = this.hit(device);
+					else
+						connected = this.miss(device, lowDevice);
+					settled = true;
+				}
+			}
+		}
+		finally
+		{
+			// neither a success nor a failure of the device, e.g., no
+			// low-level device or an unexpected error, allow a new trial
+			if (!settled)
+				device.getHealth().abortTrial(System.nanoTime());
+		}
+
+		return connected;
+	}
+
+	/**
+	 * Handles a connection request for an already connected device
+	 * 
+	 * @param device
+	 *            The connected device
+	 * @return true, as the device is connected
+	 */
+	private boolean hit(ManagedBluetoothDevice device)
+	{
+		// refresh the device position in the LRU order
+		this.hits.incrementAndGet();
+		device.getHealth().success();
+
+		// a device connected elsewhere starts being tracked, the limit shall
+		// be respected in such a case too
+		if (!this.reserve(device))
+		{
+			// no idle device to evict, the device is connected anyway
+			LinkedHashMap<ManagedBluetoothDevice, Boolean> adapterConnections = this
+					.getAdapterConnections(device);
+			synchronized (adapterConnections)
+			{
+				if (adapterConnections.put(device, Boolean.TRUE) == null)
+					this.liveConnections.incrementAndGet();
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Handles a connection request for a disconnected device, making room
+	 * for the new connection if needed, and reports the outcome to the device
+	 * health
+	 * 
+	 * @param device
+	 *            The device to connect
+	 * @param lowDevice
+	 *            The low-level device
+	 * @return true if the device has been connected, false otherwise
+	 */
+	private boolean miss(ManagedBluetoothDevice device,
+			BluetoothDevice lowDevice)
+	{
+		boolean connected = false;
+
+		// a new connection is needed
+		this.misses.incrementAndGet();
+
+		// make room and reserve a slot for the device, evicted devices are
+		// disconnected before connecting
+		if (this.reserve(device))
+		{
+			// cached handles are not valid across connections
+			device.invalidateHandles();
+
+			// try connecting
+			long start = System.nanoTime();
+			try
+			{
+				connected = lowDevice.connect();
+			}
+			catch (BluetoothException e)
+			{
+				connected = false;
+			}
+
+			if (connected)
+			{
+				// track the connection latency, also per adapter
+				long latency = System.nanoTime() - start;
+				this.theDriver.getLatencyStats().record(
+						device.getDeviceMacAddress(), null, Metric.CONNECT,
+						latency);
+				this.theDriver.recordAdapterLatency(device, latency);
+
+				// the device is reachable
+				device.getHealth().success();
+			}
+			else
+			{
+				// release the slot
+				this.remove(device);
+				this.connectFailed(device, lowDevice.getName());
+			}
+		}
+		else
+		{
+			this.rejections.incrementAndGet();
+
+			// not a device failure, allow a new trial as soon as possible
+			device.getHealth().abortTrial(System.nanoTime());
+			this.theDriver.getLogger().log(LogService.LOG_WARNING,
+					"Unable to connect to device "
+							+ device.getDeviceMacAddress()
+							+ ": the maximum number of connections ("
+							+ this.maxConnections
+							+ ") has been reached and no idle device can be disconnected");
+		}
+
+		return connected;
+	}
+
+	/**
+	 * Reports a failed connection to the device health, backing off the
+	 * device if it looks unreachable
+	 * 
+	 * @param device
+	 *            The device which could not be connected
+	 * @param deviceName
+	 *            The name used to log the failure
+	 */
+	private void connectFailed(ManagedBluetoothDevice device,
+			String deviceName)
+	{
+		this.theDriver.getMetrics().connectFailed();
+
+		// the device might be unreachable, back off
+		if (device.getHealth().failure(System.nanoTime(),
+				this.theDriver.getBackoffBaseMillis(),
+				this.theDriver.getBackoffMaxMillis()))
+		{
+			this.theDriver.getLogger().log(LogService.LOG_WARNING,
+					"Unable to connect to device " + deviceName
+							+ " perhaps it is out-of-range or sleeping, next attempt in "
+							+ TimeUnit.NANOSECONDS.toMillis(
+									device.getHealth().getRetryAtNanos()
+											- System.nanoTime())
+							+ " ms");
+		}
+		else
+		{
+			this.theDriver.getLogger().log(LogService.LOG_WARNING,
+					"Unable to connect to device " + deviceName
+							+ " perhaps it is out-of-range or sleeping");
+		}
+	}
+
+	/**
+	 * Stops tracking the given device, e.g., after a disconnection or when
+	 * the device is no more managed
+	 * 
+	 * @param device
+	 *            The device to remove
+	 */
+	public void remove(ManagedBluetoothDevice device)
+	{
+		LinkedHashMap<ManagedBluetoothDevice, Boolean> adapterConnections = this
+				.getAdapterConnections(device);
+		synchronized (adapterConnections)
+		{
+			if (adapterConnections.remove(device) != null)
+				this.liveConnections.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Stops tracking the given device and closes its connection, if any
+	 * 
+	 * @param device
+	 *            The device to disconnect
+	 */
+	public void disconnect(ManagedBluetoothDevice device)
+	{
+		// stop tracking the device
+		this.remove(device);
+
+		// disconnect
+		this.disconnectLowDevice(device);
+	}
+
+	/**
+	 * Reserves a connection slot for the given device, which becomes the most
+	 * recently used one. If the adapter has no free slot, the least recently
+	 * used idle device is disconnected on the calling thread, holding its
+	 * lock, and its slot is released only afterwards. The caller shall hold
+	 * the lock of the given device.
+	 * 
+	 * @param device
+	 *            The device needing a slot
+	 * @return true if the slot has been reserved, false if no free slot is
+	 *         available and no idle device can be evicted
+	 */
+	private boolean reserve(ManagedBluetoothDevice device)
+	{
+		LinkedHashMap<ManagedBluetoothDevice, Boolean> adapterConnections = this
+				.getAdapterConnections(device);
+
+		boolean reserved = false;
+		boolean rejected = false;
+		try
+		{
+			while ((!reserved) && (!rejected))
+			{
+				ManagedBluetoothDevice evicted = null;
+				synchronized (adapterConnections)
+				{
+					// the device cannot be evicted while requesting a slot
+					this.requesting.add(device);
+
+					int before = adapterConnections.size();
+
+					// the device might be already tracked
+					adapterConnections.remove(device);
+
+					if (adapterConnections.size() < this.maxConnections)
+					{
+						adapterConnections.put(device, Boolean.TRUE);
+						reserved = true;
+					}
+					else
+					{
+						// the evicted device keeps its slot until disconnected
+						evicted = this.selectEvictable(adapterConnections,
+								device);
+						rejected = (evicted == null);
+					}
+
+					// update the live connections count
+					this.liveConnections
+							.addAndGet(adapterConnections.size() - before);
+				}
+
+				// disconnect the evicted device, outside the connections lock
+				// as it may take some time, then release its slot before the
+				// evicted device can request a new one
+				if (evicted != null)
+				{
+					try
+					{
+						synchronized (evicted)
+						{
+							this.disconnectLowDevice(evicted);
+							this.remove(evicted);
+						}
+					}
+					finally
+					{
+						this.evicting.remove(evicted);
+					}
+				}
+			}
+		}
+		finally
+		{
+			this.requesting.remove(device);
+		}
+
+		return reserved;
+	}
+
+	/**
+	 * Closes the connection of the given device, if any
+	 * 
+	 * @param device
+	 *            The device to disconnect
+	 */
+	private void disconnectLowDevice(ManagedBluetoothDevice device)
+	{
+		BluetoothDevice lowDevice = device.getLowDevice();
+		if (lowDevice != null)
+		{
+			try
+			{
+				lowDevice.disconnect();
+			}
+			catch (BluetoothException e)
+			{
+				this.theDriver.getLogger().log(LogService.LOG_DEBUG,
+						"Unable to disconnect device "
+								+ device.getDeviceMacAddress() + ": "
+								+ e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Sets the maximum number of live connections per adapter, exceeding
+	 * connections are closed as soon as new connections are needed
+	 * 
+	 * @param maxConnections
+	 *            the maximum number of connections to set
+	 */
+	public void setMaxConnections(int maxConnections)
+	{
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * Gets the maximum number of live connections per adapter
+	 * 
+	 * @return the maximum number of connections
+	 */
+	public int getMaxConnections()
+	{
+		return this.maxConnections;
+	}
+
+	/**
+	 * Gets the number of connections currently tracked, over all adapters
+	 * 
+	 * @return the number of live connections
+	 */
+	public int getConnectionCount()
+	{
+		return this.liveConnections.get();
+	}
+
+	/**
+	 * Gets the number of connections currently tracked for the adapter
+	 * having the given key
+	 * 
+	 * @param adapterKey
+	 *            The adapter key, see {@link BLEAdapterBalancer#keyOf(String)}
+	 * @return the number of live connections of the adapter
+	 */
+	public int getConnectionCount(String adapterKey)
+	{
+		LinkedHashMap<ManagedBluetoothDevice, Boolean> adapterConnections = this.connections
+				.get(adapterKey);
+		if (adapterConnections == null)
+			return 0;
+
+		synchronized (adapterConnections)
+		{
+			return adapterConnections.size();
+		}
+	}
+
+	/**
+	 * Gets the number of operations served by an already connected device
+	 * 
+	 * @return the number of hits
+	 */
+	public long getHits()
+	{
+		return this.hits.get();
+	}
+
+	/**
+	 * Gets the number of operations which required a new connection
+	 * 
+	 * @return the number of misses
+	 */
+	public long getMisses()
+	{
+		return this.misses.get();
+	}
+
+	/**
+	 * Gets the number of connections closed to make room for new ones
+	 * 
+	 * @return the number of evictions
+	 */
+	public long getEvictions()
+	{
+		return this.evictions.get();
+	}
+
+	/**
+	 * Gets the number of connections refused because the limit was reached
+	 * and no idle device could be evicted
+	 * 
+	 * @return the number of rejections
+	 */
+	public long getRejections()
+	{
+		return this.rejections.get();
+	}
+
+	/**
+	 * Selects, and marks as being evicted, the least recently used idle
+	 * device of the given adapter connections. The device is not removed
+	 * from the connections. Shall be called while holding the lock on the
+	 * adapter connections.
+	 * 
+	 * @param adapterConnections
+	 *            The connections of one adapter
+	 * @param requester
+	 *            The device needing the connection, never evicted
+	 * @return The evicted device, or null if no device is idle
+	 */
+	private ManagedBluetoothDevice selectEvictable(
+			LinkedHashMap<ManagedBluetoothDevice, Boolean> adapterConnections,
+			ManagedBluetoothDevice requester)
+	{
+		ManagedBluetoothDevice evicted = null;
+
+		// iteration order is least-recently-used first
+		Iterator<ManagedBluetoothDevice> iterator = adapterConnections.keySet()
+				.iterator();
+		while ((evicted == null) && (iterator.hasNext()))
+		{
+			ManagedBluetoothDevice candidate = iterator.next();
+
+			// devices with queued operations or active subscriptions are not
+			// idle, devices without a queue cannot be safely disconnected,
+			// devices requesting a slot hold their lock and devices being
+			// evicted are already leaving
+			if ((candidate != requester)
+					&& (candidate.getOperationQueue() != null)
+					&& (candidate.getOperationQueue().isIdle())
+					&& (!candidate.isNotifying())
+					&& (!this.requesting.contains(candidate))
+					&& (this.evicting.add(candidate)))
+			{
+				evicted = candidate;
+				this.evictions.incrementAndGet();
+			}
+		}
+
+		return evicted;
+	}
+
+	/**
+	 * Gets the connections of the adapter assigned to the given device,
+	 * creating them if needed
+	 * 
+	 * @param device
+	 *            The device
+	 * @return The adapter connections
+	 */
+	private LinkedHashMap<ManagedBluetoothDevice, Boolean> getAdapterConnections(
+			ManagedBluetoothDevice device)
+	{
+		// the adapter key
+		String key = (device.getAssignedAdapterKey() != null)
+				? device.getAssignedAdapterKey()
+				: BLEAdapterBalancer.keyOf(device.getAdapterMacAddress());
+
+		synchronized (this.connections)
+		{
+			LinkedHashMap<ManagedBluetoothDevice, Boolean> adapterConnections = this.connections
+					.get(key);
+
+			// if null, create the connections in access order
+			if (adapterConnections == null)
+			{
+				adapterConnections = new LinkedHashMap<ManagedBluetoothDevice, Boolean>(
+						16, 0.75f, true);
+				this.connections.put(key, adapterConnections);
+			}
+
+			return adapterConnections;
+		}
+	}
+}
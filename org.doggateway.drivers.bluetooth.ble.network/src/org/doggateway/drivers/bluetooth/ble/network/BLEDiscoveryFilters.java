@@ -0,0 +1,124 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network;
+
+import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLEDiscoveryFilter;
+
+/**
+ * Stock {@link BLEDiscoveryFilter}s, to be used (and combined) when
+ * registering discovery listeners
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public final class BLEDiscoveryFilters
+{
+	// accepts devices not managed by Dog
+	private static final BLEDiscoveryFilter UNMANAGED_ONLY = new BLEDiscoveryFilter()
+	{
+		@Override
+		public boolean accept(String devName, String devAddress, short rssi,
+				boolean managed)
+		{
+			return !managed;
+		}
+	};
+
+	/**
+	 * Utility class, not instantiable
+	 */
+	private BLEDiscoveryFilters()
+	{
+	}
+
+	/**
+	 * Gets a filter accepting devices not yet managed by Dog
+	 * 
+	 * @return the filter
+	 */
+	public static BLEDiscoveryFilter unmanagedOnly()
+	{
+		return BLEDiscoveryFilters.UNMANAGED_ONLY;
+	}
+
+	/**
+	 * Gets a filter accepting devices whose RSSI is at least the given one
+	 * 
+	 * @param minimumRssi
+	 *            The minimum RSSI, in dBm
+	 * @return the filter
+	 */
+	public static BLEDiscoveryFilter minimumRssi(final short minimumRssi)
+	{
+		return new BLEDiscoveryFilter()
+		{
+			@Override
+			public boolean accept(String devName, String devAddress,
+					short rssi, boolean managed)
+			{
+				return rssi >= minimumRssi;
+			}
+		};
+	}
+
+	/**
+	 * Gets a filter accepting devices whose name starts with the given prefix
+	 * 
+	 * @param prefix
+	 *            The name prefix, case sensitive
+	 * @return the filter
+	 */
+	public static BLEDiscoveryFilter namePrefix(final String prefix)
+	{
+		return new BLEDiscoveryFilter()
+		{
+			@Override
+			public boolean accept(String devName, String devAddress,
+					short rssi, boolean managed)
+			{
+				return (devName != null) && (devName.startsWith(prefix));
+			}
+		};
+	}
+
+	/**
+	 * Gets a filter accepting devices accepted by all the given filters,
+	 * evaluated in the given order
+	 * 
+	 * @param filters
+	 *            The filters to combine
+	 * @return the filter
+	 */
+	public static BLEDiscoveryFilter allOf(final BLEDiscoveryFilter... filters)
+	{
+		return new BLEDiscoveryFilter()
+		{
+			@Override
+			public boolean accept(String devName, String devAddress,
+					short rssi, boolean managed)
+			{
+				for (BLEDiscoveryFilter filter : filters)
+				{
+					if (!filter.accept(devName, devAddress, rssi, managed))
+						return false;
+				}
+				return true;
+			}
+		};
+	}
+}
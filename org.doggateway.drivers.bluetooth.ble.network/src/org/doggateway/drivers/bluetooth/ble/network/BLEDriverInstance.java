@@ -17,6 +17,7 @@
  */
 package org.doggateway.drivers.bluetooth.ble.network;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -24,6 +25,7 @@ import java.util.Set;
 import org.doggateway.drivers.bluetooth.ble.network.info.BLEDeviceRegistration;
 import org.doggateway.drivers.bluetooth.ble.network.info.BLEInfo;
 import org.doggateway.drivers.bluetooth.ble.network.info.CharacteristicMonitorSpec;
+import org.doggateway.drivers.bluetooth.ble.network.info.CharacteristicMonitorSpec.DeliveryMode;
 import org.doggateway.drivers.bluetooth.ble.network.info.ServiceMonitorSpec;
 import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLENetwork;
 import org.osgi.service.log.LogService;
@@ -77,6 +79,10 @@ public abstract class BLEDriverInstance implements StatefulDevice
 	// the adapter flag
 	private boolean isAdapter = false;
 
+	// true if the extending class handles values delivered as byte buffers
+	private final boolean bufferDelivery = BLEDriverInstance
+			.overridesBufferDelivery(this.getClass());
+
 	/**
 	 * Class constructor, takes a reference to the network driver to exploit for
 	 * communication and to the Dog device instance to handle.
@@ -240,13 +246,17 @@ public abstract class BLEDriverInstance implements StatefulDevice
 						String characteristicUUID = params
 								.get(BLEInfo.CHARACTERISTIC_UUID);
 
+						// the way in which values shall be delivered, if any
+						DeliveryMode deliveryMode = DeliveryMode
+								.parse(params.get(BLEInfo.DELIVERY_MODE));
+
 						if ((serviceUUID != null) && (!serviceUUID.isEmpty())
 								&& (characteristicUUID != null)
 								&& (!characteristicUUID.isEmpty()))
 						{
 							// update the bleDevReg field
 							this.updateDeviceRegistration(devReg, serviceUUID,
-									characteristicUUID);
+									characteristicUUID, deliveryMode);
 						}
 					}
 
@@ -259,7 +269,8 @@ public abstract class BLEDriverInstance implements StatefulDevice
 	}
 
 	private void updateDeviceRegistration(BLEDeviceRegistration devReg,
-			String serviceUUID, String characteristicUUID)
+			String serviceUUID, String characteristicUUID,
+			DeliveryMode deliveryMode)
 	{
 		// check not null
 		if (devReg != null)
@@ -289,6 +300,9 @@ public abstract class BLEDriverInstance implements StatefulDevice
 				charSpec = new CharacteristicMonitorSpec(characteristicUUID,
 						this.pollingTimeMillis, serviceSpec);
 
+				// set the delivery mode
+				charSpec.setDeliveryMode(deliveryMode);
+
 				// add the spec to the service
 				serviceSpec.addCharacteristicSpec(charSpec);
 			}
@@ -309,6 +323,88 @@ public abstract class BLEDriverInstance implements StatefulDevice
 	public abstract void newMessageFromHouse(String characteristicUUID,
 			String serviceUUID, byte[] value);
 
+	/**
+	 * Handles a new characteristic value delivered as a read-only
+	 * {@link ByteBuffer} view, positioned at 0 and in big-endian order. The
+	 * view is backed by a recycled buffer and is valid only for the duration
+	 * of the call: implementations shall neither keep it nor pass it to other
+	 * threads. Extending classes overriding this method receive all their
+	 * values through it, avoiding per-value allocations; the default
+	 * implementation copies the value and calls
+	 * {@link #newMessageFromHouse(String, String, byte[])}.
+	 * 
+	 * @param characteristicUUID
+	 *            The UUID of the characteristic
+	 * @param serviceUUID
+	 *            The UUID of the service owning the characteristic
+	 * @param value
+	 *            The read-only value
+	 */
+	public void newMessageFromHouse(String characteristicUUID,
+			String serviceUUID, ByteBuffer value)
+	{
+		// copy the value
+		byte[] bytes = new byte[value.remaining()];
+		value.get(bytes);
+
+		this.newMessageFromHouse(characteristicUUID, serviceUUID, bytes);
+	}
+
+	/**
+	 * Called whenever the network driver has (re-)enabled notifications on the
+	 * given characteristic, e.g., after the device connected again, to let
+	 * the driver configure the device accordingly. Called on a dispatching
+	 * thread: implementations shall not block and shall issue device
+	 * operations through the asynchronous methods of {@link BLENetwork}. The
+	 * default implementation does nothing.
+	 * 
+	 * @param characteristicUUID
+	 *            The UUID of the subscribed characteristic
+	 * @param serviceUUID
+	 *            The UUID of the service owning the characteristic
+	 */
+	public void notificationsEnabled(String characteristicUUID,
+			String serviceUUID)
+	{
+		// nothing to do by default
+	}
+
+	/**
+	 * Checks if this driver instance handles values delivered as byte buffers,
+	 * i.e., if it overrides
+	 * {@link #newMessageFromHouse(String, String, ByteBuffer)}
+	 * 
+	 * @return true if values shall be delivered as byte buffers, false
+	 *         otherwise
+	 */
+	public boolean isBufferDeliverySupported()
+	{
+		return this.bufferDelivery;
+	}
+
+	/**
+	 * Checks if the given driver instance class overrides
+	 * {@link #newMessageFromHouse(String, String, ByteBuffer)}
+	 * 
+	 * @param driverClass
+	 *            The driver instance class
+	 * @return true if overridden, false otherwise
+	 */
+	private static boolean overridesBufferDelivery(Class<?> driverClass)
+	{
+		try
+		{
+			return driverClass
+					.getMethod("newMessageFromHouse", String.class,
+							String.class, ByteBuffer.class)
+					.getDeclaringClass() != BLEDriverInstance.class;
+		}
+		catch (NoSuchMethodException e)
+		{
+			return false;
+		}
+	}
+
 	public String getDeviceMacAddress()
 	{
 		return this.macAddress;
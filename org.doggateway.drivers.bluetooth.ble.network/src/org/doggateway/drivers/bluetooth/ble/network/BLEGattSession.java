@@ -0,0 +1,145 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network;
+
+import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothCharacteristic;
+import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothDevice;
+import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothService;
+
+import tinyb.BluetoothDevice;
+import tinyb.BluetoothException;
+
+/**
+ * A GATT session on a single managed device: the device is connected once,
+ * when the session is opened, and all the subsequent operations run
+ * back-to-back on the same connection, re-using the cached service and
+ * characteristic handles. Sessions are not thread-safe and shall be used
+ * while holding the device lock, typically from the device operation queue.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class BLEGattSession
+{
+	// the driver
+	private BLENetworkDriverImpl theDriver;
+
+	// the device on which the session is open
+	private ManagedBluetoothDevice device;
+
+	// true if the device is connected
+	private boolean open;
+
+	/**
+	 * Opens a new session on the given device, connecting the device if
+	 * needed
+	 * 
+	 * @param theDriver
+	 *            The network driver
+	 * @param device
+	 *            The device on which the session shall be opened
+	 */
+	BLEGattSession(BLENetworkDriverImpl theDriver,
+			ManagedBluetoothDevice device)
+	{
+		// store the values
+		this.theDriver = theDriver;
+		this.device = device;
+
+		// connect once for the whole session
+		this.open = theDriver.connect(device);
+	}
+
+	/**
+	 * Checks if the session is open, i.e., if the device is connected
+	 * 
+	 * @return true if open, false otherwise
+	 */
+	public boolean isOpen()
+	{
+		return this.open;
+	}
+
+	/**
+	 * Reads the given characteristic on the session connection
+	 * 
+	 * @param service
+	 *            The service to which the characteristic belongs
+	 * @param characteristic
+	 *            The characteristic to read
+	 * @return The value read, or null if the session is not open or the read
+	 *         failed
+	 */
+	public byte[] read(ManagedBluetoothService service,
+			ManagedBluetoothCharacteristic characteristic)
+	{
+		byte[] value = null;
+
+		if (this.open)
+		{
+			// read on the open connection
+			value = this.theDriver.readFromConnectedDevice(this.device,
+					service.getServiceUUID(),
+					characteristic.getCharacteristicUUID());
+
+			// a failed read might depend on a lost connection, in such a case
+			// there is no point in trying further operations
+			if ((value == null) && (!this.isConnected()))
+				this.open = false;
+		}
+
+		return value;
+	}
+
+	/**
+	 * Checks if the session device is still connected, a device which cannot
+	 * be queried is considered disconnected
+	 * 
+	 * @return true if connected, false otherwise
+	 */
+	private boolean isConnected()
+	{
+		BluetoothDevice lowDevice = this.device.getLowDevice();
+		try
+		{
+			return (lowDevice != null) && (lowDevice.getConnected());
+		}
+		catch (BluetoothException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Subscribes the given characteristic for notifications on the session
+	 * connection, if not already subscribed
+	 * 
+	 * @param service
+	 *            The service to which the characteristic belongs
+	 * @param characteristic
+	 *            The characteristic to subscribe
+	 * @return true if the characteristic is subscribed, false otherwise
+	 */
+	public boolean subscribe(ManagedBluetoothService service,
+			ManagedBluetoothCharacteristic characteristic)
+	{
+		return (this.open) && (this.theDriver.enableNotifications(this.device,
+				service, characteristic));
+	}
+
+}
@@ -19,21 +19,50 @@ package org.doggateway.drivers.bluetooth.ble.network;
 
 import java.util.ArrayList;
 import java.util.Dictionary;
-import java.util.Hashtable;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.doggateway.drivers.bluetooth.ble.network.info.BLEDeviceRegistration;
 import org.doggateway.drivers.bluetooth.ble.network.info.CharacteristicMonitorSpec;
+import org.doggateway.drivers.bluetooth.ble.network.info.LatencyHistogram;
+import org.doggateway.drivers.bluetooth.ble.network.info.LatencyStats;
+import org.doggateway.drivers.bluetooth.ble.network.info.LatencyStats.Metric;
+import org.doggateway.drivers.bluetooth.ble.network.info.MacAddress;
+import org.doggateway.drivers.bluetooth.ble.network.info.MacAddressMap;
+import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothCharacteristic;
 import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothDevice;
+import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothService;
+import org.doggateway.drivers.bluetooth.ble.network.info.PollingPeriods;
 import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLENetwork;
+import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLENetworkMetrics;
+import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLEDiscoveryBatchListener;
+import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLEDiscoveryFilter;
 import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLEDiscoveryListener;
+import org.doggateway.drivers.bluetooth.ble.network.tasks.AdapterPowerHandler;
 import org.doggateway.drivers.bluetooth.ble.network.tasks.BLEDiscoveryWorker;
 import org.doggateway.drivers.bluetooth.ble.network.tasks.BLEPollingWorker;
+import org.doggateway.drivers.bluetooth.ble.network.tasks.CharacteristicNotificationHandler;
+import org.doggateway.drivers.bluetooth.ble.network.tasks.DeviceConnectionHandler;
+import org.doggateway.drivers.bluetooth.ble.network.tasks.DeviceOperation;
+import org.doggateway.drivers.bluetooth.ble.network.tasks.DeviceOperationQueue;
+import org.doggateway.drivers.bluetooth.ble.network.tasks.DispatchLanes;
+import org.doggateway.drivers.bluetooth.ble.network.tasks.NotifyBatchTask;
 import org.doggateway.drivers.bluetooth.ble.network.tasks.NotifyValueTask;
+import org.doggateway.drivers.bluetooth.ble.network.tasks.PollingSchedule;
 import org.doggateway.libraries.intel.tinyb.service.BluetoothService;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
@@ -42,7 +71,9 @@ import org.osgi.service.cm.ManagedService;
 import org.osgi.service.log.LogService;
 
 import it.polito.elite.dog.core.library.util.LogHelper;
+import tinyb.BluetoothAdapter;
 import tinyb.BluetoothDevice;
+import tinyb.BluetoothException;
 import tinyb.BluetoothGattCharacteristic;
 import tinyb.BluetoothGattService;
 
@@ -87,11 +118,84 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 	public static final int DISCOVERY_INTERVAL_MILLIS = 30000;
 	protected int discoveryIntervalMillis;
 
+	// if true, discovery only reports changes with respect to the previous
+	// attempt: new devices, devices whose RSSI changed by at least the given
+	// threshold, in dBm, and lost devices. Otherwise all the devices in range
+	// are reported at each attempt.
+	public static final String INCREMENTAL_DISCOVERY_KEY = "incrementalDiscovery";
+	public static final boolean INCREMENTAL_DISCOVERY = true;
+	protected boolean incrementalDiscovery;
+	public static final String DISCOVERY_RSSI_THRESHOLD_KEY = "discoveryRssiThresholdDbm";
+	public static final int DISCOVERY_RSSI_THRESHOLD = 10;
+	protected int discoveryRssiThreshold;
+
+	// if true, discovery cycles run at the configured interval only while
+	// devices are waiting for discovery, otherwise the interval is doubled at
+	// each cycle up to the given maximum, and each cycle is a single attempt
+	public static final String ADAPTIVE_DISCOVERY_KEY = "adaptiveDiscovery";
+	public static final boolean ADAPTIVE_DISCOVERY = true;
+	protected boolean adaptiveDiscovery;
+	public static final String MAX_DISCOVERY_INTERVAL_MILLIS_KEY = "maxIntervalBetweenDiscoveryCyclesMillis";
+	public static final int MAX_DISCOVERY_INTERVAL_MILLIS = 600000;
+	protected int maxDiscoveryIntervalMillis;
+
 	// the interval between attempts in one discovery cycle
 	public static final String DISCOVERY_CYCLYING_TIME_MILLIS_KEY = "IntervalBetweenDiscoveryAttemptsInCycleMillis";
 	public static final int DISCOVERY_CYCLYING_TIME_MILLIS = 4000;
 	protected int discoveryCyclingTimeMillis;
 
+	// the maximum number of devices concurrently polled through the same
+	// adapter, operations on a single device are always serialized. A value of
+	// 1 polls devices sequentially.
+	public static final String MAX_CONCURRENT_POLLS_KEY = "maxConcurrentPollsPerAdapter";
+	public static final int MAX_CONCURRENT_POLLS = 1;
+	protected int maxConcurrentPolls;
+
+	// the maximum time, in milliseconds, granted to asynchronous device
+	// operations, including any time spent in the device queue. Operations
+	// not completed in time are cancelled, 0 disables the timeout.
+	public static final String OPERATION_TIMEOUT_MILLIS_KEY = "operationTimeoutMillis";
+	public static final int OPERATION_TIMEOUT_MILLIS = 30000;
+	protected int operationTimeoutMillis;
+
+	// the maximum number of live connections per adapter, when reached the
+	// least recently used idle device is disconnected to make room for new
+	// connections
+	public static final String MAX_CONNECTIONS_KEY = "maxConnectionsPerAdapter";
+	public static final int MAX_CONNECTIONS = 5;
+	protected int maxConnections;
+
+	// the backoff applied to unreachable devices, doubled at each failed
+	// attempt up to the given maximum. Unreachable devices are not polled
+	// until their backoff elapses.
+	public static final String BACKOFF_BASE_MILLIS_KEY = "unreachableBackoffBaseMillis";
+	public static final int BACKOFF_BASE_MILLIS = 5000;
+	protected int backoffBaseMillis;
+	public static final String BACKOFF_MAX_MILLIS_KEY = "unreachableBackoffMaxMillis";
+	public static final int BACKOFF_MAX_MILLIS = 300000;
+	protected int backoffMaxMillis;
+
+	// the number of lanes on which values are dispatched to driver instances,
+	// values of the same device are always delivered in order on the same
+	// lane, values of different lanes are delivered in parallel
+	public static final String DISPATCH_LANES_KEY = "dispatchLanes";
+	public static final int DISPATCH_LANES = Runtime.getRuntime()
+			.availableProcessors();
+	protected int dispatchLanes;
+
+	// the maximum time for which polled values equal to the last dispatched
+	// value are not dispatched to driver instances, consumers receive at least
+	// one value per heartbeat. 0 dispatches all the polled values.
+	public static final String UNCHANGED_VALUE_HEARTBEAT_MILLIS_KEY = "unchangedValueHeartbeatMillis";
+	public static final int UNCHANGED_VALUE_HEARTBEAT_MILLIS = 300000;
+	protected int unchangedValueHeartbeatMillis;
+
+	// the interval between checks of the available adapters, independent of
+	// the discovery cycles, which might be far apart in adaptive mode
+	public static final String ADAPTER_CHECK_INTERVAL_MILLIS_KEY = "adapterCheckIntervalMillis";
+	public static final int ADAPTER_CHECK_INTERVAL_MILLIS = 5000;
+	protected int adapterCheckIntervalMillis;
+
 	// the bundle context
 	private BundleContext bundleContext;
 
@@ -112,40 +216,86 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 	 * polling time, or a negative value is specified, the driver will use the
 	 * base polling time.
 	 * 
-	 * To ensure time consistency (+-10% jitter) the polling thread tries to run
-	 * 10 times faster than the minimum required polling time. This parameter
-	 * can be set at configuration time.
+	 * Characteristics are kept in a deadline-ordered schedule, the polling
+	 * thread wakes up exactly at the next deadline and only polls the
+	 * characteristics which are due at that time.
 	 */
 
-	// the maximum allowed time jitter in percentage, cannot be 0. Minimum value
-	// accepted is limited by the minimum thread sleep time of 1ms. In case time
-	// jitter cannot be satisfied, a warning will be raised.
+	// the maximum allowed time jitter in percentage of the polling time,
+	// cannot be 0. Characteristics of a device falling due within the allowed
+	// jitter are read together; actual read times are checked against each
+	// characteristic deadline and, in case time jitter cannot be satisfied, a
+	// warning will be raised.
 	public static final String ALLOWED_JITTER_KEY = "jitterPercent";
 	public static final int ALLOWED_JITTER_PERCENTAGE = 50;
 	private int allowedTimeJitter;
 
 	// the polling time currently used in milliseconds, computed as the minimum
 	// between all device polling times.
-	private int actualPollingTimeMillis;
+	private volatile int actualPollingTimeMillis;
 
 	// the set of device registrations required by device-specific drivers, each
 	// driver may register more than one device registration
-	private ArrayList<BLEDeviceRegistration> activeRegistrations;
+	private BLERegistrationRegistry activeRegistrations;
 
-	// the set of managed devices
-	private Hashtable<String, ManagedBluetoothDevice> managedDevices;
+	// the set of managed devices, indexed by packed MAC address (see
+	// MacAddress#toLong(String))
+	private MacAddressMap<ManagedBluetoothDevice> managedDevices;
+
+	// the polling times of the managed devices, guarded by the registry lock
+	private PollingPeriods devicePeriods;
 
 	// TODO: check this again after implementing the full driver logic
 
-	// the set of pending discovery
-	private ArrayList<ManagedBluetoothDevice> devicesWaitingForDiscovery;
+	// the set of pending discovery, indexed by packed MAC address (see
+	// MacAddress#toLong(String))
+	private MacAddressMap<ManagedBluetoothDevice> devicesWaitingForDiscovery;
+
+	// the dispatching lanes
+	private DispatchLanes dispatchingService;
 
-	// the dispatching Executor service
-	private ExecutorService dispatchingService;
+	// the recycled buffers through which values are delivered to driver
+	// instances
+	private ValueBufferPool valueBuffers;
+
+	// the deadline-ordered schedule of characteristics to poll
+	private PollingSchedule pollingSchedule;
 
 	// the polling thread
 	private BLEPollingWorker pollingWorker;
 
+	// the adapters, each with its bounded pool on which device operations
+	// are executed, and the assignment of devices to adapters
+	private BLEAdapterBalancer adapters;
+
+	// the manager of live connections
+	private BLEConnectionManager connectionManager;
+
+	// the driver metrics
+	private BLENetworkMetricsImpl metrics;
+
+	// the registration of the metrics service
+	private ServiceRegistration<?> regServiceBLENetworkMetrics;
+
+	// the latency histograms of device operations
+	private LatencyStats latencyStats;
+
+	// the service cancelling asynchronous operations on timeout
+	private ScheduledExecutorService timeoutService;
+
+	// the service periodically checking the available adapters
+	private ScheduledExecutorService adapterCheckService;
+
+	// the number of devices re-attached in parallel when re-homing
+	private static final int REHOMING_THREADS = 4;
+
+	// the service re-attaching re-homed devices, independent of the adapter
+	// pools where polls might be queued
+	private ExecutorService rehomingService;
+
+	// the currently scheduled adapter check, if any
+	private ScheduledFuture<?> adapterCheck;
+
 	// the discovery thread
 	private BLEDiscoveryWorker discoveryWorker;
 	private ServiceRegistration<?> regServiceBLENetworkDriverImpl;
@@ -162,6 +312,19 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 		this.discoveryTrials = BLENetworkDriverImpl.DISCOVERY_TRIALS;
 		this.discoveryIntervalMillis = BLENetworkDriverImpl.DISCOVERY_INTERVAL_MILLIS;
 		this.discoveryCyclingTimeMillis = BLENetworkDriverImpl.DISCOVERY_CYCLYING_TIME_MILLIS;
+		this.incrementalDiscovery = BLENetworkDriverImpl.INCREMENTAL_DISCOVERY;
+		this.adaptiveDiscovery = BLENetworkDriverImpl.ADAPTIVE_DISCOVERY;
+		this.maxDiscoveryIntervalMillis = BLENetworkDriverImpl.MAX_DISCOVERY_INTERVAL_MILLIS;
+		this.discoveryRssiThreshold = BLENetworkDriverImpl.DISCOVERY_RSSI_THRESHOLD;
+		this.maxConcurrentPolls = BLENetworkDriverImpl.MAX_CONCURRENT_POLLS;
+		this.allowedTimeJitter = BLENetworkDriverImpl.ALLOWED_JITTER_PERCENTAGE;
+		this.operationTimeoutMillis = BLENetworkDriverImpl.OPERATION_TIMEOUT_MILLIS;
+		this.maxConnections = BLENetworkDriverImpl.MAX_CONNECTIONS;
+		this.backoffBaseMillis = BLENetworkDriverImpl.BACKOFF_BASE_MILLIS;
+		this.backoffMaxMillis = BLENetworkDriverImpl.BACKOFF_MAX_MILLIS;
+		this.dispatchLanes = BLENetworkDriverImpl.DISPATCH_LANES;
+		this.unchangedValueHeartbeatMillis = BLENetworkDriverImpl.UNCHANGED_VALUE_HEARTBEAT_MILLIS;
+		this.adapterCheckIntervalMillis = BLENetworkDriverImpl.ADAPTER_CHECK_INTERVAL_MILLIS;
 
 		// initialize the actual polling time
 		this.actualPollingTimeMillis = BLENetworkDriverImpl.DISCOVERY_INTERVAL_MILLIS;
@@ -170,22 +333,51 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 		this.bluetooth = new AtomicReference<BluetoothService>();
 
 		// create the connected drivers table
-		this.activeRegistrations = new ArrayList<BLEDeviceRegistration>();
+		this.activeRegistrations = new BLERegistrationRegistry();
 
 		// create the managed devices set
-		this.managedDevices = new Hashtable<String, ManagedBluetoothDevice>();
+		this.managedDevices = new MacAddressMap<ManagedBluetoothDevice>();
+		this.devicePeriods = new PollingPeriods();
 
 		// create the devices waiting for discovery
-		this.devicesWaitingForDiscovery = new ArrayList<ManagedBluetoothDevice>();
+		this.devicesWaitingForDiscovery = new MacAddressMap<ManagedBluetoothDevice>();
+
+		// build the dispatching service, values of the same device are
+		// delivered in order on the same lane
+		this.dispatchingService = new DispatchLanes(this.dispatchLanes);
 
-		// build the dispatching service
-		// check if just 1 thread is sufficient, for the time being we select a
-		// single
-		// thread executor to ensure order of delivery
-		this.dispatchingService = Executors.newSingleThreadExecutor();
+		// create the pool of value buffers
+		this.valueBuffers = new ValueBufferPool();
+
+		// create the adapter balancer
+		this.adapters = new BLEAdapterBalancer(this);
+
+		// create the connection manager
+		this.connectionManager = new BLEConnectionManager(this,
+				this.maxConnections);
+
+		// create the metrics
+		this.metrics = new BLENetworkMetricsImpl(this);
+
+		// create the latency statistics
+		this.latencyStats = new LatencyStats();
+
+		// create the operation timeout service
+		this.timeoutService = Executors.newSingleThreadScheduledExecutor();
+
+		// create the adapter check service
+		this.adapterCheckService = Executors
+				.newSingleThreadScheduledExecutor();
+
+		// create the re-homing service
+		this.rehomingService = Executors
+				.newFixedThreadPool(BLENetworkDriverImpl.REHOMING_THREADS);
+
+		// create the polling schedule
+		this.pollingSchedule = new PollingSchedule();
 
 		// create the polling worker thread
-		this.pollingWorker = new BLEPollingWorker(this);
+		this.pollingWorker = new BLEPollingWorker(this, this.pollingSchedule);
 
 		// create the discovery polling thread
 		this.discoveryWorker = new BLEDiscoveryWorker(this);
@@ -207,6 +399,9 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 		this.discoveryWorker.setRunnable(true);
 		this.discoveryWorker.start();
 
+		// start checking the available adapters
+		this.scheduleAdapterCheck();
+
 		// debug: signal activation...
 		this.logger.log(LogService.LOG_DEBUG, "Activated...");
 	}
@@ -221,6 +416,21 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 		this.discoveryWorker.setRunnable(false);
 		this.discoveryWorker.interrupt();
 
+		// stop the adapter pools
+		this.adapters.shutdown();
+
+		// stop the timeout service
+		this.timeoutService.shutdownNow();
+
+		// stop checking the available adapters
+		this.adapterCheckService.shutdownNow();
+
+		// stop re-homing devices
+		this.rehomingService.shutdownNow();
+
+		// stop the dispatching service
+		this.dispatchingService.shutdown();
+
 		// unregister network services
 		this.unregisterNetworkService();
 
@@ -232,12 +442,44 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 	{
 		// store the bluetooth service reference
 		this.bluetooth.set(bls);
+
+		// detect the available adapters, on the adapter check thread to
+		// serialize with periodic checks
+		try
+		{
+			this.adapterCheckService.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					refreshAdapters();
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			// the driver has been deactivated, nothing to detect
+		}
 	}
 
 	public void removedBluetoothService(BluetoothService bls)
 	{
 		// remove the bluetooth service, if matching
-		this.bluetooth.compareAndSet(bls, null);
+		if (this.bluetooth.compareAndSet(bls, null))
+		{
+			// all the adapters are gone together with the service
+			long now = System.nanoTime();
+			for (BLEAdapterContext adapter : this.adapters.getAdapters())
+			{
+				adapter.setLowAdapter(null);
+				if (adapter.setAvailable(false))
+					this.metrics.adapterFailed();
+			}
+
+			// low-level handles are not valid anymore, devices wait for the
+			// service to come back
+			this.rehome(this.managedDevices.values(), now);
+		}
 	}
 
 	@Override
@@ -389,6 +631,259 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 				}
 			}
 
+			// maximum number of devices concurrently polled per adapter
+			String maxConcurrentPolls = (String) properties
+					.get(BLENetworkDriverImpl.MAX_CONCURRENT_POLLS_KEY);
+			if ((maxConcurrentPolls != null) && (!maxConcurrentPolls.isEmpty()))
+			{
+				try
+				{
+					int maxConcurrentPollsInt = Integer
+							.valueOf(maxConcurrentPolls.trim());
+					if (maxConcurrentPollsInt > 0)
+					{
+						this.maxConcurrentPolls = maxConcurrentPollsInt;
+
+						// resize the existing pools
+						this.adapters.setMaxConcurrentPolls(
+								this.maxConcurrentPolls);
+					}
+				}
+				catch (NumberFormatException e)
+				{
+					this.logger.log(LogService.LOG_WARNING,
+							"wrong format for configuration param "
+									+ BLENetworkDriverImpl.MAX_CONCURRENT_POLLS_KEY
+									+ " should be integer");
+				}
+			}
+
+			// incremental discovery
+			String incrementalDiscovery = (String) properties
+					.get(BLENetworkDriverImpl.INCREMENTAL_DISCOVERY_KEY);
+			if ((incrementalDiscovery != null)
+					&& (!incrementalDiscovery.isEmpty()))
+			{
+				this.incrementalDiscovery = Boolean
+						.valueOf(incrementalDiscovery.trim());
+			}
+
+			// adaptive discovery
+			String adaptiveDiscovery = (String) properties
+					.get(BLENetworkDriverImpl.ADAPTIVE_DISCOVERY_KEY);
+			if ((adaptiveDiscovery != null) && (!adaptiveDiscovery.isEmpty()))
+			{
+				this.adaptiveDiscovery = Boolean
+						.valueOf(adaptiveDiscovery.trim());
+			}
+
+			// maximum interval between adaptive discovery cycles
+			String maxDiscoveryIntervalMillis = (String) properties
+					.get(BLENetworkDriverImpl.MAX_DISCOVERY_INTERVAL_MILLIS_KEY);
+			if ((maxDiscoveryIntervalMillis != null)
+					&& (!maxDiscoveryIntervalMillis.isEmpty()))
+			{
+				try
+				{
+					int maxDiscoveryIntervalMillisInt = Integer
+							.valueOf(maxDiscoveryIntervalMillis.trim());
+					if (maxDiscoveryIntervalMillisInt > 0)
+						this.maxDiscoveryIntervalMillis = maxDiscoveryIntervalMillisInt;
+				}
+				catch (NumberFormatException e)
+				{
+					this.logger.log(LogService.LOG_WARNING,
+							"wrong format for configuration param "
+									+ BLENetworkDriverImpl.MAX_DISCOVERY_INTERVAL_MILLIS_KEY
+									+ " should be integer");
+				}
+			}
+
+			// minimum RSSI change reported by incremental discovery
+			String discoveryRssiThreshold = (String) properties
+					.get(BLENetworkDriverImpl.DISCOVERY_RSSI_THRESHOLD_KEY);
+			if ((discoveryRssiThreshold != null)
+					&& (!discoveryRssiThreshold.isEmpty()))
+			{
+				try
+				{
+					int discoveryRssiThresholdInt = Integer
+							.valueOf(discoveryRssiThreshold.trim());
+					if (discoveryRssiThresholdInt > 0)
+						this.discoveryRssiThreshold = discoveryRssiThresholdInt;
+				}
+				catch (NumberFormatException e)
+				{
+					this.logger.log(LogService.LOG_WARNING,
+							"wrong format for configuration param "
+									+ BLENetworkDriverImpl.DISCOVERY_RSSI_THRESHOLD_KEY
+									+ " should be integer");
+				}
+			}
+
+			// number of dispatching lanes
+			String dispatchLanes = (String) properties
+					.get(BLENetworkDriverImpl.DISPATCH_LANES_KEY);
+			if ((dispatchLanes != null) && (!dispatchLanes.isEmpty()))
+			{
+				try
+				{
+					int dispatchLanesInt = Integer.valueOf(dispatchLanes.trim());
+					if (dispatchLanesInt > 0)
+					{
+						this.dispatchLanes = dispatchLanesInt;
+
+						// resize the dispatching service
+						this.dispatchingService
+								.setLaneCount(this.dispatchLanes);
+					}
+				}
+				catch (NumberFormatException e)
+				{
+					this.logger.log(LogService.LOG_WARNING,
+							"wrong format for configuration param "
+									+ BLENetworkDriverImpl.DISPATCH_LANES_KEY
+									+ " should be integer");
+				}
+			}
+
+			// heartbeat of unchanged values
+			String unchangedValueHeartbeatMillis = (String) properties.get(
+					BLENetworkDriverImpl.UNCHANGED_VALUE_HEARTBEAT_MILLIS_KEY);
+			if ((unchangedValueHeartbeatMillis != null)
+					&& (!unchangedValueHeartbeatMillis.isEmpty()))
+			{
+				try
+				{
+					int unchangedValueHeartbeatMillisInt = Integer
+							.valueOf(unchangedValueHeartbeatMillis.trim());
+					if (unchangedValueHeartbeatMillisInt >= 0)
+						this.unchangedValueHeartbeatMillis = unchangedValueHeartbeatMillisInt;
+				}
+				catch (NumberFormatException e)
+				{
+					this.logger.log(LogService.LOG_WARNING,
+							"wrong format for configuration param "
+									+ BLENetworkDriverImpl.UNCHANGED_VALUE_HEARTBEAT_MILLIS_KEY
+									+ " should be integer");
+				}
+			}
+
+			// timeout of asynchronous operations
+			String operationTimeoutMillis = (String) properties
+					.get(BLENetworkDriverImpl.OPERATION_TIMEOUT_MILLIS_KEY);
+			if ((operationTimeoutMillis != null)
+					&& (!operationTimeoutMillis.isEmpty()))
+			{
+				try
+				{
+					int operationTimeoutMillisInt = Integer
+							.valueOf(operationTimeoutMillis.trim());
+					if (operationTimeoutMillisInt >= 0)
+						this.operationTimeoutMillis = operationTimeoutMillisInt;
+				}
+				catch (NumberFormatException e)
+				{
+					this.logger.log(LogService.LOG_WARNING,
+							"wrong format for configuration param "
+									+ BLENetworkDriverImpl.OPERATION_TIMEOUT_MILLIS_KEY
+									+ " should be integer");
+				}
+			}
+
+			// maximum number of live connections per adapter
+			String maxConnections = (String) properties
+					.get(BLENetworkDriverImpl.MAX_CONNECTIONS_KEY);
+			if ((maxConnections != null) && (!maxConnections.isEmpty()))
+			{
+				try
+				{
+					int maxConnectionsInt = Integer
+							.valueOf(maxConnections.trim());
+					if (maxConnectionsInt > 0)
+					{
+						this.maxConnections = maxConnectionsInt;
+						this.connectionManager
+								.setMaxConnections(maxConnectionsInt);
+					}
+				}
+				catch (NumberFormatException e)
+				{
+					this.logger.log(LogService.LOG_WARNING,
+							"wrong format for configuration param "
+									+ BLENetworkDriverImpl.MAX_CONNECTIONS_KEY
+									+ " should be integer");
+				}
+			}
+
+			// base backoff for unreachable devices
+			String backoffBaseMillis = (String) properties
+					.get(BLENetworkDriverImpl.BACKOFF_BASE_MILLIS_KEY);
+			if ((backoffBaseMillis != null) && (!backoffBaseMillis.isEmpty()))
+			{
+				try
+				{
+					int backoffBaseMillisInt = Integer
+							.valueOf(backoffBaseMillis.trim());
+					if (backoffBaseMillisInt > 0)
+						this.backoffBaseMillis = backoffBaseMillisInt;
+				}
+				catch (NumberFormatException e)
+				{
+					this.logger.log(LogService.LOG_WARNING,
+							"wrong format for configuration param "
+									+ BLENetworkDriverImpl.BACKOFF_BASE_MILLIS_KEY
+									+ " should be integer");
+				}
+			}
+
+			// maximum backoff for unreachable devices
+			String backoffMaxMillis = (String) properties
+					.get(BLENetworkDriverImpl.BACKOFF_MAX_MILLIS_KEY);
+			if ((backoffMaxMillis != null) && (!backoffMaxMillis.isEmpty()))
+			{
+				try
+				{
+					int backoffMaxMillisInt = Integer
+							.valueOf(backoffMaxMillis.trim());
+					if (backoffMaxMillisInt > 0)
+						this.backoffMaxMillis = backoffMaxMillisInt;
+				}
+				catch (NumberFormatException e)
+				{
+					this.logger.log(LogService.LOG_WARNING,
+							"wrong format for configuration param "
+									+ BLENetworkDriverImpl.BACKOFF_MAX_MILLIS_KEY
+									+ " should be integer");
+				}
+			}
+
+			// interval between adapter checks
+			String adapterCheckIntervalMillis = (String) properties.get(
+					BLENetworkDriverImpl.ADAPTER_CHECK_INTERVAL_MILLIS_KEY);
+			if ((adapterCheckIntervalMillis != null)
+					&& (!adapterCheckIntervalMillis.isEmpty()))
+			{
+				try
+				{
+					int adapterCheckIntervalMillisInt = Integer
+							.valueOf(adapterCheckIntervalMillis.trim());
+					if ((adapterCheckIntervalMillisInt > 0)
+							&& (adapterCheckIntervalMillisInt != this.adapterCheckIntervalMillis))
+					{
+						this.adapterCheckIntervalMillis = adapterCheckIntervalMillisInt;
+						this.scheduleAdapterCheck();
+					}
+				}
+				catch (NumberFormatException e)
+				{
+					this.logger.log(LogService.LOG_WARNING,
+							"wrong format for configuration param "
+									+ BLENetworkDriverImpl.ADAPTER_CHECK_INTERVAL_MILLIS_KEY
+									+ " should be integer");
+				}
+			}
+
 			// update the service registration
 			this.registerNetworkService();
 		}
@@ -398,51 +893,93 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 	@Override
 	public void addDeviceRegistration(BLEDeviceRegistration devReg)
 	{
-		// TODO: this requires careful re-definition of the equals and hash
-		// methods on BLEDeviceRegistrations
-
-		// check that the registration has not been already inserted
-		if (!this.activeRegistrations.contains(devReg))
+		// devices are indexed by packed MAC address, registrations of
+		// invalid addresses could never be served
+		if (!MacAddress.isValid(devReg.getMacAddress()))
 		{
-			// insert the registration
-			this.activeRegistrations.add(devReg);
+			this.logger.log(LogService.LOG_WARNING,
+					"Invalid device MAC address " + devReg.getDeviceMacAddress()
+							+ ", the device registration is ignored");
+			return;
+		}
 
-			// check if a managed device already exists for the given device
-			// registration
-			ManagedBluetoothDevice device = this.managedDevices
-					.get(devReg.getDeviceMacAddress());
+		// registrations are compared by value, see
+		// BLEDeviceRegistration#equals(Object), and changes to the registry
+		// and to the managed devices are serialized
+		synchronized (this.activeRegistrations)
+		{
+			// insert the registration, if not already inserted
+			if (this.activeRegistrations.add(devReg))
+				this.attachDeviceRegistration(devReg);
+		}
+	}
 
-			// if null, create the device
-			if (device == null)
-			{
-				// create the device
-				device = new ManagedBluetoothDevice(
-						devReg.getDeviceMacAddress(),
-						devReg.getAdapterMacAddress());
+	/**
+	 * Attaches the given, newly added, device registration to the managed
+	 * device it refers to, creating the device if needed, and schedules the
+	 * device characteristics. Shall be called while holding the registry
+	 * lock.
+	 * 
+	 * @param devReg
+	 *            The registration to attach
+	 */
+	private void attachDeviceRegistration(BLEDeviceRegistration devReg)
+	{
+		// check if a managed device already exists for the given device
+		// registration
+		ManagedBluetoothDevice device = this.managedDevices
+				.get(devReg.getMacAddress());
 
-				// store the device
-				this.managedDevices.put(device.getDeviceMacAddress(), device);
-			}
+		// if null, create the device
+		if (device == null)
+		{
+			// create the device
+			device = new ManagedBluetoothDevice(
+					devReg.getDeviceMacAddress(),
+					devReg.getAdapterMacAddress());
+
+			// assign the device to an adapter, respecting the registration
+			// pin, if any
+			BLEAdapterContext adapter = this.adapters
+					.assign(device.getAdapterMacAddress());
+			device.setAssignedAdapterKey(adapter.getKey());
+
+			// operations on the device are serialized on a queue running
+			// on the pool of the device adapter
+			device.setOperationQueue(
+					new DeviceOperationQueue(adapter.getPool()));
+
+			// store the device
+			this.managedDevices.put(device.getMacAddress(), device);
+		}
 
-			// add the registration to the managed device
-			device.addBLEDeviceRegistration(devReg);
+		// add the registration to the managed device, tracking the device
+		// polling time change
+		int previousPollingTime = device.getPollingTimeMillis();
+		device.addBLEDeviceRegistration(devReg);
+		this.devicePeriods.replace(previousPollingTime,
+				device.getPollingTimeMillis());
 
-			this.logger.log(LogService.LOG_INFO,
-					"Added device registration, polling time: "
-							+ device.getPollingTimeMillis());
+		this.logger.log(LogService.LOG_INFO,
+				"Added device registration, polling time: "
+						+ device.getPollingTimeMillis());
 
-			// attach the low-level device
-			if (!this.attachLowLevelDevice(device))
-			{
-				synchronized (this.devicesWaitingForDiscovery)
-				{
-					this.devicesWaitingForDiscovery.add(device);
-				}
-			}
+		// attach the low-level device
+		if (!this.attachLowLevelDevice(device))
+		{
+			this.devicesWaitingForDiscovery.put(device.getMacAddress(), device);
 
-			// update the polling times
-			this.updatePollingTimes();
+			// a backed-off adaptive discovery shall resume scanning
+			if (this.adaptiveDiscovery)
+				this.startDiscovery();
 		}
+
+		// update the polling times
+		this.updatePollingTimes();
+
+		// schedule the device characteristics, already scheduled ones are
+		// moved according to the possibly updated polling time
+		this.scheduleCharacteristics(device);
 	}
 
 	@Override
@@ -455,45 +992,60 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 		// check not null
 		if (driverInstance != null)
 		{
-			// create the list of registrations that mmust be removed
-			ArrayList<BLEDeviceRegistration> toRemove = new ArrayList<BLEDeviceRegistration>();
-
-			// iterate over device registrations
-			for (BLEDeviceRegistration deviceReg : this.activeRegistrations)
+			synchronized (this.activeRegistrations)
 			{
-				// check if the registration originated from the given driver
-				if (deviceReg.getBleDriverInstance().equals(driverInstance))
+				// detach the registrations of the given driver, only, from the
+				// registry
+				for (BLEDeviceRegistration deviceReg : this.activeRegistrations
+						.removeAll(driverInstance))
 				{
-					// the registration shall be removed
-
 					// get the corresponding managed device
 					ManagedBluetoothDevice deviceToUpdate = deviceReg
 							.getManagedDevice();
 
+					// check not null
+					if (deviceToUpdate == null)
+						continue;
+
 					// remove the registration (nulls the pointer to the managed
 					// device held by the registration object)
+					int previousPollingTime = deviceToUpdate
+							.getPollingTimeMillis();
 					deviceToUpdate.removeBLEDeviceRegistration(deviceReg);
 
 					// check if the managed device has still specs pointing at
 					// it
-					if (deviceToUpdate.getDeviceRegistrations().size() < 1)
+					if (deviceToUpdate.getDeviceRegistrations().size() > 0)
 					{
+						// track the device polling time change
+						this.devicePeriods.replace(previousPollingTime,
+								deviceToUpdate.getPollingTimeMillis());
+					}
+					else
+					{
+						// the device does not contribute anymore
+						this.devicePeriods.remove(previousPollingTime);
+
 						// remove the device
 						this.managedDevices
+								.remove(deviceToUpdate.getMacAddress());
+
+						// stop waiting for its discovery
+						this.discoveredDevice(deviceToUpdate);
+
+						// and release its connection and its adapter
+						this.connectionManager.disconnect(deviceToUpdate);
+						this.adapters.release(
+								deviceToUpdate.getAssignedAdapterKey());
+
+						// drop its latency statistics
+						this.latencyStats
 								.remove(deviceToUpdate.getDeviceMacAddress());
 					}
-
-					// last step add the registration to the list of
-					// registrations to remove, as removal cannot be done while
-					// iterating over the set
-					toRemove.add(deviceReg);
 				}
-			}
 
-			// remove registrations
-			for (BLEDeviceRegistration regToRemove : toRemove)
-			{
-				this.activeRegistrations.remove(regToRemove);
+				// the required polling time might have been raised
+				this.updatePollingTimes();
 			}
 		}
 	}
@@ -503,8 +1055,8 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 			String characteristicUUID)
 	{
 		// get the managed device corresponding to the given mac address
-		ManagedBluetoothDevice device = this.managedDevices
-				.get(deviceMacAddress);
+		ManagedBluetoothDevice device = this
+				.getManagedDevice(deviceMacAddress);
 		return this.readValue(device, serviceUUID, characteristicUUID);
 	}
 
@@ -516,47 +1068,21 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 		// check not null
 		if (device != null)
 		{
-			// get the low-level device
-			BluetoothDevice lowDevice = device.getLowDevice();
-
-			// check not null
-			if (lowDevice != null)
+			// keep operations on the device serialized
+			synchronized (device)
 			{
-				// check if connected
-				if (!lowDevice.getConnected())
-				{
-					// try connecting
-					if (lowDevice.connect())
-					{
-						// the device device is connected
-						value = this.readFromConnectedDevice(lowDevice,
-								serviceUUID, characteristicUUID);
-					}
-					else
-					{
-						this.logger.log(LogService.LOG_WARNING,
-								"Unable to connect to device "
-										+ lowDevice.getName()
-										+ " perhaps it is out-of-range or sleeping");
-					}
-				}
-				else
+				// connect, if needed, and read
+				if (this.connect(device))
 				{
-					// the device is connected
-					value = this.readFromConnectedDevice(lowDevice, serviceUUID,
+					value = this.readFromConnectedDevice(device, serviceUUID,
 							characteristicUUID);
 				}
 			}
-			else
-			{
-				this.logger.log(LogService.LOG_WARNING,
-						"Unfortunately the device has not yet been discovered, please retry later...");
-			}
 		}
 		else
 		{
 			this.logger.log(LogService.LOG_ERROR,
-					"Attempt to write characteristic value to a device not managed by this network driver, perhaps you forgot to add a BLEDeviceRegistration?");
+					"Attempt to read characteristic value from a device not managed by this network driver, perhaps you forgot to add a BLEDeviceRegistration?");
 		}
 
 		return value;
@@ -573,48 +1099,17 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 		if (value != null)
 		{
 			// get the managed device corresponding to the given mac address
-			ManagedBluetoothDevice device = this.managedDevices
-					.get(deviceMacAddress);
+			ManagedBluetoothDevice device = this
+					.getManagedDevice(deviceMacAddress);
 
 			// check not null
 			if (device != null)
 			{
-				// get the low-level device
-				BluetoothDevice lowDevice = device.getLowDevice();
-
-				// check not null
-				if (lowDevice != null)
-				{
-					// check if connected
-					if (!lowDevice.getConnected())
-					{
-						// try connecting
-						if (lowDevice.connect())
-						{
-							// connected, write the value
-							written = this.writeToConnectedDevice(lowDevice,
-									serviceUUID, characteristicUUID, value);
-						}
-						else
-						{
-							this.logger.log(LogService.LOG_WARNING,
-									"Unable to connect to device "
-											+ lowDevice.getName()
-											+ " perhaps it is out-of-range or sleeping");
-						}
-					}
-					else
-					{
-						// connected, write the value
-						written = this.writeToConnectedDevice(lowDevice,
-								serviceUUID, characteristicUUID, value);
-					}
-
-				}
-				else
+				// keep operations on the device serialized
+				synchronized (device)
 				{
-					this.logger.log(LogService.LOG_WARNING,
-							"Unfortunately the device has not yet been discovered, please retry later...");
+					written = this.writeValue(device, serviceUUID,
+							characteristicUUID, value);
 				}
 			}
 			else
@@ -631,14 +1126,369 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 		return written;
 	}
 
-	
+	@Override
+	public Future<byte[]> readValueAsync(String deviceMacAddress,
+			final String serviceUUID, final String characteristicUUID)
+	{
+		// get the managed device corresponding to the given mac address
+		final ManagedBluetoothDevice device = this
+				.getManagedDevice(deviceMacAddress);
 
-	/**
-	 * Provides a list of the mac addresses of devices currently managed, the
-	 * list is a copy of the actual "live" structure hosted by this driver class
-	 * which allows thread-safe operation where concurrent modifications to the
-	 * list of managed devices might occur.
-	 * 
+		// read on the device queue
+		return this.submitOperation(device, new Callable<byte[]>()
+		{
+			@Override
+			public byte[] call() throws Exception
+			{
+				return readValue(device, serviceUUID, characteristicUUID);
+			}
+		});
+	}
+
+	@Override
+	public Future<Boolean> writeValueAsync(final String deviceMacAddress,
+			final String serviceUUID, final String characteristicUUID,
+			final byte[] value)
+	{
+		// get the managed device corresponding to the given mac address
+		ManagedBluetoothDevice device = this
+				.getManagedDevice(deviceMacAddress);
+
+		// write on the device queue, checks and logging are shared with the
+		// blocking write
+		return this.submitOperation(device, new Callable<Boolean>()
+		{
+			@Override
+			public Boolean call() throws Exception
+			{
+				return writeValue(deviceMacAddress, serviceUUID,
+						characteristicUUID, value);
+			}
+		});
+	}
+
+	/**
+	 * Submits the given operation to the queue of the given device, arming
+	 * the operation timeout, if any. Operations on devices which are not
+	 * managed are completed immediately, on the calling thread.
+	 * 
+	 * @param device
+	 *            The device targeted by the operation, might be null
+	 * @param callable
+	 *            The operation to execute
+	 * @return The {@link Future} representing the operation result
+	 */
+	private <V> Future<V> submitOperation(ManagedBluetoothDevice device,
+			Callable<V> callable)
+	{
+		// build the operation
+		final DeviceOperation<V> operation = new DeviceOperation<V>(callable);
+
+		// check not null
+		if ((device != null) && (device.getOperationQueue() != null))
+		{
+			// enqueue the operation
+			device.getOperationQueue().execute(operation);
+
+			// arm the timeout
+			if (this.operationTimeoutMillis > 0)
+			{
+				try
+				{
+					operation.setTimeout(this.timeoutService.schedule(
+							new Runnable()
+							{
+								@Override
+								public void run()
+								{
+									operation.cancel(false);
+								}
+							}, this.operationTimeoutMillis,
+							TimeUnit.MILLISECONDS));
+				}
+				catch (RejectedExecutionException e)
+				{
+					// the driver is shutting down, no timeout needed
+				}
+			}
+		}
+		else
+		{
+			// nothing to queue, complete immediately
+			operation.run();
+		}
+
+		return operation;
+	}
+
+	/**
+	 * Writes the given value on the given characteristic of the given managed
+	 * device, connecting the device if needed.
+	 * 
+	 * @param device
+	 *            The device to write
+	 * @param serviceUUID
+	 *            The UUID of the service to which the characteristic belongs
+	 * @param characteristicUUID
+	 *            The UUID of the characteristic to write
+	 * @param value
+	 *            The value to write
+	 * @return true if successfully written, false otherwise
+	 */
+	private boolean writeValue(ManagedBluetoothDevice device,
+			String serviceUUID, String characteristicUUID, byte[] value)
+	{
+		boolean written = false;
+
+		// connect, if needed, and write
+		if (this.connect(device))
+		{
+			written = this.writeToConnectedDevice(device, serviceUUID,
+					characteristicUUID, value);
+		}
+
+		return written;
+	}
+
+	/**
+	 * Enables value notifications (or indications) on the given managed
+	 * characteristic, connecting the device if needed. Notified values are
+	 * dispatched to the driver instances monitoring the characteristic, as
+	 * for polled values.
+	 * 
+	 * @param device
+	 *            The device offering the characteristic
+	 * @param service
+	 *            The service to which the characteristic belongs
+	 * @param characteristic
+	 *            The characteristic to subscribe
+	 * @return true if notifications are enabled, false otherwise
+	 */
+	public boolean enableNotifications(ManagedBluetoothDevice device,
+			ManagedBluetoothService service,
+			ManagedBluetoothCharacteristic characteristic)
+	{
+		// keep operations on the device serialized
+		synchronized (device)
+		{
+			// already subscribed, nothing to do; the low-level device might
+			// have been detached in the meanwhile, e.g., when re-homing
+			BluetoothDevice lowDevice = device.getLowDevice();
+			if ((characteristic.isNotifying()) && (lowDevice != null))
+			{
+				try
+				{
+					if (lowDevice.getConnected())
+						return true;
+				}
+				catch (BluetoothException e)
+				{
+					// the device cannot be queried, subscribe again
+					characteristic.setNotifying(false);
+				}
+			}
+
+			// connect, if needed
+			if (this.connect(device))
+			{
+				// get the low-level handles
+				BluetoothGattService lowService = this.getLowService(device,
+						service.getServiceUUID());
+				BluetoothGattCharacteristic lowCharacteristic = (lowService != null)
+						? this.getLowCharacteristic(device, lowService,
+								service.getServiceUUID(),
+								characteristic.getCharacteristicUUID())
+						: null;
+
+				// check not null
+				if (lowCharacteristic != null)
+				{
+					try
+					{
+						// subscribe, notifications and indications are both
+						// handled by the stack
+						lowCharacteristic.enableValueNotifications(
+								new CharacteristicNotificationHandler(this,
+										characteristic));
+						characteristic.setNotifying(true);
+
+						// debug
+						this.logger.log(LogService.LOG_DEBUG,
+								"Enabled notifications for characteristic ("
+										+ characteristic.getCharacteristicUUID()
+										+ ") of device "
+										+ device.getDeviceMacAddress());
+
+						// let drivers configure the subscribed device
+						this.notifySubscription(device, service,
+								characteristic);
+					}
+					catch (BluetoothException e)
+					{
+						// cached handles might be stale, resolve them again
+						// at the next access
+						device.invalidateHandles();
+
+						// log the error
+						this.logger.log(LogService.LOG_WARNING,
+								"Unable to enable notifications for characteristic ("
+										+ characteristic.getCharacteristicUUID()
+										+ ") of device "
+										+ device.getDeviceMacAddress() + ": "
+										+ e.getMessage());
+					}
+				}
+				else
+				{
+					// log the error
+					this.logger.log(LogService.LOG_WARNING,
+							"Unable to get characteristic ("
+									+ characteristic.getCharacteristicUUID()
+									+ ") of service ("
+									+ service.getServiceUUID()
+									+ ") of device "
+									+ device.getDeviceMacAddress());
+				}
+			}
+
+			return characteristic.isNotifying();
+		}
+	}
+
+	/**
+	 * Informs the driver instances monitoring the given characteristic that
+	 * notifications have been enabled, on the device dispatching lane
+	 * 
+	 * @param device
+	 *            The device offering the characteristic
+	 * @param service
+	 *            The service to which the characteristic belongs
+	 * @param characteristic
+	 *            The subscribed characteristic
+	 */
+	private void notifySubscription(ManagedBluetoothDevice device,
+			ManagedBluetoothService service,
+			ManagedBluetoothCharacteristic characteristic)
+	{
+		final String characteristicUUID = characteristic
+				.getCharacteristicUUID();
+		final String serviceUUID = service.getServiceUUID();
+
+		for (CharacteristicMonitorSpec spec : characteristic
+				.getMonitoringSpecs())
+		{
+			final BLEDriverInstance drvInstance = spec.getServiceSpec()
+					.getDeviceInfo().getBleDriverInstance();
+			if (drvInstance != null)
+			{
+				this.dispatchingService.execute(device.getMacAddress(),
+						new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								drvInstance.notificationsEnabled(
+										characteristicUUID, serviceUUID);
+							}
+						});
+			}
+		}
+	}
+
+	/**
+	 * Attaches the given low-level device to the given managed device and
+	 * starts tracking its connection state, to re-enable notifications after
+	 * reconnections.
+	 * 
+	 * @param device
+	 *            The managed device
+	 * @param lowDevice
+	 *            The low-level device to attach
+	 */
+	public void setLowLevelDevice(ManagedBluetoothDevice device,
+			BluetoothDevice lowDevice)
+	{
+		// set the device
+		device.setLowDevice(lowDevice);
+
+		// track connection changes
+		try
+		{
+			lowDevice.enableConnectedNotifications(
+					new DeviceConnectionHandler(this, device));
+		}
+		catch (BluetoothException e)
+		{
+			// not fatal, subscriptions are anyway checked at every polling
+			// time
+			this.logger.log(LogService.LOG_DEBUG,
+					"Unable to track connection changes of device "
+							+ device.getDeviceMacAddress() + ": "
+							+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Handles the disconnection of the given device: subscriptions and cached
+	 * handles are dropped and notified characteristics are scheduled
+	 * immediately, to subscribe them again as soon as possible.
+	 * 
+	 * @param device
+	 *            The disconnected device
+	 */
+	public void disconnectedDevice(ManagedBluetoothDevice device)
+	{
+		// the connection is not live anymore
+		this.connectionManager.remove(device);
+
+		// drop handles and subscriptions
+		device.invalidateHandles();
+
+		// schedule notified characteristics for re-subscription
+		long now = System.nanoTime();
+		for (ManagedBluetoothService service : device.getServices())
+		{
+			for (ManagedBluetoothCharacteristic characteristic : service
+					.getCharacteristics().values())
+			{
+				if (characteristic.isNotificationRequired())
+					this.pollingSchedule.schedule(characteristic, now);
+			}
+		}
+	}
+
+	/**
+	 * Connects the given managed device, if not already connected, through
+	 * the {@link BLEConnectionManager}. Cached handles are invalidated
+	 * whenever a new connection is needed.
+	 * 
+	 * @param device
+	 *            The device to connect
+	 * @return true if the device is connected, false otherwise
+	 */
+	boolean connect(ManagedBluetoothDevice device)
+	{
+		// connect, if needed, within the adapter connection limit; the
+		// outcome, including a missing low-level device, is always reported
+		// to the device health
+		boolean connected = this.connectionManager.connect(device);
+
+		// check not discovered
+		if ((!connected) && (device.getLowDevice() == null))
+		{
+			this.logger.log(LogService.LOG_WARNING,
+					"Unfortunately the device has not yet been discovered, please retry later...");
+		}
+
+		return connected;
+	}
+
+	/**
+	 * Provides a list of the mac addresses of devices currently managed, the
+	 * list is a copy of the actual "live" structure hosted by this driver class
+	 * which allows thread-safe operation where concurrent modifications to the
+	 * list of managed devices might occur.
+	 * 
 	 * @return The list of the mac addresses of currently managed devices
 	 */
 	public ArrayList<String> getManagedBluetoothDeviceAddresses()
@@ -646,8 +1496,8 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 		ArrayList<String> managedDevicesSnapshot = new ArrayList<String>();
 
 		// copy the list of device mac addresses (Thread safe operation
-		for (String devMac : this.managedDevices.keySet())
-			managedDevicesSnapshot.add(devMac);
+		for (ManagedBluetoothDevice device : this.managedDevices.values())
+			managedDevicesSnapshot.add(device.getDeviceMacAddress());
 
 		return managedDevicesSnapshot;
 	}
@@ -661,7 +1511,22 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 	 */
 	public ManagedBluetoothDevice getManagedDevice(String deviceMacAddress)
 	{
-		return this.managedDevices.get(deviceMacAddress);
+		return this.managedDevices.get(MacAddress.toLong(deviceMacAddress));
+	}
+
+	/**
+	 * Gets the managed device having the given packed MAC address, without
+	 * allocating
+	 * 
+	 * @param macAddress
+	 *            The device MAC address, packed into a long (see
+	 *            {@link MacAddress#toLong(String)})
+	 * @return The device, or null if no device with the given address is
+	 *         managed
+	 */
+	public ManagedBluetoothDevice getManagedDevice(long macAddress)
+	{
+		return this.managedDevices.get(macAddress);
 	}
 
 	/**
@@ -671,76 +1536,689 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 	 */
 	public final ArrayList<ManagedBluetoothDevice> getManagedDevicesWaitingForDiscovery()
 	{
-		ArrayList<ManagedBluetoothDevice> managedDevicesSnapshot = new ArrayList<ManagedBluetoothDevice>();
+		// the map provides a copy of its values (Thread safe operation)
+		return new ArrayList<ManagedBluetoothDevice>(
+				this.devicesWaitingForDiscovery.values());
+	}
 
-		// copy the list of device mac addresses (Thread safe operation
-		for (ManagedBluetoothDevice device : this.devicesWaitingForDiscovery)
-			managedDevicesSnapshot.add(device);
+	/**
+	 * Gets the managed device waiting for discovery having the given MAC
+	 * address, in constant time
+	 * 
+	 * @param macAddress
+	 *            The device MAC address, packed into a long (see
+	 *            {@link MacAddress#toLong(String)})
+	 * @return The device, or null if no device with the given address is
+	 *         waiting for discovery
+	 */
+	public ManagedBluetoothDevice getDeviceWaitingForDiscovery(long macAddress)
+	{
+		return this.devicesWaitingForDiscovery.get(macAddress);
+	}
 
-		return managedDevicesSnapshot;
+	/**
+	 * Gets the number of managed devices waiting for discovery
+	 * 
+	 * @return the number of waiting devices
+	 */
+	public int getDevicesWaitingForDiscoveryCount()
+	{
+		return this.devicesWaitingForDiscovery.size();
 	}
 
 	public void discoveredDevice(ManagedBluetoothDevice device)
 	{
 		// remove the device from the waiting list
-		this.devicesWaitingForDiscovery.remove(device);
+		this.devicesWaitingForDiscovery.remove(device.getMacAddress());
+	}
+
+	/**
+	 * Gets the currently valid polling time in milliseconds
+	 * 
+	 * @return the actualPollingTimeMillis
+	 */
+	public int getActualPollingTimeMillis()
+	{
+		return actualPollingTimeMillis;
+	}
+
+	/**
+	 * Sets all the detected adapters in discovery mode, or the "default"
+	 * adapter if no adapter has been detected yet
+	 * 
+	 * @param enabled
+	 */
+	public void setDiscovery(boolean enabled)
+	{
+		List<BluetoothAdapter> lowAdapters = this.adapters.getLowAdapters();
+		if (lowAdapters.isEmpty())
+		{
+			if (enabled)
+			{
+				this.bluetooth.get().getManager().startDiscovery();
+			}
+			else
+			{
+				this.bluetooth.get().getManager().stopDiscovery();
+			}
+		}
+		else
+		{
+			for (BluetoothAdapter lowAdapter : lowAdapters)
+			{
+				try
+				{
+					if (enabled)
+						lowAdapter.startDiscovery();
+					else
+						lowAdapter.stopDiscovery();
+				}
+				catch (BluetoothException e)
+				{
+					this.logger.log(LogService.LOG_WARNING,
+							"Unable to " + (enabled ? "start" : "stop")
+									+ " discovery on adapter "
+									+ lowAdapter.getAddress() + ": "
+									+ e.getMessage());
+				}
+			}
+		}
+
+		// track the discovery duty cycle
+		this.metrics.discoveryChanged(enabled);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.doggateway.drivers.bluetooth.ble.network.interfaces.BLENetwork#
+	 * startDiscovery()
+	 */
+	@Override
+	public void startDiscovery()
+	{
+		// if the discovery thread exists, start it
+		if ((this.discoveryWorker != null) && (this.discoveryWorker.isAlive()))
+		{
+			// signal the worker to resume...
+			this.discoveryWorker.interrupt();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.doggateway.drivers.bluetooth.ble.network.interfaces.BLENetwork#
+	 * stopDiscovery()
+	 */
+	@Override
+	public void stopDiscovery()
+	{
+		// TODO Define Automatic vs Manual discovery!!! at now do nothing
+	}
+
+	/**
+	 * (Re-)schedules the periodic check of the available adapters at the
+	 * currently configured interval
+	 */
+	private synchronized void scheduleAdapterCheck()
+	{
+		// cancel the current check, if any
+		if (this.adapterCheck != null)
+			this.adapterCheck.cancel(false);
+
+		try
+		{
+			// adapter removals are detected within one interval, whatever the
+			// discovery duty cycle
+			this.adapterCheck = this.adapterCheckService
+					.scheduleWithFixedDelay(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							refreshAdapters();
+						}
+					}, this.adapterCheckIntervalMillis,
+							this.adapterCheckIntervalMillis,
+							TimeUnit.MILLISECONDS);
+		}
+		catch (RejectedExecutionException e)
+		{
+			// the driver has been deactivated, nothing to check
+			this.adapterCheck = null;
+		}
+	}
+
+	/**
+	 * Detects the adapters currently available at the Bluetooth service
+	 * level: new adapters are immediately used for newly managed devices and
+	 * for devices of failed adapters, adapters removed or powered off are
+	 * failed over, i.e., their devices are moved to the remaining adapters.
+	 */
+	public void refreshAdapters()
+	{
+		BluetoothService bls = this.bluetooth.get();
+		if (bls != null)
+		{
+			try
+			{
+				List<BluetoothAdapter> lowAdapters = bls.getManager()
+						.getAdapters();
+				if (lowAdapters != null)
+				{
+					// the keys of the adapters currently present
+					Set<String> present = new HashSet<String>();
+
+					for (BluetoothAdapter lowAdapter : lowAdapters)
+					{
+						BLEAdapterContext adapter = this.adapters
+								.getAdapter(lowAdapter.getAddress());
+						present.add(adapter.getKey());
+
+						// newly detected adapter
+						if (adapter.getLowAdapter() == null)
+						{
+							adapter.setLowAdapter(lowAdapter);
+
+							// track power changes
+							lowAdapter.enablePoweredNotifications(
+									new AdapterPowerHandler(this, adapter));
+						}
+
+						// check the power state
+						this.adapterPowerChanged(adapter,
+								lowAdapter.getPowered());
+					}
+
+					// removed adapters
+					for (BLEAdapterContext adapter : this.adapters
+							.getAdapters())
+					{
+						if ((adapter.getLowAdapter() != null)
+								&& (!present.contains(adapter.getKey())))
+						{
+							adapter.setLowAdapter(null);
+							this.adapterPowerChanged(adapter, false);
+						}
+					}
+				}
+			}
+			catch (BluetoothException e)
+			{
+				this.logger.log(LogService.LOG_WARNING,
+						"Unable to list the available adapters: "
+								+ e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Handles a change of the availability of the given adapter: adapters
+	 * becoming unavailable are failed over and their devices are re-homed in
+	 * bulk, adapters becoming available are used for re-homing the devices
+	 * of failed adapters, if any.
+	 * 
+	 * @param adapter
+	 *            The adapter
+	 * @param powered
+	 *            true if the adapter is present and powered, false otherwise
+	 */
+	public void adapterPowerChanged(BLEAdapterContext adapter,
+			boolean powered)
+	{
+		// the detection time
+		long now = System.nanoTime();
+
+		if ((powered) && (adapter.getLowAdapter() != null))
+		{
+			if (adapter.setAvailable(true))
+			{
+				this.logger.log(LogService.LOG_INFO,
+						"Adapter " + adapter.getKey() + " available");
+
+				// devices left without adapter can use this one
+				this.rehome(this.getOrphanDevices(), now);
+			}
+		}
+		else if (adapter.setAvailable(false))
+		{
+			this.logger.log(LogService.LOG_WARNING, "Adapter "
+					+ adapter.getKey() + " failed, moving its devices");
+			this.metrics.adapterFailed();
+
+			// move the devices of the failed adapter
+			this.rehome(this.getDevicesOn(adapter), now);
+		}
+	}
+
+	/**
+	 * Provides the given low-level device as seen through the adapter
+	 * assigned to the given managed device. Devices not pinned to an adapter
+	 * and not seen by their assigned adapter are re-assigned to the adapter
+	 * seeing them, pinned devices are only accessed through the pinned
+	 * adapter, once detected.
+	 * 
+	 * @param device
+	 *            The managed device
+	 * @param lowDevice
+	 *            A low-level device having the same MAC address, seen by any
+	 *            adapter
+	 * @return The low-level device to use, or null if the device has not been
+	 *         seen by its pinned adapter yet
+	 */
+	public BluetoothDevice onAssignedAdapter(ManagedBluetoothDevice device,
+			BluetoothDevice lowDevice)
+	{
+		// the assigned adapter
+		BLEAdapterContext adapter = this.adapters
+				.getAdapter(device.getAssignedAdapterKey());
+		BluetoothAdapter lowAdapter = adapter.getLowAdapter();
+
+		// not detected, e.g., the default adapter, nothing to check
+		if (lowAdapter == null)
+			return lowDevice;
+
+		// the adapter seeing the given device
+		BluetoothAdapter seenBy = lowDevice.getAdapter();
+		if ((seenBy == null)
+				|| (adapter.getKey().equalsIgnoreCase(seenBy.getAddress())))
+			return lowDevice;
+
+		// look for the device among the ones seen by the assigned adapter
+		List<BluetoothDevice> adapterDevices = lowAdapter.getDevices();
+		if (adapterDevices != null)
+		{
+			for (BluetoothDevice candidate : adapterDevices)
+			{
+				if (device.getMacAddress() == MacAddress
+						.toLong(candidate.getAddress()))
+					return candidate;
+			}
+		}
+
+		// pinned devices wait for their adapter, unless failed over
+		if ((device.getAdapterMacAddress() != null)
+				&& (adapter.getKey().equals(BLEAdapterBalancer
+						.keyOf(device.getAdapterMacAddress()))))
+			return null;
+
+		// the device is in range of a different adapter, move it there
+		this.moveToAdapter(device, this.adapters.getAdapter(seenBy.getAddress()));
+		return lowDevice;
+	}
+
+	/**
+	 * Moves the given managed device to the given adapter: its operations
+	 * are executed on the adapter pool and its connection counts against the
+	 * adapter budget. Operations already submitted complete on the previous
+	 * adapter.
+	 * 
+	 * @param device
+	 *            The device to move
+	 * @param adapter
+	 *            The target adapter
+	 */
+	void moveToAdapter(ManagedBluetoothDevice device, BLEAdapterContext adapter)
+	{
+		String previousKey = device.getAssignedAdapterKey();
+		if (!adapter.getKey().equals(previousKey))
+		{
+			// count the device on the new adapter
+			this.adapters.move(previousKey, adapter);
+
+			// and bind it
+			this.bindToAdapter(device, adapter);
+		}
+	}
+
+	/**
+	 * Binds the given managed device, already counted on the given adapter,
+	 * to the adapter
+	 * 
+	 * @param device
+	 *            The device to bind
+	 * @param adapter
+	 *            The adapter
+	 */
+	private void bindToAdapter(ManagedBluetoothDevice device,
+			BLEAdapterContext adapter)
+	{
+		synchronized (device)
+		{
+			if (!adapter.getKey().equals(device.getAssignedAdapterKey()))
+			{
+				// the live connection, if any, belongs to the previous adapter
+				this.connectionManager.remove(device);
+
+				// update the assignment
+				device.setAssignedAdapterKey(adapter.getKey());
+
+				// run the next operations on the new adapter
+				if (device.getOperationQueue() != null)
+					device.getOperationQueue().setExecutor(adapter.getPool());
+
+				this.logger.log(LogService.LOG_INFO,
+						"Device " + device.getDeviceMacAddress()
+								+ " moved to adapter " + adapter.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Moves the given devices, in bulk, to the available adapters and
+	 * re-attaches them in parallel, on the pools of their new adapters,
+	 * through the low-level devices already seen by the new adapters.
+	 * Polling schedules are kept, notification subscriptions are
+	 * re-established as soon as possible. Devices not seen by their new
+	 * adapter, or left without adapter, wait for discovery.
+	 * 
+	 * @param devices
+	 *            The devices to move
+	 * @param detectedNanos
+	 *            The monotonic time at which the need for re-homing was
+	 *            detected, to measure the re-homing time
+	 */
+	private void rehome(List<ManagedBluetoothDevice> devices,
+			final long detectedNanos)
+	{
+		if (devices.isEmpty())
+			return;
+
+		// the devices seen by each new adapter, listed once per re-homing
+		final ConcurrentHashMap<String, MacAddressMap<BluetoothDevice>> seenDevices = new ConcurrentHashMap<String, MacAddressMap<BluetoothDevice>>();
+
+		// the re-homing progress
+		final AtomicInteger pending = new AtomicInteger(devices.size());
+		final AtomicInteger reattached = new AtomicInteger();
+
+		for (final ManagedBluetoothDevice device : devices)
+		{
+			// the new adapter, the pinned one if available
+			final BLEAdapterContext adapter = this.adapters
+					.selectAvailable(device.getAdapterMacAddress());
+
+			if (adapter != null)
+			{
+				// count the device on the new adapter, before selecting the
+				// adapter of the next device
+				this.adapters.move(device.getAssignedAdapterKey(), adapter);
+
+				// bind and re-attach in parallel, on the re-homing service,
+				// not queued behind the pending device operations and polls
+				// of the adapter pools
+				Runnable reattach = new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						try
+						{
+							bindToAdapter(device, adapter);
+							if (reattachLowLevelDevice(device, adapter,
+									seenDevices))
+								reattached.incrementAndGet();
+						}
+						finally
+						{
+							if (pending.decrementAndGet() == 0)
+								rehomed(reattached.get(), detectedNanos);
+						}
+					}
+				};
+				try
+				{
+					this.rehomingService.execute(reattach);
+				}
+				catch (RejectedExecutionException e)
+				{
+					// the driver is being deactivated, the re-homing is over
+					// anyway
+					if (pending.decrementAndGet() == 0)
+						this.rehomed(reattached.get(), detectedNanos);
+				}
+			}
+			else
+			{
+				// no adapter available, wait for discovery
+				synchronized (device)
+				{
+					this.detachLowLevelDevice(device);
+				}
+				if (pending.decrementAndGet() == 0)
+					this.rehomed(reattached.get(), detectedNanos);
+			}
+		}
+	}
+
+	/**
+	 * Re-attaches the given device through the given adapter, if the adapter
+	 * has already seen the device, otherwise puts the device in the list of
+	 * devices waiting for discovery
+	 * 
+	 * @param device
+	 *            The device
+	 * @param adapter
+	 *            The new adapter of the device
+	 * @param seenDevices
+	 *            The devices seen by each adapter, filled on demand
+	 * @return true if re-attached, false otherwise
+	 */
+	private boolean reattachLowLevelDevice(ManagedBluetoothDevice device,
+			BLEAdapterContext adapter,
+			ConcurrentHashMap<String, MacAddressMap<BluetoothDevice>> seenDevices)
+	{
+		BluetoothDevice lowDevice = null;
+
+		try
+		{
+			// list the devices seen by the adapter, once
+			MacAddressMap<BluetoothDevice> adapterDevices = seenDevices
+					.get(adapter.getKey());
+			BluetoothAdapter lowAdapter = adapter.getLowAdapter();
+			if ((adapterDevices == null) && (lowAdapter != null))
+			{
+				adapterDevices = new MacAddressMap<BluetoothDevice>();
+				List<BluetoothDevice> lowDevices = lowAdapter.getDevices();
+				if (lowDevices != null)
+				{
+					for (BluetoothDevice candidate : lowDevices)
+					{
+						long candidateAddress = MacAddress
+								.toLong(candidate.getAddress());
+						if (MacAddress.isValid(candidateAddress))
+							adapterDevices.put(candidateAddress, candidate);
+					}
+				}
+
+				// another re-attachment might have listed them concurrently
+				MacAddressMap<BluetoothDevice> listed = seenDevices
+						.putIfAbsent(adapter.getKey(), adapterDevices);
+				if (listed != null)
+					adapterDevices = listed;
+			}
+
+			if (adapterDevices != null)
+				lowDevice = adapterDevices.get(device.getMacAddress());
+		}
+		catch (BluetoothException e)
+		{
+			this.logger.log(LogService.LOG_WARNING,
+					"Unable to list the devices of adapter " + adapter.getKey()
+							+ ": " + e.getMessage());
+		}
+
+		synchronized (device)
+		{
+			// the device might have been moved again in the meanwhile
+			if ((lowDevice != null) && (adapter.getKey()
+					.equals(device.getAssignedAdapterKey())))
+			{
+				// release the previous low-level device
+				this.releaseLowLevelDevice(device);
+
+				// attach the new one, and stop waiting for its discovery
+				this.setLowLevelDevice(device, lowDevice);
+				this.discoveredDevice(device);
+
+				// drop handles and re-subscribe notifications, as after a
+				// disconnection
+				this.disconnectedDevice(device);
+
+				return true;
+			}
+
+			this.detachLowLevelDevice(device);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Detaches the low-level device of the given managed device, which waits
+	 * for discovery. Shall be called while holding the device lock.
+	 * 
+	 * @param device
+	 *            The device to detach
+	 */
+	private void detachLowLevelDevice(ManagedBluetoothDevice device)
+	{
+		// the connection is not live anymore
+		this.connectionManager.remove(device);
+
+		// release the low-level device
+		this.releaseLowLevelDevice(device);
+		device.setLowDevice(null);
+
+		// subscriptions do not survive the low-level device, clear them
+		// even if set while detaching
+		device.invalidateHandles();
+
+		// wait for discovery, waking up the discovery thread if the
+		// Bluetooth service is available
+		this.devicesWaitingForDiscovery.put(device.getMacAddress(), device);
+		if (this.bluetooth.get() != null)
+			this.startDiscovery();
+	}
+
+	/**
+	 * Stops tracking the connection state of the low-level device of the
+	 * given managed device, if any
+	 * 
+	 * @param device
+	 *            The managed device
+	 */
+	private void releaseLowLevelDevice(ManagedBluetoothDevice device)
+	{
+		BluetoothDevice lowDevice = device.getLowDevice();
+		if (lowDevice != null)
+		{
+			try
+			{
+				lowDevice.disableConnectedNotifications();
+			}
+			catch (BluetoothException e)
+			{
+				// the device might be gone together with its adapter
+			}
+		}
 	}
 
 	/**
-	 * Gets the currently valid polling time in milliseconds
+	 * Records the completion of a re-homing
 	 * 
-	 * @return the actualPollingTimeMillis
+	 * @param reattached
+	 *            The number of devices immediately re-attached
+	 * @param detectedNanos
+	 *            The monotonic time at which the need for re-homing was
+	 *            detected
 	 */
-	public int getActualPollingTimeMillis()
+	private void rehomed(int reattached, long detectedNanos)
 	{
-		return actualPollingTimeMillis;
+		long duration = System.nanoTime() - detectedNanos;
+		this.metrics.devicesRehomed(reattached, duration);
+		this.logger.log(LogService.LOG_INFO,
+				"Re-homed devices in " + TimeUnit.NANOSECONDS.toMillis(duration)
+						+ " ms, " + reattached + " re-attached, "
+						+ this.devicesWaitingForDiscovery.size()
+						+ " waiting for discovery");
 	}
 
 	/**
-	 * Sets the "default" adapter in discovery mode, TODO: extend this method
-	 * for multiple adapter support
+	 * Gets the managed devices assigned to the given adapter
 	 * 
-	 * @param enabled
+	 * @param adapter
+	 *            The adapter
+	 * @return the list of devices
 	 */
-	public void setDiscovery(boolean enabled)
+	private List<ManagedBluetoothDevice> getDevicesOn(
+			BLEAdapterContext adapter)
 	{
-		if (enabled)
-		{
-			this.bluetooth.get().getManager().startDiscovery();
-		}
-		else
+		List<ManagedBluetoothDevice> devices = new ArrayList<ManagedBluetoothDevice>();
+		for (ManagedBluetoothDevice device : this.managedDevices.values())
 		{
-			this.bluetooth.get().getManager().stopDiscovery();
+			if (adapter.getKey().equals(device.getAssignedAdapterKey()))
+				devices.add(device);
 		}
+		return devices;
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Gets the managed devices left without adapter, i.e., assigned to an
+	 * adapter which is not available. Devices on the default adapter are
+	 * only included when detached.
 	 * 
-	 * @see org.doggateway.drivers.bluetooth.ble.network.interfaces.BLENetwork#
-	 * startDiscovery()
+	 * @return the list of devices
 	 */
-	@Override
-	public void startDiscovery()
+	private List<ManagedBluetoothDevice> getOrphanDevices()
 	{
-		// if the discovery thread exists, start it
-		if ((this.discoveryWorker != null) && (this.discoveryWorker.isAlive()))
+		List<ManagedBluetoothDevice> devices = new ArrayList<ManagedBluetoothDevice>();
+		for (ManagedBluetoothDevice device : this.managedDevices.values())
 		{
-			// signal the worker to resume...
-			this.discoveryWorker.interrupt();
+			String key = device.getAssignedAdapterKey();
+			if ((key != null)
+					&& (!this.adapters.getAdapter(key).isAvailable())
+					&& ((!BLEAdapterBalancer.DEFAULT_ADAPTER_KEY.equals(key))
+							|| (device.getLowDevice() == null)))
+				devices.add(device);
 		}
+		return devices;
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Records the latency of an operation executed on the given device,
+	 * which contributes to the average latency of the device adapter
 	 * 
-	 * @see org.doggateway.drivers.bluetooth.ble.network.interfaces.BLENetwork#
-	 * stopDiscovery()
+	 * @param device
+	 *            The device
+	 * @param nanos
+	 *            The operation latency in nanoseconds
 	 */
-	@Override
-	public void stopDiscovery()
+	void recordAdapterLatency(ManagedBluetoothDevice device, long nanos)
 	{
-		// TODO Define Automatic vs Manual discovery!!! at now do nothing
+		this.adapters.getAdapter(device.getAssignedAdapterKey())
+				.recordLatency(nanos);
+	}
+
+	/**
+	 * Gets the adapters known by the driver, with their load
+	 * 
+	 * @return the adapter balancer
+	 */
+	public BLEAdapterBalancer getAdapters()
+	{
+		return this.adapters;
+	}
+
+	/**
+	 * Gets the maximum number of devices concurrently polled through the same
+	 * adapter
+	 * 
+	 * @return the maxConcurrentPolls
+	 */
+	public int getMaxConcurrentPolls()
+	{
+		return maxConcurrentPolls;
 	}
 
 	/**
@@ -776,6 +2254,20 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 		return this.discoveryWorker.removeDiscoveryListener(listener);
 	}
 
+	@Override
+	public void addDiscoveryBatchListener(BLEDiscoveryBatchListener listener,
+			BLEDiscoveryFilter filter)
+	{
+		this.discoveryWorker.addDiscoveryBatchListener(listener, filter);
+	}
+
+	@Override
+	public boolean removeDiscoveryBatchListener(
+			BLEDiscoveryBatchListener listener)
+	{
+		return this.discoveryWorker.removeDiscoveryBatchListener(listener);
+	}
+
 	/**
 	 * Gets the number of trials to attempt per each discovery cycle
 	 * 
@@ -808,6 +2300,73 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 		return discoveryCyclingTimeMillis;
 	}
 
+	/**
+	 * Checks if discovery shall only report changes with respect to the
+	 * previous attempt
+	 * 
+	 * @return the incrementalDiscovery flag
+	 */
+	public boolean isIncrementalDiscovery()
+	{
+		return incrementalDiscovery;
+	}
+
+	/**
+	 * Checks if discovery cycles shall adapt to the number of devices waiting
+	 * for discovery
+	 * 
+	 * @return the adaptiveDiscovery flag
+	 */
+	public boolean isAdaptiveDiscovery()
+	{
+		return adaptiveDiscovery;
+	}
+
+	/**
+	 * Gets the maximum interval, in milliseconds, between adaptive discovery
+	 * cycles
+	 * 
+	 * @return the maxDiscoveryIntervalMillis
+	 */
+	public int getMaxDiscoveryIntervalMillis()
+	{
+		return maxDiscoveryIntervalMillis;
+	}
+
+	/**
+	 * Gets the interval, in milliseconds, currently elapsing between
+	 * discovery cycles
+	 * 
+	 * @return the current discovery interval
+	 */
+	public long getCurrentDiscoveryIntervalMillis()
+	{
+		return (this.discoveryWorker != null)
+				? this.discoveryWorker.getIntervalMillis() : 0;
+	}
+
+	/**
+	 * Gets the number of discovery batches merged into pending ones because
+	 * discovery listeners lagged behind
+	 * 
+	 * @return the number of merged batches
+	 */
+	public long getMergedDiscoveryBatches()
+	{
+		return (this.discoveryWorker != null)
+				? this.discoveryWorker.getMergedDiscoveryBatches() : 0;
+	}
+
+	/**
+	 * Gets the minimum RSSI change, in dBm, reported by incremental discovery
+	 * 
+	 * @return the discoveryRssiThreshold
+	 */
+	public int getDiscoveryRssiThreshold()
+	{
+		return discoveryRssiThreshold;
+	}
+
 	/**
 	 * Notifies drivers of new values, for a given characteristic
 	 * 
@@ -818,7 +2377,7 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 	 * @param targets
 	 *            The drivers "listening" to this change
 	 */
-	public synchronized void notifyNewValue(String characteristicUUID,
+	public void notifyNewValue(String characteristicUUID,
 			byte value[], String serviceUUID,
 			Set<CharacteristicMonitorSpec> targets)
 	{
@@ -834,11 +2393,205 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 			BLEDriverInstance drvInstance = devRegistration
 					.getBleDriverInstance();
 
-			// dispatch the new value
-			this.dispatchingService.submit(new NotifyValueTask(
-					characteristicUUID, serviceUUID, value, drvInstance));
+			// dispatch the new value on the device lane, unless a value is
+			// already waiting for delivery: in such a case the newest value
+			// replaces it
+			if (spec.getDispatchSlot().offer(value))
+				this.dispatchingService.execute(
+						devRegistration.getMacAddress(),
+						new NotifyValueTask(characteristicUUID, serviceUUID,
+								spec.getDispatchSlot(), drvInstance,
+								this.valueBuffers));
+			else
+				this.metrics.valueCoalesced();
+		}
+
+	}
+
+	/**
+	 * Dispatches a batch of values read in a single session, values are
+	 * delivered in the batch order, as one dispatching task. Values equal to
+	 * the last value dispatched for the same characteristic are suppressed,
+	 * unless the unchanged value heartbeat elapsed. Values of different
+	 * devices are dispatched concurrently, dispatch slots and lanes being
+	 * thread-safe.
+	 * 
+	 * @param values
+	 *            The values to dispatch, indexed by characteristic
+	 */
+	public void notifyNewValues(
+			Map<ManagedBluetoothCharacteristic, byte[]> values)
+	{
+		// the batch of notifications to deliver
+		List<NotifyValueTask> batch = new ArrayList<NotifyValueTask>();
+
+		// the device originating the values, as packed MAC address
+		long macAddress = MacAddress.INVALID;
+
+		// the heartbeat of unchanged values
+		long now = System.nanoTime();
+		long heartbeatNanos = TimeUnit.MILLISECONDS
+				.toNanos(this.unchangedValueHeartbeatMillis);
+
+		// iterate over read values
+		for (Entry<ManagedBluetoothCharacteristic, byte[]> value : values
+				.entrySet())
+		{
+			// get the service, if null the characteristic is no more monitored
+			ManagedBluetoothCharacteristic characteristic = value.getKey();
+			ManagedBluetoothService service = characteristic.getService();
+
+			// suppress values equal to the last dispatched one
+			if ((service != null) && (!characteristic
+					.checkDispatch(value.getValue(), now, heartbeatNanos)))
+			{
+				this.metrics.valueSuppressed();
+			}
+			else if (service != null)
+			{
+				// values of a batch all come from the same device
+				if (service.getDevice() != null)
+					macAddress = service.getDevice().getMacAddress();
+
+				// iterate over characteristic specs
+				for (CharacteristicMonitorSpec spec : characteristic
+						.getMonitoringSpecs())
+				{
+					// get the driver instance
+					BLEDriverInstance drvInstance = spec.getServiceSpec()
+							.getDeviceInfo().getBleDriverInstance();
+
+					// add the notification to the batch, unless a value is
+					// already waiting for delivery
+					if (spec.getDispatchSlot().offer(value.getValue()))
+						batch.add(new NotifyValueTask(
+								characteristic.getCharacteristicUUID(),
+								service.getServiceUUID(),
+								spec.getDispatchSlot(), drvInstance,
+								this.valueBuffers));
+					else
+						this.metrics.valueCoalesced();
+				}
+			}
 		}
 
+		// dispatch the whole batch on the device lane
+		if (!batch.isEmpty())
+			this.dispatchingService.execute(macAddress,
+					new NotifyBatchTask(batch));
+	}
+
+	/**
+	 * Opens a {@link BLEGattSession} on the given device, connecting it if
+	 * needed. The caller shall hold the device lock while using the session.
+	 * 
+	 * @param device
+	 *            The device on which the session shall be opened
+	 * @return The session, check {@link BLEGattSession#isOpen()} to know if
+	 *         the device is actually connected
+	 */
+	public BLEGattSession openSession(ManagedBluetoothDevice device)
+	{
+		return new BLEGattSession(this, device);
+	}
+
+	/**
+	 * Gets the manager of live connections, e.g., to access connection
+	 * statistics
+	 * 
+	 * @return the connection manager
+	 */
+	public BLEConnectionManager getConnectionManager()
+	{
+		return this.connectionManager;
+	}
+
+	/**
+	 * Gets the driver metrics
+	 * 
+	 * @return the metrics
+	 */
+	public BLENetworkMetricsImpl getMetrics()
+	{
+		return this.metrics;
+	}
+
+	/**
+	 * Gets the number of value notifications waiting to be dispatched to
+	 * driver instances
+	 * 
+	 * @return the dispatching queue depth
+	 */
+	public int getDispatchQueueDepth()
+	{
+		return this.dispatchingService.getQueueDepth();
+	}
+
+	/**
+	 * Gets the latency histograms of device operations, keyed by device MAC
+	 * address and characteristic UUID
+	 * 
+	 * @return the latency statistics
+	 */
+	public LatencyStats getLatencyStats()
+	{
+		return this.latencyStats;
+	}
+
+	/**
+	 * Gets the given percentile of the given latency metric, e.g., the 99th
+	 * percentile of the read time of a characteristic
+	 * 
+	 * @param deviceMacAddress
+	 *            The MAC address of the device
+	 * @param characteristicUUID
+	 *            The UUID of the characteristic, ignored for
+	 *            {@link Metric#CONNECT}
+	 * @param metric
+	 *            The latency metric
+	 * @param percentile
+	 *            The percentile, between 0 and 100
+	 * @return The percentile latency in nanoseconds, or -1 if no latency has
+	 *         been recorded
+	 */
+	public long getLatencyPercentileNanos(String deviceMacAddress,
+			String characteristicUUID, Metric metric, double percentile)
+	{
+		LatencyHistogram histogram = this.latencyStats
+				.getHistogram(deviceMacAddress, characteristicUUID, metric);
+		return (histogram != null) ? histogram.getPercentileNanos(percentile)
+				: -1;
+	}
+
+	/**
+	 * Gets the backoff applied to unreachable devices at the first failure
+	 * 
+	 * @return the base backoff in milliseconds
+	 */
+	public int getBackoffBaseMillis()
+	{
+		return this.backoffBaseMillis;
+	}
+
+	/**
+	 * Gets the maximum backoff applied to unreachable devices
+	 * 
+	 * @return the maximum backoff in milliseconds
+	 */
+	public int getBackoffMaxMillis()
+	{
+		return this.backoffMaxMillis;
+	}
+
+	/**
+	 * Gets the allowed jitter in polling time, as percentage of the polling
+	 * time
+	 * 
+	 * @return the allowed jitter percentage
+	 */
+	public int getAllowedTimeJitter()
+	{
+		return this.allowedTimeJitter;
 	}
 
 	/**
@@ -865,11 +2618,15 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 		BluetoothDevice lowDevice = this.bluetooth.get()
 				.getDevice(device.getDeviceMacAddress(), timeout, nTrials);
 
+		// the device shall be accessed through its adapter
+		if (lowDevice != null)
+			lowDevice = this.onAssignedAdapter(device, lowDevice);
+
 		// if not null, store the device
 		if (lowDevice != null)
 		{
 			// set the device
-			device.setLowDevice(lowDevice);
+			this.setLowLevelDevice(device, lowDevice);
 
 			// set the attached flag at true
 			attached = true;
@@ -880,28 +2637,69 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 		return attached;
 	}
 
-	private byte[] readFromConnectedDevice(BluetoothDevice device,
+	byte[] readFromConnectedDevice(ManagedBluetoothDevice device,
 			String serviceUUID, String characteristicUUID)
 	{
 		// initially null
 		byte[] value = null;
 
+		// check if handles are already cached, resolution time is only
+		// tracked for actual resolutions
+		ManagedBluetoothService managedService = device.getService(serviceUUID);
+		ManagedBluetoothCharacteristic managedCharacteristic = (managedService != null)
+				? managedService.getCharacteristics().get(characteristicUUID)
+				: null;
+		boolean cached = (managedCharacteristic != null)
+				&& (managedService.getLowService() != null)
+				&& (managedCharacteristic.getLowCharacteristic() != null);
+		long start = System.nanoTime();
+
 		// try getting the referred service
-		BluetoothGattService service = this.bluetooth.get().getService(device,
-				serviceUUID, this.deviceGetTimeout, this.deviceGetTrials);
+		BluetoothGattService service = this.getLowService(device, serviceUUID);
 
 		// check not null
 		if (service != null)
 		{
 			// try getting the characteristic
-			BluetoothGattCharacteristic characteristic = this.bluetooth.get()
-					.getCharacteristic(service, characteristicUUID);
+			BluetoothGattCharacteristic characteristic = this
+					.getLowCharacteristic(device, service, serviceUUID,
+							characteristicUUID);
 
 			// check not null
 			if (characteristic != null)
 			{
-				// read the value
-				value = characteristic.readValue();
+				// track the resolution latency
+				if (!cached)
+					this.latencyStats.record(device.getDeviceMacAddress(),
+							characteristicUUID, Metric.SERVICE_RESOLUTION,
+							System.nanoTime() - start);
+
+				try
+				{
+					// read the value
+					start = System.nanoTime();
+					value = characteristic.readValue();
+
+					// track the read latency, also per adapter
+					long latency = System.nanoTime() - start;
+					this.latencyStats.record(device.getDeviceMacAddress(),
+							characteristicUUID, Metric.READ, latency);
+					this.recordAdapterLatency(device, latency);
+				}
+				catch (BluetoothException e)
+				{
+					// cached handles might be stale, resolve them again at
+					// the next access
+					device.invalidateHandles();
+
+					// log the error
+					this.logger.log(LogService.LOG_WARNING,
+							"Unable to read the value for characteristic ("
+									+ characteristicUUID + ") of service ("
+									+ serviceUUID + ") of device "
+									+ device.getDeviceMacAddress() + ": "
+									+ e.getMessage());
+				}
 			}
 			else
 			{
@@ -910,7 +2708,7 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 						"Unable to read the value for characteristic ("
 								+ characteristicUUID + ") of service ("
 								+ serviceUUID + ") of device "
-								+ device.getName());
+								+ device.getDeviceMacAddress());
 			}
 		}
 		else
@@ -918,34 +2716,50 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 			// log the error
 			this.logger.log(LogService.LOG_WARNING,
 					"Unable to get service (" + serviceUUID + ") from device "
-							+ device.getName() + " within "
+							+ device.getDeviceMacAddress() + " within "
 							+ this.deviceGetTrials + " trial, each waiting for"
 							+ this.deviceGetTimeout);
 		}
 		return value;
 	}
 
-	private boolean writeToConnectedDevice(BluetoothDevice lowDevice,
+	private boolean writeToConnectedDevice(ManagedBluetoothDevice device,
 			String serviceUUID, String characteristicUUID, byte[] value)
 	{
 		boolean written = false;
 		// try getting the referred service
-		BluetoothGattService service = this.bluetooth.get().getService(
-				lowDevice, serviceUUID, this.deviceGetTimeout,
-				this.deviceGetTrials);
+		BluetoothGattService service = this.getLowService(device, serviceUUID);
 
 		// check not null
 		if (service != null)
 		{
 			// try getting the characteristic
-			BluetoothGattCharacteristic characteristic = this.bluetooth.get()
-					.getCharacteristic(service, characteristicUUID);
+			BluetoothGattCharacteristic characteristic = this
+					.getLowCharacteristic(device, service, serviceUUID,
+							characteristicUUID);
 
 			// check not null
 			if (characteristic != null)
 			{
-				// read the value
-				written = characteristic.writeValue(value);
+				try
+				{
+					// write the value
+					written = characteristic.writeValue(value);
+				}
+				catch (BluetoothException e)
+				{
+					// cached handles might be stale, resolve them again at
+					// the next access
+					device.invalidateHandles();
+
+					// log the error
+					this.logger.log(LogService.LOG_WARNING,
+							"Unable to write the value for characteristic ("
+									+ characteristicUUID + ") of service ("
+									+ serviceUUID + ") of device "
+									+ device.getDeviceMacAddress() + ": "
+									+ e.getMessage());
+				}
 			}
 			else
 			{
@@ -954,7 +2768,7 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 						"Unable to write the value for characteristic ("
 								+ characteristicUUID + ") of service ("
 								+ serviceUUID + ") of device "
-								+ lowDevice.getName());
+								+ device.getDeviceMacAddress());
 			}
 		}
 		else
@@ -962,77 +2776,117 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 			// log the error
 			this.logger.log(LogService.LOG_WARNING,
 					"Unable to get service (" + serviceUUID + ") from device "
-							+ lowDevice.getName() + " within "
+							+ device.getDeviceMacAddress() + " within "
 							+ this.deviceGetTrials + " trial, each waiting for"
 							+ this.deviceGetTimeout);
 		}
 		return written;
 	}
 
-	/*
-	private boolean startStopNotifyOnConnectedDevice(BluetoothDevice lowDevice,
-			String serviceUUID, String characteristicUUID, boolean value)
+	/**
+	 * Gets the low-level GATT service having the given UUID on the given
+	 * (connected) device. Handles of managed services are cached in the
+	 * corresponding {@link ManagedBluetoothService} and only resolved on
+	 * first access, or after being invalidated.
+	 * 
+	 * @param device
+	 *            The managed device offering the service
+	 * @param serviceUUID
+	 *            The UUID of the service to get
+	 * @return The low-level service, or null if not available
+	 */
+	private BluetoothGattService getLowService(ManagedBluetoothDevice device,
+			String serviceUUID)
 	{
-		boolean written = false;
-		// try getting the referred service
-		BluetoothGattService service = this.bluetooth.get().getService(
-				lowDevice, serviceUUID, this.deviceGetTimeout,
-				this.deviceGetTrials);
+		// check the cache first
+		ManagedBluetoothService managedService = device.getService(serviceUUID);
+		BluetoothGattService service = (managedService != null)
+				? managedService.getLowService() : null;
 
-		// check not null
-		if (service != null)
+		// resolve the service, if needed
+		if (service == null)
 		{
-			// try getting the characteristic
-			BluetoothGattCharacteristic characteristic = this.bluetooth.get()
-					.getCharacteristic(service, characteristicUUID);
+			service = this.bluetooth.get().getService(device.getLowDevice(),
+					serviceUUID, this.deviceGetTimeout, this.deviceGetTrials);
 
-			// check not null
-			if (characteristic != null)
-			{
-				// read the value
-				if (value)
-				{
-					written = characteristic.startNotify();
-				}
-				else
-				{
-					written = characteristic.stopNotify();
-				}
-			}
-			else
-			{
-				// log the error
-				this.logger.log(LogService.LOG_WARNING,
-						"Unable to write the value for characteristic ("
-								+ characteristicUUID + ") of service ("
-								+ serviceUUID + ") of device "
-								+ lowDevice.getName());
-			}
+			// cache the handle
+			if (managedService != null)
+				managedService.setLowService(service);
 		}
-		else
+
+		return service;
+	}
+
+	/**
+	 * Gets the low-level GATT characteristic having the given UUID from the
+	 * given low-level service. Handles of managed characteristics are cached
+	 * in the corresponding {@link ManagedBluetoothCharacteristic} and only
+	 * resolved on first access, or after being invalidated.
+	 * 
+	 * @param device
+	 *            The managed device offering the service
+	 * @param service
+	 *            The low-level service to which the characteristic belongs
+	 * @param serviceUUID
+	 *            The UUID of the service
+	 * @param characteristicUUID
+	 *            The UUID of the characteristic to get
+	 * @return The low-level characteristic, or null if not available
+	 */
+	private BluetoothGattCharacteristic getLowCharacteristic(
+			ManagedBluetoothDevice device, BluetoothGattService service,
+			String serviceUUID, String characteristicUUID)
+	{
+		// check the cache first
+		ManagedBluetoothService managedService = device.getService(serviceUUID);
+		ManagedBluetoothCharacteristic managedCharacteristic = (managedService != null)
+				? managedService.getCharacteristics().get(characteristicUUID)
+				: null;
+		BluetoothGattCharacteristic characteristic = (managedCharacteristic != null)
+				? managedCharacteristic.getLowCharacteristic() : null;
+
+		// resolve the characteristic, if needed
+		if (characteristic == null)
 		{
-			// log the error
-			this.logger.log(LogService.LOG_WARNING,
-					"Unable to get service (" + serviceUUID + ") from device "
-							+ lowDevice.getName() + " within "
-							+ this.deviceGetTrials + " trial, each waiting for"
-							+ this.deviceGetTimeout);
+			characteristic = this.bluetooth.get().getCharacteristic(service,
+					characteristicUUID);
+
+			// cache the handle
+			if (managedCharacteristic != null)
+				managedCharacteristic.setLowCharacteristic(characteristic);
 		}
-		return written;
+
+		return characteristic;
 	}
-	*/
 
-	private void updatePollingTimes()
-	{
-		// iterate over all device registrations for computing the minum
-		// required polling time
-		int minimumPollingTimeRequired = Integer.MAX_VALUE;
 
-		for (ManagedBluetoothDevice mDev : this.managedDevices.values())
+	/**
+	 * Schedules all the characteristics of the given device for polling
+	 * 
+	 * @param device
+	 *            The device whose characteristics shall be scheduled
+	 */
+	private void scheduleCharacteristics(ManagedBluetoothDevice device)
+	{
+		for (ManagedBluetoothService service : device.getServices())
 		{
-			if (mDev.getPollingTimeMillis() < minimumPollingTimeRequired)
-				minimumPollingTimeRequired = mDev.getPollingTimeMillis();
+			for (ManagedBluetoothCharacteristic characteristic : service
+					.getCharacteristics().values())
+			{
+				this.pollingSchedule.add(characteristic);
+			}
 		}
+	}
+
+	/**
+	 * Updates the actual polling time from the minimum polling time required
+	 * by managed devices, incrementally tracked at each registration change.
+	 * Shall be called while holding the registry lock.
+	 */
+	private void updatePollingTimes()
+	{
+		// the minimum required polling time
+		int minimumPollingTimeRequired = this.devicePeriods.getMinimum();
 
 		// check the polling time against the lowest admissible polling time
 		if (minimumPollingTimeRequired < this.lowestValidPollingTime)
@@ -1046,9 +2900,10 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 		}
 
 		// compute the actual thread timing depending on jitter and device
-		// number
-		int jitterAwarePollingTime = (minimumPollingTimeRequired
-				* allowedTimeJitter) / 100;
+		// number, with no registration the minimum is Integer.MAX_VALUE and
+		// the product must not overflow
+		int jitterAwarePollingTime = (int) (((long) minimumPollingTimeRequired
+				* allowedTimeJitter) / 100);
 		this.actualPollingTimeMillis = (jitterAwarePollingTime > 0)
 				? jitterAwarePollingTime
 				: BLENetworkDriverImpl.MINIMUM_THREAD_SLEEP_MILLIS;
@@ -1070,6 +2925,14 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 					.registerService(BLENetwork.class.getName(), this, null);
 		}
 
+		// register the metrics service
+		if (this.regServiceBLENetworkMetrics == null)
+		{
+			this.regServiceBLENetworkMetrics = this.bundleContext
+					.registerService(BLENetworkMetrics.class.getName(),
+							this.metrics, null);
+		}
+
 	}
 
 	/**
@@ -1084,6 +2947,13 @@ public class BLENetworkDriverImpl implements BLENetwork, ManagedService
 			this.regServiceBLENetworkDriverImpl.unregister();
 		}
 
+		if (this.regServiceBLENetworkMetrics != null)
+		{
+			// de-register
+			this.regServiceBLENetworkMetrics.unregister();
+			this.regServiceBLENetworkMetrics = null;
+		}
+
 	}
 
 }
@@ -0,0 +1,316 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.doggateway.drivers.bluetooth.ble.network.info.LatencyHistogram;
+import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLENetworkMetrics;
+
+/**
+ * The {@link BLENetworkMetrics} implementation: counters are kept in atomic
+ * variables updated by the driver threads, gauges are read on demand from
+ * lock-free driver state.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class BLENetworkMetricsImpl implements BLENetworkMetrics
+{
+	// the driver
+	private BLENetworkDriverImpl theDriver;
+
+	// the counters
+	private AtomicLong pollsAttempted;
+	private AtomicLong pollsSucceeded;
+	private AtomicLong notificationsReceived;
+	private AtomicLong connectFailures;
+	private AtomicLong valuesCoalesced;
+	private AtomicLong valuesSuppressed;
+	private AtomicLong adapterFailures;
+	private AtomicLong devicesRehomed;
+
+	// the duration of the last re-homing of devices, from adapter failure
+	// detection to re-attachment, in nanoseconds, -1 if none happened
+	private volatile long lastRehomingNanos;
+
+	// the end-to-end latencies of successful polls, over all devices
+	private LatencyHistogram pollLatency;
+
+	// the monotonic time at which metrics started being collected
+	private long startNanos;
+
+	// the overall time, in nanoseconds, spent with discovery enabled, not
+	// including the current discovery, if any
+	private AtomicLong discoveryNanos;
+
+	// the monotonic time at which the current discovery started, or -1 if
+	// discovery is not enabled
+	private AtomicLong discoveryStartNanos;
+
+	/**
+	 * Builds a new, zeroed, set of metrics for the given driver
+	 * 
+	 * @param theDriver
+	 *            The network driver
+	 */
+	public BLENetworkMetricsImpl(BLENetworkDriverImpl theDriver)
+	{
+		// store the driver
+		this.theDriver = theDriver;
+
+		// build the counters
+		this.pollsAttempted = new AtomicLong();
+		this.pollsSucceeded = new AtomicLong();
+		this.notificationsReceived = new AtomicLong();
+		this.connectFailures = new AtomicLong();
+		this.valuesCoalesced = new AtomicLong();
+		this.valuesSuppressed = new AtomicLong();
+		this.adapterFailures = new AtomicLong();
+		this.devicesRehomed = new AtomicLong();
+		this.lastRehomingNanos = -1;
+		this.pollLatency = new LatencyHistogram();
+		this.discoveryNanos = new AtomicLong();
+		this.discoveryStartNanos = new AtomicLong(-1);
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Counts a poll, i.e., a characteristic read attempt
+	 * 
+	 * @param succeeded
+	 *            true if a value has been read, false otherwise
+	 */
+	public void pollAttempted(boolean succeeded)
+	{
+		this.pollsAttempted.incrementAndGet();
+		if (succeeded)
+			this.pollsSucceeded.incrementAndGet();
+	}
+
+	/**
+	 * Records the end-to-end latency of a successful poll, i.e., the time
+	 * elapsed between the poll deadline and the availability of the value
+	 * 
+	 * @param latencyNanos
+	 *            The poll latency, in nanoseconds
+	 */
+	public void pollCompleted(long latencyNanos)
+	{
+		this.pollLatency.record(latencyNanos);
+	}
+
+	/**
+	 * Counts an adapter failure, i.e., an adapter removed or powered off
+	 */
+	public void adapterFailed()
+	{
+		this.adapterFailures.incrementAndGet();
+	}
+
+	/**
+	 * Records the completion of the re-homing of devices after an adapter
+	 * failure
+	 * 
+	 * @param reattached
+	 *            The number of devices re-attached through another adapter
+	 * @param durationNanos
+	 *            The time elapsed from the failure detection to the last
+	 *            re-attachment attempt, in nanoseconds
+	 */
+	public void devicesRehomed(int reattached, long durationNanos)
+	{
+		this.devicesRehomed.addAndGet(reattached);
+		this.lastRehomingNanos = durationNanos;
+	}
+
+	/**
+	 * Counts a value notified or indicated by a device
+	 */
+	public void notificationReceived()
+	{
+		this.notificationsReceived.incrementAndGet();
+	}
+
+	/**
+	 * Counts a failed connection attempt
+	 */
+	public void connectFailed()
+	{
+		this.connectFailures.incrementAndGet();
+	}
+
+	/**
+	 * Counts a value replaced by a newer one before being dispatched to a
+	 * driver instance
+	 */
+	public void valueCoalesced()
+	{
+		this.valuesCoalesced.incrementAndGet();
+	}
+
+	/**
+	 * Counts a polled value not dispatched as equal to the last dispatched
+	 * one
+	 */
+	public void valueSuppressed()
+	{
+		this.valuesSuppressed.incrementAndGet();
+	}
+
+	/**
+	 * Tracks discovery activation, to compute the discovery duty cycle
+	 * 
+	 * @param enabled
+	 *            true if discovery has been enabled, false if disabled
+	 */
+	public void discoveryChanged(boolean enabled)
+	{
+		long now = System.nanoTime();
+
+		if (enabled)
+		{
+			// start tracking, if not already started
+			this.discoveryStartNanos.compareAndSet(-1, now);
+		}
+		else
+		{
+			// accumulate the discovery time
+			long start = this.discoveryStartNanos.getAndSet(-1);
+			if (start != -1)
+				this.discoveryNanos.addAndGet(now - start);
+		}
+	}
+
+	/**
+	 * Gets the fraction of time spent with discovery enabled, since metrics
+	 * started being collected
+	 * 
+	 * @return the discovery duty cycle, between 0 and 1
+	 */
+	public double getDiscoveryDutyCycle()
+	{
+		long now = System.nanoTime();
+
+		// the overall discovery time, including the current discovery
+		long discovery = this.discoveryNanos.get();
+		long start = this.discoveryStartNanos.get();
+		if (start != -1)
+			discovery += now - start;
+
+		long elapsed = now - this.startNanos;
+		return (elapsed > 0) ? Math.min(1.0, (double) discovery / elapsed)
+				: 0.0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.doggateway.drivers.bluetooth.ble.network.interfaces.
+	 * BLENetworkMetrics#getSnapshot()
+	 */
+	@Override
+	public Map<String, Number> getSnapshot()
+	{
+		BLEConnectionManager connectionManager = this.theDriver
+				.getConnectionManager();
+
+		Map<String, Number> snapshot = new LinkedHashMap<String, Number>();
+
+		// counters
+		snapshot.put(BLENetworkMetrics.POLLS_ATTEMPTED,
+				this.pollsAttempted.get());
+		snapshot.put(BLENetworkMetrics.POLLS_SUCCEEDED,
+				this.pollsSucceeded.get());
+		snapshot.put(BLENetworkMetrics.NOTIFICATIONS_RECEIVED,
+				this.notificationsReceived.get());
+		snapshot.put(BLENetworkMetrics.CONNECT_HITS,
+				connectionManager.getHits());
+		snapshot.put(BLENetworkMetrics.CONNECT_MISSES,
+				connectionManager.getMisses());
+		snapshot.put(BLENetworkMetrics.CONNECT_FAILURES,
+				this.connectFailures.get());
+		snapshot.put(BLENetworkMetrics.CONNECT_REJECTIONS,
+				connectionManager.getRejections());
+		snapshot.put(BLENetworkMetrics.CONNECT_EVICTIONS,
+				connectionManager.getEvictions());
+		snapshot.put(BLENetworkMetrics.DISPATCH_COALESCED,
+				this.valuesCoalesced.get());
+		snapshot.put(BLENetworkMetrics.DISPATCH_SUPPRESSED,
+				this.valuesSuppressed.get());
+
+		// gauges
+		snapshot.put(BLENetworkMetrics.DISPATCH_QUEUE_DEPTH,
+				this.theDriver.getDispatchQueueDepth());
+		snapshot.put(BLENetworkMetrics.DEVICES_WAITING_FOR_DISCOVERY,
+				this.theDriver.getDevicesWaitingForDiscoveryCount());
+		snapshot.put(BLENetworkMetrics.ACTUAL_POLLING_TIME_MILLIS,
+				this.theDriver.getActualPollingTimeMillis());
+		snapshot.put(BLENetworkMetrics.LIVE_CONNECTIONS,
+				connectionManager.getConnectionCount());
+		snapshot.put(BLENetworkMetrics.ADAPTERS,
+				this.theDriver.getAdapters().getAvailableAdapterCount());
+		snapshot.put(BLENetworkMetrics.ADAPTER_FAILURES,
+				this.adapterFailures.get());
+		snapshot.put(BLENetworkMetrics.ADAPTER_REHOMED_DEVICES,
+				this.devicesRehomed.get());
+		snapshot.put(BLENetworkMetrics.ADAPTER_REHOMING_LAST_MILLIS,
+				BLENetworkMetricsImpl.toMillis(this.lastRehomingNanos));
+		snapshot.put(BLENetworkMetrics.DISCOVERY_DUTY_CYCLE,
+				this.getDiscoveryDutyCycle());
+		snapshot.put(BLENetworkMetrics.DISCOVERY_INTERVAL_MILLIS,
+				this.theDriver.getCurrentDiscoveryIntervalMillis());
+		snapshot.put(BLENetworkMetrics.DISCOVERY_BATCHES_MERGED,
+				this.theDriver.getMergedDiscoveryBatches());
+		snapshot.put(BLENetworkMetrics.POLL_LATENCY_P50_MILLIS,
+				BLENetworkMetricsImpl.toMillis(
+						this.pollLatency.getPercentileNanos(50)));
+		snapshot.put(BLENetworkMetrics.POLL_LATENCY_P99_MILLIS,
+				BLENetworkMetricsImpl.toMillis(
+						this.pollLatency.getPercentileNanos(99)));
+
+		return snapshot;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.doggateway.drivers.bluetooth.ble.network.interfaces.
+	 * BLENetworkMetrics#getMetric(java.lang.String)
+	 */
+	@Override
+	public Number getMetric(String metric)
+	{
+		return this.getSnapshot().get(metric);
+	}
+
+	/**
+	 * Converts the given latency to milliseconds
+	 * 
+	 * @param nanos
+	 *            The latency in nanoseconds, negative if not available
+	 * @return The latency in milliseconds, or -1 if not available
+	 */
+	private static double toMillis(long nanos)
+	{
+		return (nanos >= 0) ? nanos / 1000000.0 : -1.0;
+	}
+
+}
@@ -0,0 +1,268 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.doggateway.drivers.bluetooth.ble.network.info.BLEDeviceRegistration;
+import org.doggateway.drivers.bluetooth.ble.network.info.MacAddress;
+import org.doggateway.drivers.bluetooth.ble.network.info.MacAddressMap;
+
+/**
+ * The set of active {@link BLEDeviceRegistration}s, indexed both by packed
+ * device MAC address (see {@link MacAddressMap}) and by originating
+ * {@link BLEDriverInstance}. Adding and removing a registration takes
+ * (amortized) constant time, removing all the registrations of a
+ * driver takes time proportional to the number of registrations of that
+ * driver only.
+ * 
+ * Updates are serialized, to keep the two indexes consistent, while lookups
+ * are lock-free and can be safely performed by the polling and discovery
+ * threads.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class BLERegistrationRegistry
+{
+	// the registrations, indexed by packed device MAC address
+	private MacAddressMap<Set<BLEDeviceRegistration>> byDevice;
+
+	// the registrations, indexed by originating driver instance
+	private ConcurrentHashMap<BLEDriverInstance, Set<BLEDeviceRegistration>> byDriver;
+
+	// the overall number of registrations
+	private volatile int size;
+
+	/**
+	 * Builds a new, empty, registry
+	 */
+	public BLERegistrationRegistry()
+	{
+		// build the indexes
+		this.byDevice = new MacAddressMap<Set<BLEDeviceRegistration>>();
+		this.byDriver = new ConcurrentHashMap<BLEDriverInstance, Set<BLEDeviceRegistration>>();
+	}
+
+	/**
+	 * Adds the given registration, if not already registered
+	 * 
+	 * @param registration
+	 *            The registration to add
+	 * @return true if added, false if an equal registration already exists
+	 *         or if the registration device MAC address is not valid
+	 */
+	public synchronized boolean add(BLEDeviceRegistration registration)
+	{
+		// registrations are indexed by packed MAC address
+		long deviceKey = registration.getMacAddress();
+		if (!MacAddress.isValid(deviceKey))
+			return false;
+
+		// get the registrations of the same device
+		Set<BLEDeviceRegistration> deviceRegistrations = this.byDevice
+				.get(deviceKey);
+
+		// check duplicates
+		if ((deviceRegistrations != null)
+				&& (deviceRegistrations.contains(registration)))
+			return false;
+
+		// index by device
+		if (deviceRegistrations == null)
+		{
+			deviceRegistrations = BLERegistrationRegistry.newSet();
+			this.byDevice.put(deviceKey, deviceRegistrations);
+		}
+		deviceRegistrations.add(registration);
+
+		// index by driver
+		Set<BLEDeviceRegistration> driverRegistrations = this.byDriver
+				.get(registration.getBleDriverInstance());
+		if (driverRegistrations == null)
+		{
+			driverRegistrations = BLERegistrationRegistry.newSet();
+			this.byDriver.put(registration.getBleDriverInstance(),
+					driverRegistrations);
+		}
+		driverRegistrations.add(registration);
+
+		this.size++;
+
+		return true;
+	}
+
+	/**
+	 * Removes the given registration
+	 * 
+	 * @param registration
+	 *            The registration to remove
+	 * @return true if removed, false if not registered
+	 */
+	public synchronized boolean remove(BLEDeviceRegistration registration)
+	{
+		// remove from the device index
+		long deviceKey = registration.getMacAddress();
+		Set<BLEDeviceRegistration> deviceRegistrations = this.byDevice
+				.get(deviceKey);
+		if ((deviceRegistrations == null)
+				|| (!deviceRegistrations.remove(registration)))
+			return false;
+
+		// drop empty entries
+		if (deviceRegistrations.isEmpty())
+			this.byDevice.remove(deviceKey);
+
+		// remove from the driver index
+		Set<BLEDeviceRegistration> driverRegistrations = this.byDriver
+				.get(registration.getBleDriverInstance());
+		if (driverRegistrations != null)
+		{
+			driverRegistrations.remove(registration);
+			if (driverRegistrations.isEmpty())
+				this.byDriver.remove(registration.getBleDriverInstance());
+		}
+
+		this.size--;
+
+		return true;
+	}
+
+	/**
+	 * Removes all the registrations originated by the given driver instance
+	 * 
+	 * @param driverInstance
+	 *            The driver instance
+	 * @return The removed registrations, possibly empty
+	 */
+	public synchronized Set<BLEDeviceRegistration> removeAll(
+			BLEDriverInstance driverInstance)
+	{
+		// detach the driver entry
+		Set<BLEDeviceRegistration> driverRegistrations = this.byDriver
+				.remove(driverInstance);
+		if (driverRegistrations == null)
+			return Collections.emptySet();
+
+		// remove each registration from the device index
+		for (BLEDeviceRegistration registration : driverRegistrations)
+		{
+			long deviceKey = registration.getMacAddress();
+			Set<BLEDeviceRegistration> deviceRegistrations = this.byDevice
+					.get(deviceKey);
+			if (deviceRegistrations != null)
+			{
+				deviceRegistrations.remove(registration);
+				if (deviceRegistrations.isEmpty())
+					this.byDevice.remove(deviceKey);
+			}
+		}
+
+		this.size -= driverRegistrations.size();
+
+		return driverRegistrations;
+	}
+
+	/**
+	 * Checks if the given registration, or an equal one, is registered
+	 * 
+	 * @param registration
+	 *            The registration to check
+	 * @return true if registered, false otherwise
+	 */
+	public boolean contains(BLEDeviceRegistration registration)
+	{
+		Set<BLEDeviceRegistration> deviceRegistrations = this.byDevice
+				.get(registration.getMacAddress());
+		return (deviceRegistrations != null)
+				&& (deviceRegistrations.contains(registration));
+	}
+
+	/**
+	 * Gets the registrations referring to the device having the given MAC
+	 * address, the returned set is a live, thread-safe, view
+	 * 
+	 * @param deviceMacAddress
+	 *            The device MAC address, in the XX:XX:...:XX format
+	 * @return The device registrations, possibly empty
+	 */
+	public Set<BLEDeviceRegistration> getDeviceRegistrations(
+			String deviceMacAddress)
+	{
+		return this.getDeviceRegistrations(MacAddress.toLong(deviceMacAddress));
+	}
+
+	/**
+	 * Gets the registrations referring to the device having the given packed
+	 * MAC address, the returned set is a live, thread-safe, view
+	 * 
+	 * @param macAddress
+	 *            The device MAC address, packed into a long (see
+	 *            {@link MacAddress#toLong(String)})
+	 * @return The device registrations, possibly empty
+	 */
+	public Set<BLEDeviceRegistration> getDeviceRegistrations(long macAddress)
+	{
+		Set<BLEDeviceRegistration> deviceRegistrations = this.byDevice
+				.get(macAddress);
+		return (deviceRegistrations != null)
+				? Collections.unmodifiableSet(deviceRegistrations)
+				: Collections.<BLEDeviceRegistration> emptySet();
+	}
+
+	/**
+	 * Gets the registrations originated by the given driver instance, the
+	 * returned set is a live, thread-safe, view
+	 * 
+	 * @param driverInstance
+	 *            The driver instance
+	 * @return The driver registrations, possibly empty
+	 */
+	public Set<BLEDeviceRegistration> getDriverRegistrations(
+			BLEDriverInstance driverInstance)
+	{
+		Set<BLEDeviceRegistration> driverRegistrations = this.byDriver
+				.get(driverInstance);
+		return (driverRegistrations != null)
+				? Collections.unmodifiableSet(driverRegistrations)
+				: Collections.<BLEDeviceRegistration> emptySet();
+	}
+
+	/**
+	 * Gets the overall number of registrations
+	 * 
+	 * @return the number of registrations
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Builds a new concurrent set of registrations
+	 * 
+	 * @return The set
+	 */
+	private static Set<BLEDeviceRegistration> newSet()
+	{
+		return Collections.newSetFromMap(
+				new ConcurrentHashMap<BLEDeviceRegistration, Boolean>());
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of recycled buffers through which characteristic values are
+ * delivered to driver instances as read-only {@link ByteBuffer} views, see
+ * {@link BLEDriverInstance#newMessageFromHouse(String, String, ByteBuffer)}.
+ * Each pooled buffer keeps its read-only view, thus delivering a value
+ * requires no allocation as long as the value fits the pooled capacity.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class ValueBufferPool
+{
+	// the capacity of pooled buffers, i.e., the maximum length of an
+	// attribute value
+	public static final int BUFFER_CAPACITY = 512;
+
+	// the maximum number of idle buffers kept in the pool
+	public static final int MAX_POOLED_BUFFERS = 64;
+
+	/**
+	 * A recycled buffer, together with its read-only view
+	 */
+	public static class PooledBuffer
+	{
+		// the backing buffer
+		private ByteBuffer buffer;
+
+		// the read-only view handed to driver instances
+		private ByteBuffer view;
+
+		/**
+		 * Builds a new buffer having the given capacity
+		 * 
+		 * @param capacity
+		 *            The buffer capacity
+		 */
+		private PooledBuffer(int capacity)
+		{
+			this.buffer = ByteBuffer.allocate(capacity);
+			this.view = this.buffer.asReadOnlyBuffer();
+		}
+
+		/**
+		 * Copies the given value into the buffer
+		 * 
+		 * @param value
+		 *            The value to copy
+		 * @return The read-only view of the value, positioned at 0, in
+		 *         big-endian order, valid until the buffer is released
+		 */
+		public ByteBuffer fill(byte[] value)
+		{
+			// copy the value
+			this.buffer.clear();
+			this.buffer.put(value);
+
+			// reset the view, whose position, limit and order might have been
+			// changed by the previous consumer
+			this.view.clear();
+			this.view.limit(value.length);
+			this.view.order(ByteOrder.BIG_ENDIAN);
+
+			return this.view;
+		}
+
+		/**
+		 * Gets the capacity of the buffer
+		 * 
+		 * @return the capacity
+		 */
+		public int capacity()
+		{
+			return this.buffer.capacity();
+		}
+	}
+
+	// the idle buffers
+	private ConcurrentLinkedQueue<PooledBuffer> idle;
+
+	// the number of idle buffers
+	private AtomicInteger idleCount;
+
+	/**
+	 * Builds a new, empty, pool
+	 */
+	public ValueBufferPool()
+	{
+		this.idle = new ConcurrentLinkedQueue<PooledBuffer>();
+		this.idleCount = new AtomicInteger();
+	}
+
+	/**
+	 * Acquires a buffer able to hold a value of the given length, recycling
+	 * an idle buffer if possible
+	 * 
+	 * @param length
+	 *            The length of the value to hold
+	 * @return The buffer, to be released after use
+	 */
+	public PooledBuffer acquire(int length)
+	{
+		// values exceeding the pooled capacity are not pooled
+		if (length > ValueBufferPool.BUFFER_CAPACITY)
+			return new PooledBuffer(length);
+
+		PooledBuffer buffer = this.idle.poll();
+		if (buffer != null)
+		{
+			this.idleCount.decrementAndGet();
+			return buffer;
+		}
+
+		return new PooledBuffer(ValueBufferPool.BUFFER_CAPACITY);
+	}
+
+	/**
+	 * Gives back a buffer to the pool, the buffer and its view shall not be
+	 * used anymore
+	 * 
+	 * @param buffer
+	 *            The buffer to release
+	 */
+	public void release(PooledBuffer buffer)
+	{
+		// keep at most the maximum number of standard buffers
+		if ((buffer.capacity() == ValueBufferPool.BUFFER_CAPACITY)
+				&& (this.idleCount
+						.incrementAndGet() <= ValueBufferPool.MAX_POOLED_BUFFERS))
+			this.idle.offer(buffer);
+		else if (buffer.capacity() == ValueBufferPool.BUFFER_CAPACITY)
+			this.idleCount.decrementAndGet();
+	}
+}
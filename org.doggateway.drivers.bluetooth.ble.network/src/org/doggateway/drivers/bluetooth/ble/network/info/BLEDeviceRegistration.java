@@ -18,6 +18,7 @@
 package org.doggateway.drivers.bluetooth.ble.network.info;
 
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Set;
 
 /*
@@ -48,6 +49,10 @@ public class BLEDeviceRegistration
 	// the XX:XX:...:XX format.
 	private String deviceMacAddress;
 
+	// the MAC address of the device, packed into a long (see
+	// MacAddress#toLong(String))
+	private long macAddress;
+
 	// the MAC address of the adapter used to connect to the device, in the
 	// XX:XX:...:XX format.
 	private String adapterMacAddress;
@@ -79,6 +84,7 @@ public class BLEDeviceRegistration
 	{
 		// store instance variables
 		this.deviceMacAddress = deviceMacAddress;
+		this.macAddress = MacAddress.toLong(deviceMacAddress);
 		this.adapterMacAddress = adapterMacAddress;
 		this.bleDriverInstance = bleDriverInstance;
 
@@ -108,6 +114,19 @@ public class BLEDeviceRegistration
 	public void setDeviceMacAddress(String deviceMacAddress)
 	{
 		this.deviceMacAddress = deviceMacAddress;
+		this.macAddress = MacAddress.toLong(deviceMacAddress);
+	}
+
+	/**
+	 * Gets the MAC address of the device to which this registration object
+	 * is referred, packed into a long
+	 * 
+	 * @return the packed MAC address, or {@link MacAddress#INVALID} if the
+	 *         device MAC address is not valid
+	 */
+	public long getMacAddress()
+	{
+		return macAddress;
 	}
 
 	/**
@@ -263,4 +282,68 @@ public class BLEDeviceRegistration
 		this.managedDevice = managedDevice;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode()
+	{
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((bleDriverInstance == null) ? 0
+				: bleDriverInstance.hashCode());
+		if (MacAddress.isValid(macAddress))
+			result = prime * result + MacAddress.hash(macAddress);
+		else
+			result = prime * result + ((deviceMacAddress == null) ? 0
+					: deviceMacAddress.toUpperCase(Locale.ENGLISH).hashCode());
+		return result;
+	}
+
+	/**
+	 * Two registrations are equal if they refer to the same device (MAC
+	 * addresses are compared in their packed form, thus ignoring case and
+	 * separators) and originate from the same
+	 * {@link BLEDriverInstance}, i.e., each driver instance may hold at most
+	 * one registration per device. Neither the device MAC address nor the
+	 * driver instance shall be changed while the registration is active.
+	 * 
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		BLEDeviceRegistration other = (BLEDeviceRegistration) obj;
+		if (bleDriverInstance == null)
+		{
+			if (other.bleDriverInstance != null)
+				return false;
+		}
+		else if (!bleDriverInstance.equals(other.bleDriverInstance))
+			return false;
+		if (macAddress != other.macAddress)
+			return false;
+		if (!MacAddress.isValid(macAddress))
+		{
+			// invalid addresses are compared as strings
+			if (deviceMacAddress == null)
+			{
+				if (other.deviceMacAddress != null)
+					return false;
+			}
+			else if (!deviceMacAddress
+					.equalsIgnoreCase(other.deviceMacAddress))
+				return false;
+		}
+		return true;
+	}
+
 }
\ No newline at end of file
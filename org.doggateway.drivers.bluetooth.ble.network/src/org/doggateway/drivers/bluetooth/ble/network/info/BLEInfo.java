@@ -43,6 +43,9 @@ public class BLEInfo extends ConfigurationConstants
 	// the value to enable notification
 	public static final String NOTIFY_DISABLE_VALUE = "notifyDisableValue";
 	
+	// the value delivery mode: poll (default), notify or indicate
+	public static final String DELIVERY_MODE = "deliveryMode";
+	
 	//one of the standard data types or custom
 	public static final String DATA_TYPE = "bluetoothDataType";
 	
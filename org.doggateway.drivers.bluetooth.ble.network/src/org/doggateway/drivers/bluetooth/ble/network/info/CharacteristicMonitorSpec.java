@@ -19,12 +19,50 @@ package org.doggateway.drivers.bluetooth.ble.network.info;
 
 public class CharacteristicMonitorSpec
 {
+	/**
+	 * The ways in which values of a characteristic can be delivered: by
+	 * periodically polling the characteristic, or by subscribing to GATT
+	 * notifications or indications pushed by the device.
+	 */
+	public enum DeliveryMode
+	{
+		POLL, NOTIFY, INDICATE;
+
+		/**
+		 * Parses the given delivery mode name, case insensitive
+		 * 
+		 * @param mode
+		 *            The name of the delivery mode
+		 * @return The corresponding delivery mode, or {@link #POLL} if the
+		 *         name is null or unknown
+		 */
+		public static DeliveryMode parse(String mode)
+		{
+			DeliveryMode deliveryMode = DeliveryMode.POLL;
+
+			if (mode != null)
+			{
+				for (DeliveryMode cMode : DeliveryMode.values())
+				{
+					if (cMode.name().equalsIgnoreCase(mode.trim()))
+						deliveryMode = cMode;
+				}
+			}
+
+			return deliveryMode;
+		}
+	}
+
 	// the UUID of the characteristic to which this monitoring spec is referred
 	private String characteristicUUID;
 
 	// the maximum polling time which can be considered "acceptable" according
 	// to this monitoring spec
 	private int maximumAcceptablePollingTimeMillis;
+
+	// the way in which values shall be delivered, polling by default
+	private DeliveryMode deliveryMode = DeliveryMode.POLL;
+
 	// the {@link ManagedBluetoothCharacteristic} to satisfying this monitoring
 	// spec
 	private ManagedBluetoothCharacteristic managedCharacteristic;
@@ -32,6 +70,10 @@ public class CharacteristicMonitorSpec
 	// the service spec to which this characteristic monitor spec belongs
 	private ServiceMonitorSpec serviceSpec;
 
+	// the slot holding the newest value still to be delivered to the driver
+	// instance owning this spec
+	private final DispatchSlot dispatchSlot = new DispatchSlot();
+
 	/**
 	 * Builds a new instance of CharacteristicMonitorSpec that specifies the
 	 * maximum acceptable polling time for the given Bluetooth Gatt
@@ -116,6 +158,30 @@ public class CharacteristicMonitorSpec
 		this.maximumAcceptablePollingTimeMillis = maximumAcceptablePollingTimeMillis;
 	}
 
+	/**
+	 * Gets the way in which values of the characteristic shall be delivered.
+	 * For notified or indicated characteristics the polling time is only used
+	 * to periodically check the subscription.
+	 * 
+	 * @return the deliveryMode
+	 */
+	public DeliveryMode getDeliveryMode()
+	{
+		return deliveryMode;
+	}
+
+	/**
+	 * Sets the way in which values of the characteristic shall be delivered
+	 * 
+	 * @param deliveryMode
+	 *            the deliveryMode to set
+	 */
+	public void setDeliveryMode(DeliveryMode deliveryMode)
+	{
+		this.deliveryMode = (deliveryMode != null) ? deliveryMode
+				: DeliveryMode.POLL;
+	}
+
 	/**
 	 * Gets the {@link ManagedBluetoothCharacteristic} satisying this spec
 	 * @return the managedCharacteristic
@@ -155,4 +221,16 @@ public class CharacteristicMonitorSpec
 		this.serviceSpec = serviceSpec;
 	}
 
+	/**
+	 * Gets the slot through which values of the characteristic are
+	 * delivered to the driver instance owning this spec, values not yet
+	 * delivered are replaced by newer ones
+	 * 
+	 * @return the dispatchSlot
+	 */
+	public DispatchSlot getDispatchSlot()
+	{
+		return dispatchSlot;
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,211 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.info;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The reachability state of a managed device, implemented as a circuit
+ * breaker. A reachable device is CLOSED; after repeated connection failures
+ * the device becomes OPEN and is not contacted until a backoff time elapses,
+ * then it becomes HALF_OPEN and a single trial connection is allowed. A
+ * successful trial closes the breaker, a failed one opens it again with a
+ * doubled backoff. Backoff times are randomized to avoid retrying unreachable
+ * devices all at the same time.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class DeviceHealth
+{
+	/**
+	 * The circuit breaker states
+	 */
+	public enum State
+	{
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	// the number of consecutive failures opening the breaker
+	public static final int FAILURE_THRESHOLD = 2;
+
+	// the current state
+	private State state;
+
+	// the number of consecutive connection failures
+	private int consecutiveFailures;
+
+	// the monotonic time, in nanoseconds, after which a trial is allowed
+	private long retryAtNanos;
+
+	/**
+	 * Builds a new, CLOSED, device health
+	 */
+	public DeviceHealth()
+	{
+		this.state = State.CLOSED;
+	}
+
+	/**
+	 * Checks if the device can be contacted at the given time. An OPEN
+	 * breaker whose backoff has elapsed moves to HALF_OPEN and allows exactly
+	 * one trial, until the trial outcome is reported.
+	 * 
+	 * @param now
+	 *            The current monotonic time, in nanoseconds (see
+	 *            {@link System#nanoTime()})
+	 * @return true if the device can be contacted, false otherwise
+	 */
+	public synchronized boolean allowAttempt(long now)
+	{
+		boolean allowed = false;
+
+		switch (this.state)
+		{
+			case CLOSED:
+			{
+				allowed = true;
+				break;
+			}
+			case OPEN:
+			{
+				// backoff elapsed, allow one trial
+				if (now - this.retryAtNanos >= 0)
+				{
+					this.state = State.HALF_OPEN;
+					allowed = true;
+				}
+				break;
+			}
+			case HALF_OPEN:
+			{
+				// a trial is already running
+				allowed = false;
+				break;
+			}
+		}
+
+		return allowed;
+	}
+
+	/**
+	 * Reports a successful connection, closing the breaker
+	 */
+	public synchronized void success()
+	{
+		this.state = State.CLOSED;
+		this.consecutiveFailures = 0;
+	}
+
+	/**
+	 * Reports a failed connection, opening the breaker if the failure
+	 * threshold is reached or if the failed connection was a trial.
+	 * 
+	 * @param now
+	 *            The current monotonic time, in nanoseconds (see
+	 *            {@link System#nanoTime()})
+	 * @param baseBackoffMillis
+	 *            The backoff applied when the breaker opens for the first
+	 *            time
+	 * @param maxBackoffMillis
+	 *            The maximum backoff
+	 * @return true if the breaker has been opened, false otherwise
+	 */
+	public synchronized boolean failure(long now, long baseBackoffMillis,
+			long maxBackoffMillis)
+	{
+		boolean opened = false;
+
+		// count the failure
+		this.consecutiveFailures++;
+
+		if ((this.state == State.HALF_OPEN)
+				|| (this.consecutiveFailures >= DeviceHealth.FAILURE_THRESHOLD))
+		{
+			// exponential backoff, doubled at each failure after the threshold
+			int exponent = Math.min(30, this.consecutiveFailures
+					- DeviceHealth.FAILURE_THRESHOLD);
+			long backoff = Math.min(maxBackoffMillis,
+					baseBackoffMillis << Math.max(0, exponent));
+
+			// randomize in [backoff/2, backoff]
+			long halfBackoff = backoff / 2;
+			long delay = halfBackoff + ((backoff - halfBackoff > 0)
+					? ThreadLocalRandom.current()
+							.nextLong(backoff - halfBackoff + 1)
+					: 0);
+
+			// open the breaker
+			this.state = State.OPEN;
+			this.retryAtNanos = now + TimeUnit.MILLISECONDS.toNanos(delay);
+			opened = true;
+		}
+
+		return opened;
+	}
+
+	/**
+	 * Reports that a trial could not be performed for reasons not depending
+	 * on the device (e.g., no connection available), a new trial is allowed
+	 * from the given time on
+	 * 
+	 * @param now
+	 *            The current monotonic time, in nanoseconds (see
+	 *            {@link System#nanoTime()})
+	 */
+	public synchronized void abortTrial(long now)
+	{
+		if (this.state == State.HALF_OPEN)
+		{
+			this.state = State.OPEN;
+			this.retryAtNanos = now;
+		}
+	}
+
+	/**
+	 * Gets the current breaker state
+	 * 
+	 * @return the state
+	 */
+	public synchronized State getState()
+	{
+		return this.state;
+	}
+
+	/**
+	 * Gets the monotonic time, in nanoseconds, after which the device can be
+	 * contacted again, meaningful only if the breaker is OPEN
+	 * 
+	 * @return the retry time
+	 */
+	public synchronized long getRetryAtNanos()
+	{
+		return this.retryAtNanos;
+	}
+
+	/**
+	 * Gets the number of consecutive connection failures
+	 * 
+	 * @return the number of consecutive failures
+	 */
+	public synchronized int getConsecutiveFailures()
+	{
+		return this.consecutiveFailures;
+	}
+}
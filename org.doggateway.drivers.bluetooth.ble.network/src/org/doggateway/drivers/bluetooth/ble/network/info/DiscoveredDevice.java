@@ -0,0 +1,101 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.info;
+
+/**
+ * A device reported by a discovery attempt, either discovered (or whose RSSI
+ * changed) or lost. Lost devices carry the name and RSSI last seen.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class DiscoveredDevice
+{
+	// the device name
+	private String name;
+
+	// the device MAC address
+	private String address;
+
+	// the device RSSI
+	private short rssi;
+
+	// true if the device is managed by Dog
+	private boolean managed;
+
+	/**
+	 * Builds a new discovered device record
+	 * 
+	 * @param name
+	 *            The device name
+	 * @param address
+	 *            The device MAC address
+	 * @param rssi
+	 *            The device RSSI
+	 * @param managed
+	 *            The managed flag
+	 */
+	public DiscoveredDevice(String name, String address, short rssi,
+			boolean managed)
+	{
+		this.name = name;
+		this.address = address;
+		this.rssi = rssi;
+		this.managed = managed;
+	}
+
+	/**
+	 * Gets the device name
+	 * 
+	 * @return the name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Gets the device MAC address
+	 * 
+	 * @return the address
+	 */
+	public String getAddress()
+	{
+		return address;
+	}
+
+	/**
+	 * Gets the device RSSI
+	 * 
+	 * @return the rssi
+	 */
+	public short getRssi()
+	{
+		return rssi;
+	}
+
+	/**
+	 * Checks if the device is managed by Dog
+	 * 
+	 * @return the managed flag
+	 */
+	public boolean isManaged()
+	{
+		return managed;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.info;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A single-value dispatching slot, holding the newest value of a
+ * characteristic still to be delivered to a driver instance. At most one
+ * dispatching task per slot is pending: values offered while a task is
+ * pending replace the pending value, which is counted as dropped, so that
+ * slow consumers always receive the freshest value and the dispatching
+ * backlog is bounded by the number of slots.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class DispatchSlot
+{
+	// the value waiting to be delivered, null if no delivery is pending
+	private AtomicReference<byte[]> pending;
+
+	// the number of values replaced before being delivered
+	private AtomicLong dropped;
+
+	/**
+	 * Builds a new, empty, slot
+	 */
+	public DispatchSlot()
+	{
+		this.pending = new AtomicReference<byte[]>();
+		this.dropped = new AtomicLong();
+	}
+
+	/**
+	 * Offers a new value for delivery
+	 * 
+	 * @param value
+	 *            The value, not null
+	 * @return true if a new dispatching task shall be submitted, false if the
+	 *         value replaced a pending one, which will be delivered by the
+	 *         already submitted task
+	 */
+	public boolean offer(byte[] value)
+	{
+		if (this.pending.getAndSet(value) != null)
+		{
+			// the previous value has been overwritten
+			this.dropped.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Takes the pending value, typically called by the dispatching task
+	 * 
+	 * @return The newest value, or null if none is pending
+	 */
+	public byte[] take()
+	{
+		return this.pending.getAndSet(null);
+	}
+
+	/**
+	 * Gets the number of values replaced by newer ones before being
+	 * delivered
+	 * 
+	 * @return the dropped count
+	 */
+	public long getDroppedCount()
+	{
+		return this.dropped.get();
+	}
+}
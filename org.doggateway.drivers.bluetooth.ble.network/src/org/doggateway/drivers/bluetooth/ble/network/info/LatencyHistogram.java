@@ -0,0 +1,229 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.info;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-memory, thread-safe, latency histogram. Latencies are counted in
+ * log-linear buckets with microsecond resolution: each power of two is split
+ * into 8 linear sub-buckets, bounding the percentile error to 12.5%, up to
+ * about 67 seconds (larger latencies are counted in the last bucket).
+ * Recording a latency never allocates memory.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class LatencyHistogram
+{
+	// the number of bits identifying a sub-bucket
+	private static final int SUB_BUCKET_BITS = 3;
+
+	// the number of sub-buckets in each power of two
+	private static final int SUB_BUCKETS = 1 << LatencyHistogram.SUB_BUCKET_BITS;
+
+	// the highest power of two, in microseconds, tracked by the histogram
+	private static final int MAX_EXPONENT = 26;
+
+	// the number of buckets
+	private static final int BUCKETS = (LatencyHistogram.MAX_EXPONENT
+			- LatencyHistogram.SUB_BUCKET_BITS + 2)
+			* LatencyHistogram.SUB_BUCKETS;
+
+	// the bucket counts
+	private AtomicLongArray buckets;
+
+	// the number of recorded latencies
+	private AtomicLong count;
+
+	// the sum of recorded latencies, in nanoseconds
+	private AtomicLong sumNanos;
+
+	// the maximum recorded latency, in nanoseconds
+	private AtomicLong maxNanos;
+
+	/**
+	 * Builds a new, empty, histogram
+	 */
+	public LatencyHistogram()
+	{
+		this.buckets = new AtomicLongArray(LatencyHistogram.BUCKETS);
+		this.count = new AtomicLong();
+		this.sumNanos = new AtomicLong();
+		this.maxNanos = new AtomicLong();
+	}
+
+	/**
+	 * Records the given latency
+	 * 
+	 * @param latencyNanos
+	 *            The latency in nanoseconds, negative values are recorded as 0
+	 */
+	public void record(long latencyNanos)
+	{
+		long latency = Math.max(0, latencyNanos);
+
+		// count the latency
+		this.buckets.incrementAndGet(
+				LatencyHistogram.bucketOf(latency / 1000));
+		this.count.incrementAndGet();
+		this.sumNanos.addAndGet(latency);
+
+		// update the maximum
+		long max = this.maxNanos.get();
+		while ((latency > max)
+				&& (!this.maxNanos.compareAndSet(max, latency)))
+			max = this.maxNanos.get();
+	}
+
+	/**
+	 * Gets the latency below which the given percentage of recorded
+	 * latencies fall, as the upper bound of the corresponding bucket (never
+	 * above the maximum recorded latency).
+	 * 
+	 * @param percentile
+	 *            The percentile, between 0 and 100
+	 * @return The percentile latency in nanoseconds, or -1 if no latency has
+	 *         been recorded
+	 */
+	public long getPercentileNanos(double percentile)
+	{
+		long percentileNanos = -1;
+
+		long total = this.count.get();
+		if (total > 0)
+		{
+			// the rank of the requested percentile
+			long rank = Math.max(1, (long) Math
+					.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0
+							* total));
+
+			// find the bucket holding the rank
+			long cumulated = 0;
+			int bucket = 0;
+			for (; bucket < LatencyHistogram.BUCKETS - 1; bucket++)
+			{
+				cumulated += this.buckets.get(bucket);
+				if (cumulated >= rank)
+					break;
+			}
+
+			percentileNanos = Math.min(this.maxNanos.get(),
+					LatencyHistogram.upperBoundOf(bucket) * 1000);
+		}
+
+		return percentileNanos;
+	}
+
+	/**
+	 * Gets the number of recorded latencies
+	 * 
+	 * @return the count
+	 */
+	public long getCount()
+	{
+		return this.count.get();
+	}
+
+	/**
+	 * Gets the mean recorded latency
+	 * 
+	 * @return the mean latency in nanoseconds, or -1 if no latency has been
+	 *         recorded
+	 */
+	public long getMeanNanos()
+	{
+		long total = this.count.get();
+		return (total > 0) ? this.sumNanos.get() / total : -1;
+	}
+
+	/**
+	 * Gets the maximum recorded latency
+	 * 
+	 * @return the maximum latency in nanoseconds
+	 */
+	public long getMaxNanos()
+	{
+		return this.maxNanos.get();
+	}
+
+	/**
+	 * Computes the bucket in which the given latency shall be counted
+	 * 
+	 * @param micros
+	 *            The latency in microseconds
+	 * @return The bucket index
+	 */
+	private static int bucketOf(long micros)
+	{
+		int bucket;
+
+		if (micros < LatencyHistogram.SUB_BUCKETS)
+		{
+			// linear buckets for the smallest values
+			bucket = (int) micros;
+		}
+		else
+		{
+			// the power of two and the linear sub-bucket
+			int exponent = 63 - Long.numberOfLeadingZeros(micros);
+			if (exponent > LatencyHistogram.MAX_EXPONENT)
+			{
+				bucket = LatencyHistogram.BUCKETS - 1;
+			}
+			else
+			{
+				int subBucket = (int) (micros >>> (exponent
+						- LatencyHistogram.SUB_BUCKET_BITS))
+						& (LatencyHistogram.SUB_BUCKETS - 1);
+				bucket = (exponent - LatencyHistogram.SUB_BUCKET_BITS + 1)
+						* LatencyHistogram.SUB_BUCKETS + subBucket;
+			}
+		}
+
+		return bucket;
+	}
+
+	/**
+	 * Computes the (exclusive) upper bound of the given bucket
+	 * 
+	 * @param bucket
+	 *            The bucket index
+	 * @return The upper bound in microseconds
+	 */
+	private static long upperBoundOf(int bucket)
+	{
+		long upperBound;
+
+		if (bucket < LatencyHistogram.SUB_BUCKETS)
+		{
+			upperBound = bucket + 1;
+		}
+		else
+		{
+			int exponent = bucket / LatencyHistogram.SUB_BUCKETS
+					+ LatencyHistogram.SUB_BUCKET_BITS - 1;
+			int subBucket = bucket % LatencyHistogram.SUB_BUCKETS;
+			upperBound = ((long) (LatencyHistogram.SUB_BUCKETS + subBucket
+					+ 1)) << (exponent - LatencyHistogram.SUB_BUCKET_BITS);
+		}
+
+		return upperBound;
+	}
+}
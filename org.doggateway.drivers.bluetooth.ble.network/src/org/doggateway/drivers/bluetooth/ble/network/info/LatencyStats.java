@@ -0,0 +1,206 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.info;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency histograms of device operations, keyed by packed device MAC address
+ * (see {@link MacAddress#toLong(String)}) and, for characteristic-level
+ * operations, by characteristic UUID. MAC addresses are therefore matched
+ * regardless of their case and separators. Histograms are created on first
+ * use, afterwards recording latencies never allocates memory.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class LatencyStats
+{
+	/**
+	 * The measured latencies
+	 */
+	public enum Metric
+	{
+		// time needed to connect the device (device-level)
+		CONNECT,
+		// time needed to resolve the low-level service and characteristic
+		// handles, recorded only when handles are not cached
+		SERVICE_RESOLUTION,
+		// time spent in the GATT read
+		READ,
+		// time between the poll deadline and the availability of the read
+		// value, including queueing, connection and resolution
+		POLL
+	}
+
+	// the connection latencies, by packed device MAC address
+	private MacAddressMap<LatencyHistogram> connectLatencies;
+
+	// the characteristic-level latencies, by packed device MAC address and
+	// characteristic UUID, one histogram per metric
+	private MacAddressMap<ConcurrentHashMap<String, LatencyHistogram[]>> characteristicLatencies;
+
+	/**
+	 * Builds a new, empty, set of latency statistics
+	 */
+	public LatencyStats()
+	{
+		this.connectLatencies = new MacAddressMap<LatencyHistogram>();
+		this.characteristicLatencies = new MacAddressMap<ConcurrentHashMap<String, LatencyHistogram[]>>();
+	}
+
+	/**
+	 * Records the given latency
+	 * 
+	 * @param deviceMacAddress
+	 *            The MAC address of the device
+	 * @param characteristicUUID
+	 *            The UUID of the characteristic, ignored for device-level
+	 *            metrics
+	 * @param metric
+	 *            The measured metric
+	 * @param latencyNanos
+	 *            The latency in nanoseconds
+	 */
+	public void record(String deviceMacAddress, String characteristicUUID,
+			Metric metric, long latencyNanos)
+	{
+		LatencyHistogram histogram = this.getHistogram(
+				MacAddress.toLong(deviceMacAddress), characteristicUUID, metric,
+				true);
+		if (histogram != null)
+			histogram.record(latencyNanos);
+	}
+
+	/**
+	 * Gets the histogram of the given metric
+	 * 
+	 * @param deviceMacAddress
+	 *            The MAC address of the device
+	 * @param characteristicUUID
+	 *            The UUID of the characteristic, ignored for device-level
+	 *            metrics
+	 * @param metric
+	 *            The metric
+	 * @return The histogram, or null if no latency has been recorded
+	 */
+	public LatencyHistogram getHistogram(String deviceMacAddress,
+			String characteristicUUID, Metric metric)
+	{
+		return this.getHistogram(MacAddress.toLong(deviceMacAddress),
+				characteristicUUID, metric, false);
+	}
+
+	/**
+	 * Removes all the histograms of the given device
+	 * 
+	 * @param deviceMacAddress
+	 *            The MAC address of the device
+	 */
+	public void remove(String deviceMacAddress)
+	{
+		long macAddress = MacAddress.toLong(deviceMacAddress);
+		this.connectLatencies.remove(macAddress);
+		this.characteristicLatencies.remove(macAddress);
+	}
+
+	/**
+	 * Gets, and possibly creates, the histogram of the given metric
+	 * 
+	 * @param deviceMacAddress
+	 *            The packed MAC address of the device
+	 * @param characteristicUUID
+	 *            The UUID of the characteristic, ignored for device-level
+	 *            metrics
+	 * @param metric
+	 *            The metric
+	 * @param create
+	 *            true if missing histograms shall be created
+	 * @return The histogram, or null if missing and not created
+	 */
+	private LatencyHistogram getHistogram(long deviceMacAddress,
+			String characteristicUUID, Metric metric, boolean create)
+	{
+		LatencyHistogram histogram = null;
+
+		if (MacAddress.isValid(deviceMacAddress))
+		{
+			if (metric == Metric.CONNECT)
+			{
+				// device-level histogram
+				histogram = this.connectLatencies.get(deviceMacAddress);
+				if ((histogram == null) && (create))
+				{
+					synchronized (this.connectLatencies)
+					{
+						histogram = this.connectLatencies
+								.get(deviceMacAddress);
+						if (histogram == null)
+						{
+							histogram = new LatencyHistogram();
+							this.connectLatencies.put(deviceMacAddress,
+									histogram);
+						}
+					}
+				}
+			}
+			else if (characteristicUUID != null)
+			{
+				// characteristic-level histograms
+				ConcurrentHashMap<String, LatencyHistogram[]> deviceLatencies = this.characteristicLatencies
+						.get(deviceMacAddress);
+				if ((deviceLatencies == null) && (create))
+				{
+					synchronized (this.characteristicLatencies)
+					{
+						deviceLatencies = this.characteristicLatencies
+								.get(deviceMacAddress);
+						if (deviceLatencies == null)
+						{
+							deviceLatencies = new ConcurrentHashMap<String, LatencyHistogram[]>();
+							this.characteristicLatencies.put(deviceMacAddress,
+									deviceLatencies);
+						}
+					}
+				}
+
+				if (deviceLatencies != null)
+				{
+					LatencyHistogram[] histograms = deviceLatencies
+							.get(characteristicUUID);
+					if ((histograms == null) && (create))
+					{
+						histograms = new LatencyHistogram[Metric
+								.values().length];
+						for (int i = 0; i < histograms.length; i++)
+							histograms[i] = new LatencyHistogram();
+
+						deviceLatencies.putIfAbsent(characteristicUUID,
+								histograms);
+						histograms = deviceLatencies.get(characteristicUUID);
+					}
+
+					if (histograms != null)
+						histogram = histograms[metric.ordinal()];
+				}
+			}
+		}
+
+		return histogram;
+	}
+}
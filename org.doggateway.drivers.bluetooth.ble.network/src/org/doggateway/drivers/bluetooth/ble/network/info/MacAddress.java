@@ -0,0 +1,144 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.info;
+
+/**
+ * Utility methods to handle 48-bit Bluetooth MAC addresses packed into a
+ * long, allowing addresses to be compared and hashed without any string
+ * manipulation or case folding.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public final class MacAddress
+{
+	// the value representing an invalid address
+	public static final long INVALID = -1L;
+
+	// the number of hexadecimal digits in a MAC address
+	private static final int DIGITS = 12;
+
+	// the bits of a long actually used by a packed MAC address
+	private static final long MASK = 0xFFFFFFFFFFFFL;
+
+	// the digits used to format addresses
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	/**
+	 * Not instantiable
+	 */
+	private MacAddress()
+	{
+	}
+
+	/**
+	 * Packs the given MAC address into the lower 48 bits of a long. Digits
+	 * are case-insensitive, ':' and '-' separators are ignored.
+	 * 
+	 * @param macAddress
+	 *            The MAC address, typically in the XX:XX:...:XX format
+	 * @return The packed address, or {@link #INVALID} if the given string is
+	 *         not a valid MAC address
+	 */
+	public static long toLong(String macAddress)
+	{
+		// check not null
+		if (macAddress == null)
+			return MacAddress.INVALID;
+
+		long packed = 0;
+		int digits = 0;
+		for (int i = 0; i < macAddress.length(); i++)
+		{
+			char c = macAddress.charAt(i);
+
+			// skip separators
+			if ((c == ':') || (c == '-'))
+				continue;
+
+			// parse the digit
+			int digit = Character.digit(c, 16);
+			if ((digit < 0) || (++digits > MacAddress.DIGITS))
+				return MacAddress.INVALID;
+
+			packed = (packed << 4) | digit;
+		}
+
+		return (digits == MacAddress.DIGITS) ? packed : MacAddress.INVALID;
+	}
+
+	/**
+	 * Checks if the given long is a valid packed MAC address, i.e., if it only
+	 * uses the lower 48 bits
+	 * 
+	 * @param macAddress
+	 *            The packed MAC address
+	 * @return true if valid, false otherwise
+	 */
+	public static boolean isValid(long macAddress)
+	{
+		return (macAddress & ~MacAddress.MASK) == 0;
+	}
+
+	/**
+	 * Formats the given packed MAC address in the upper-case XX:XX:...:XX
+	 * format, the only place where addresses are turned back into strings
+	 * 
+	 * @param macAddress
+	 *            The packed MAC address
+	 * @return The formatted address, or null if the given address is not
+	 *         valid
+	 */
+	public static String toString(long macAddress)
+	{
+		if (!MacAddress.isValid(macAddress))
+			return null;
+
+		// two digits per byte, plus separators
+		char[] formatted = new char[MacAddress.DIGITS + MacAddress.DIGITS / 2
+				- 1];
+		int position = formatted.length - 1;
+		for (int i = 0; i < MacAddress.DIGITS; i++)
+		{
+			// separate bytes
+			if ((i > 0) && (i % 2 == 0))
+				formatted[position--] = ':';
+
+			formatted[position--] = MacAddress.HEX_DIGITS[(int) (macAddress
+					& 0xF)];
+			macAddress >>>= 4;
+		}
+
+		return new String(formatted);
+	}
+
+	/**
+	 * Computes a well-spread hash of the given packed MAC address. Addresses
+	 * of devices from the same vendor share their upper 24 bits, therefore
+	 * all bits are mixed before use.
+	 * 
+	 * @param macAddress
+	 *            The packed MAC address
+	 * @return The hash
+	 */
+	public static int hash(long macAddress)
+	{
+		long mixed = macAddress * 0x9E3779B97F4A7C15L;
+		return (int) (mixed ^ (mixed >>> 32));
+	}
+}
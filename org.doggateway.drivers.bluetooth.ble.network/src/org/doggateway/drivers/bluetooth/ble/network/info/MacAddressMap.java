@@ -0,0 +1,303 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.info;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A map indexed by packed MAC addresses (see {@link MacAddress#toLong(String)})
+ * backed by a single open-addressing table with linear probing. Keys are
+ * primitive longs, therefore lookups neither box keys nor fold case.
+ * 
+ * Lookups are lock-free and allocation-free. Updates are serialized and
+ * performed in place, in amortized constant time: removed entries keep their
+ * key, with a null value, so that concurrent lookups never miss an entry
+ * moved by a deletion, and are purged when the table is rebuilt to grow.
+ * Values published by an update are visible to lookups starting after it,
+ * iteration over {@link #values()} is weakly consistent, as for concurrent
+ * collections.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ * @param <V>
+ *            The type of the mapped values
+ */
+public class MacAddressMap<V>
+{
+	// the minimum number of slots of the table
+	private static final int MIN_CAPACITY = 16;
+
+	// the value marking free slots, valid addresses never collide with it
+	private static final long FREE = MacAddress.INVALID;
+
+	// the current table
+	private volatile Table<V> table;
+
+	// the number of mappings
+	private volatile int size;
+
+	/**
+	 * A table of slots, replaced as a whole when rebuilt
+	 */
+	private static class Table<V>
+	{
+		// the slot keys, free slots hold FREE; keys are written after values
+		// so that a lookup finding a key also finds its value
+		private final AtomicLongArray keys;
+
+		// the slot values, null for removed entries
+		private final AtomicReferenceArray<V> values;
+
+		// the number of slots holding a key, including removed entries,
+		// only accessed by writers
+		private int used;
+
+		private Table(int capacity)
+		{
+			this.keys = new AtomicLongArray(capacity);
+			this.values = new AtomicReferenceArray<V>(capacity);
+
+			// mark all slots as free
+			for (int i = 0; i < capacity; i++)
+				this.keys.set(i, MacAddressMap.FREE);
+		}
+
+		/**
+		 * Finds the slot holding the given key, or the free slot where it
+		 * would be inserted. Tables are never full, thus the probe always
+		 * terminates.
+		 * 
+		 * @param key
+		 *            The packed MAC address
+		 * @return The slot index
+		 */
+		private int slotOf(long key)
+		{
+			int mask = this.keys.length() - 1;
+			int slot = MacAddress.hash(key) & mask;
+			long current = this.keys.get(slot);
+			while ((current != key) && (current != MacAddressMap.FREE))
+			{
+				slot = (slot + 1) & mask;
+				current = this.keys.get(slot);
+			}
+
+			return slot;
+		}
+	}
+
+	/**
+	 * Builds a new, empty, map
+	 */
+	public MacAddressMap()
+	{
+		this.table = new Table<V>(MacAddressMap.MIN_CAPACITY);
+	}
+
+	/**
+	 * Gets the value mapped to the given packed MAC address
+	 * 
+	 * @param macAddress
+	 *            The packed MAC address
+	 * @return The mapped value, or null if none
+	 */
+	public V get(long macAddress)
+	{
+		if (!MacAddress.isValid(macAddress))
+			return null;
+
+		Table<V> current = this.table;
+		int slot = current.slotOf(macAddress);
+		return (current.keys.get(slot) == macAddress)
+				? current.values.get(slot) : null;
+	}
+
+	/**
+	 * Checks if a value is mapped to the given packed MAC address
+	 * 
+	 * @param macAddress
+	 *            The packed MAC address
+	 * @return true if mapped, false otherwise
+	 */
+	public boolean containsKey(long macAddress)
+	{
+		return this.get(macAddress) != null;
+	}
+
+	/**
+	 * Maps the given value to the given packed MAC address
+	 * 
+	 * @param macAddress
+	 *            The packed MAC address, shall be valid
+	 * @param value
+	 *            The value, shall not be null
+	 * @return The previously mapped value, or null if none
+	 */
+	public synchronized V put(long macAddress, V value)
+	{
+		if (!MacAddress.isValid(macAddress))
+			throw new IllegalArgumentException(
+					"Invalid MAC address: " + macAddress);
+		if (value == null)
+			throw new NullPointerException();
+
+		Table<V> current = this.table;
+		int slot = current.slotOf(macAddress);
+
+		// existing, possibly removed, entry: replace the value in place
+		if (current.keys.get(slot) == macAddress)
+		{
+			V previous = current.values.getAndSet(slot, value);
+			if (previous == null)
+				this.size++;
+			return previous;
+		}
+
+		// new entry, keep the load factor at or below 0.5 for short probe
+		// sequences, rebuilding the table if needed
+		if ((current.used + 1) * 2 > current.keys.length())
+		{
+			current = this.rebuild(current, this.size + 1);
+			slot = current.slotOf(macAddress);
+		}
+
+		// publish the value before the key
+		current.values.set(slot, value);
+		current.keys.set(slot, macAddress);
+		current.used++;
+		this.size++;
+
+		return null;
+	}
+
+	/**
+	 * Removes the value mapped to the given packed MAC address
+	 * 
+	 * @param macAddress
+	 *            The packed MAC address
+	 * @return The removed value, or null if none
+	 */
+	public synchronized V remove(long macAddress)
+	{
+		if (!MacAddress.isValid(macAddress))
+			return null;
+
+		// the key stays in place, keeping probe sequences intact
+		Table<V> current = this.table;
+		int slot = current.slotOf(macAddress);
+		V previous = null;
+		if (current.keys.get(slot) == macAddress)
+		{
+			previous = current.values.getAndSet(slot, null);
+			if (previous != null)
+				this.size--;
+		}
+
+		return previous;
+	}
+
+	/**
+	 * Removes all the mappings
+	 */
+	public synchronized void clear()
+	{
+		this.table = new Table<V>(MacAddressMap.MIN_CAPACITY);
+		this.size = 0;
+	}
+
+	/**
+	 * Gets the number of mappings
+	 * 
+	 * @return the number of mappings
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Checks if the map is empty
+	 * 
+	 * @return true if empty, false otherwise
+	 */
+	public boolean isEmpty()
+	{
+		return this.size == 0;
+	}
+
+	/**
+	 * Provides a copy of the mapped values, which can be safely iterated
+	 * while the map is updated
+	 * 
+	 * @return The list of mapped values
+	 */
+	public List<V> values()
+	{
+		Table<V> current = this.table;
+		List<V> values = new ArrayList<V>(this.size);
+		for (int i = 0; i < current.values.length(); i++)
+		{
+			V value = current.values.get(i);
+			if (value != null)
+				values.add(value);
+		}
+
+		return values;
+	}
+
+	/**
+	 * Rebuilds the given table, dropping removed entries, with room for at
+	 * least twice the given number of mappings so that the rebuild cost is
+	 * amortized over the following insertions
+	 * 
+	 * @param source
+	 *            The table to rebuild
+	 * @param size
+	 *            The number of mappings the new table shall hold
+	 * @return The new, published, table
+	 */
+	private Table<V> rebuild(Table<V> source, int size)
+	{
+		int capacity = MacAddressMap.MIN_CAPACITY;
+		while (capacity < size * 4)
+			capacity <<= 1;
+
+		// copy the live entries, the new table is not yet visible
+		Table<V> rebuilt = new Table<V>(capacity);
+		for (int i = 0; i < source.keys.length(); i++)
+		{
+			V value = source.values.get(i);
+			if (value != null)
+			{
+				long key = source.keys.get(i);
+				int slot = rebuilt.slotOf(key);
+				rebuilt.values.set(slot, value);
+				rebuilt.keys.set(slot, key);
+				rebuilt.used++;
+			}
+		}
+
+		// publish
+		this.table = rebuilt;
+
+		return rebuilt;
+	}
+}
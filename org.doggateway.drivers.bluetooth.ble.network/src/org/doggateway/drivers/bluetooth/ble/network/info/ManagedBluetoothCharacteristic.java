@@ -17,9 +17,13 @@
  */
 package org.doggateway.drivers.bluetooth.ble.network.info;
 
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
+import org.doggateway.drivers.bluetooth.ble.network.info.CharacteristicMonitorSpec.DeliveryMode;
+
+import tinyb.BluetoothException;
 import tinyb.BluetoothGattCharacteristic;
 
 public class ManagedBluetoothCharacteristic
@@ -28,17 +32,62 @@ public class ManagedBluetoothCharacteristic
 	private String chracteristicUUID;
 
 	// the actual polling time in milliseconds computed for this characteristic
-	private int pollingTimeMillis;
+	private volatile int pollingTimeMillis;
+
+	// the polling times required by the associated monitoring specs
+	private PollingPeriods specPeriods;
 
 	// the last poll timestamp in milliseconds from the Epoch (system-specific)
 	private long lastPollFromEpoch;
 
+	// the monotonic time, in nanoseconds (see System.nanoTime()), at which
+	// the next poll is due
+	private long nextPollDueNanos;
+
+	// the position of this characteristic in the polling schedule heap, -1
+	// if not scheduled, guarded by the schedule lock
+	private int scheduleIndex = -1;
+
+	// the difference, in nanoseconds, between the last actual read time and
+	// the corresponding deadline, negative for early reads
+	private long lastJitterNanos;
+
+	// the maximum absolute jitter measured, in nanoseconds
+	private long maxJitterNanos;
+
+	// the number of reads whose jitter has been measured
+	private long jitterSamples;
+
+	// the number of reads exceeding the allowed jitter
+	private long jitterViolations;
+
+	// a copy of the last value dispatched to driver instances, null if no
+	// value has been dispatched yet
+	private byte[] lastDispatchedValue;
+
+	// the monotonic time, in nanoseconds, at which the last value has been
+	// dispatched
+	private long lastDispatchNanos;
+
+	// true if a poll of this characteristic has been queued and not yet
+	// completed
+	private volatile boolean pollPending;
+
+	// true if at least one monitoring spec requires values to be notified or
+	// indicated rather than polled
+	private boolean notificationRequired;
+
+	// true if value notifications are currently enabled on the low-level
+	// characteristic
+	private volatile boolean notifying;
+
 	// the service management data to which this instance belongs
 	private ManagedBluetoothService service;
 
 	// the set of characteristic monitoring specifications originating /
 	// contributing to this management instance. Used to trace back
-	// "requirements" at polling time.
+	// "requirements" at polling time. Copy-on-write, as specs are iterated
+	// at each delivered value and change only when drivers (un)register.
 	private Set<CharacteristicMonitorSpec> monitoringSpecs;
 
 	// the low-level characteristic to which this instance refers
@@ -97,7 +146,8 @@ public class ManagedBluetoothCharacteristic
 	{
 		// initialize the set of monitoring specs associated to this
 		// characteristic
-		this.monitoringSpecs = new HashSet<CharacteristicMonitorSpec>();
+		this.monitoringSpecs = new CopyOnWriteArraySet<CharacteristicMonitorSpec>();
+		this.specPeriods = new PollingPeriods();
 
 		// set the polling time at the maximum value
 		this.pollingTimeMillis = Integer.MAX_VALUE;
@@ -173,6 +223,182 @@ public class ManagedBluetoothCharacteristic
 		this.lastPollFromEpoch = lastPollFromEpoch;
 	}
 
+	/**
+	 * Gets the monotonic time, in nanoseconds (see {@link System#nanoTime()}),
+	 * at which the next poll of this characteristic is due
+	 * 
+	 * @return the nextPollDueNanos
+	 */
+	public long getNextPollDueNanos()
+	{
+		return nextPollDueNanos;
+	}
+
+	/**
+	 * Sets the monotonic time, in nanoseconds (see {@link System#nanoTime()}),
+	 * at which the next poll of this characteristic is due
+	 * 
+	 * @param nextPollDueNanos
+	 *            the nextPollDueNanos to set
+	 */
+	public void setNextPollDueNanos(long nextPollDueNanos)
+	{
+		this.nextPollDueNanos = nextPollDueNanos;
+	}
+
+	/**
+	 * Gets the position of this characteristic in the polling schedule,
+	 * allowing the schedule to move or remove it in logarithmic time
+	 * 
+	 * @return the schedule index, -1 if not scheduled
+	 */
+	public int getScheduleIndex()
+	{
+		return scheduleIndex;
+	}
+
+	/**
+	 * Sets the position of this characteristic in the polling schedule, to be
+	 * called by the schedule only
+	 * 
+	 * @param scheduleIndex
+	 *            the schedule index to set, -1 if not scheduled
+	 */
+	public void setScheduleIndex(int scheduleIndex)
+	{
+		this.scheduleIndex = scheduleIndex;
+	}
+
+	/**
+	 * Records the jitter of an actual read, i.e., the difference between the
+	 * read time and the corresponding deadline.
+	 * 
+	 * @param jitterNanos
+	 *            The measured jitter in nanoseconds, negative for early reads
+	 * @param allowedJitterNanos
+	 *            The maximum allowed absolute jitter in nanoseconds
+	 * @return true if the allowed jitter has been exceeded, false otherwise
+	 */
+	public synchronized boolean recordJitter(long jitterNanos,
+			long allowedJitterNanos)
+	{
+		// absolute jitter
+		long absJitterNanos = Math.abs(jitterNanos);
+
+		// update statistics
+		this.lastJitterNanos = jitterNanos;
+		this.jitterSamples++;
+		if (absJitterNanos > this.maxJitterNanos)
+			this.maxJitterNanos = absJitterNanos;
+
+		// check the allowed jitter
+		boolean violated = absJitterNanos > allowedJitterNanos;
+		if (violated)
+			this.jitterViolations++;
+
+		return violated;
+	}
+
+	/**
+	 * Checks if the given value shall be dispatched to driver instances, i.e.,
+	 * if it differs from the last dispatched value or if the last dispatch is
+	 * older than the given heartbeat. Values to dispatch are remembered for
+	 * subsequent checks; the comparison does not allocate memory and the
+	 * value is copied only if its length changes.
+	 * 
+	 * @param value
+	 *            The value read from the device
+	 * @param nowNanos
+	 *            The current monotonic time, in nanoseconds
+	 * @param heartbeatNanos
+	 *            The maximum time for which unchanged values are suppressed,
+	 *            0 disables suppression
+	 * @return true if the value shall be dispatched, false if it shall be
+	 *         suppressed
+	 */
+	public synchronized boolean checkDispatch(byte[] value, long nowNanos,
+			long heartbeatNanos)
+	{
+		// suppress unchanged values, unless the heartbeat elapsed
+		if ((heartbeatNanos > 0) && (this.lastDispatchedValue != null)
+				&& (nowNanos - this.lastDispatchNanos < heartbeatNanos)
+				&& (Arrays.equals(this.lastDispatchedValue, value)))
+			return false;
+
+		// remember the dispatched value, reusing the buffer when possible
+		if ((this.lastDispatchedValue == null)
+				|| (this.lastDispatchedValue.length != value.length))
+			this.lastDispatchedValue = new byte[value.length];
+		System.arraycopy(value, 0, this.lastDispatchedValue, 0, value.length);
+		this.lastDispatchNanos = nowNanos;
+
+		return true;
+	}
+
+	/**
+	 * Gets the jitter, in nanoseconds, measured on the last read, negative
+	 * for early reads
+	 * 
+	 * @return the last jitter
+	 */
+	public synchronized long getLastJitterNanos()
+	{
+		return lastJitterNanos;
+	}
+
+	/**
+	 * Gets the maximum absolute jitter, in nanoseconds, measured so far
+	 * 
+	 * @return the maximum jitter
+	 */
+	public synchronized long getMaxJitterNanos()
+	{
+		return maxJitterNanos;
+	}
+
+	/**
+	 * Gets the number of reads whose jitter has been measured
+	 * 
+	 * @return the number of samples
+	 */
+	public synchronized long getJitterSamples()
+	{
+		return jitterSamples;
+	}
+
+	/**
+	 * Gets the number of reads which exceeded the allowed jitter
+	 * 
+	 * @return the number of violations
+	 */
+	public synchronized long getJitterViolations()
+	{
+		return jitterViolations;
+	}
+
+	/**
+	 * Checks whether a poll of this characteristic has been queued and not yet
+	 * completed
+	 * 
+	 * @return the pollPending flag
+	 */
+	public boolean isPollPending()
+	{
+		return pollPending;
+	}
+
+	/**
+	 * Sets whether a poll of this characteristic has been queued and not yet
+	 * completed
+	 * 
+	 * @param pollPending
+	 *            the pollPending flag to set
+	 */
+	public void setPollPending(boolean pollPending)
+	{
+		this.pollPending = pollPending;
+	}
+
 	/**
 	 * Gets a reference to the {@link ManagedBluetoothService} "owning" this
 	 * characteristic
@@ -199,6 +425,8 @@ public class ManagedBluetoothCharacteristic
 	/**
 	 * Get all the monitoring specs associated to this characteristic, as a live
 	 * pointer to the inner set of {@link CharacteristicMonitorSpec} instances.
+	 * The set is copy-on-write, iterations are not affected by concurrent
+	 * updates.
 	 * 
 	 * @return the monitoringSpecs
 	 */
@@ -213,7 +441,8 @@ public class ManagedBluetoothCharacteristic
 	 * 
 	 * @param spec
 	 */
-	public void addCharacteristicMonitorSpec(CharacteristicMonitorSpec spec)
+	public synchronized void addCharacteristicMonitorSpec(
+			CharacteristicMonitorSpec spec)
 	{
 		// update the list of specs for the characteristic
 		if (!this.monitoringSpecs.contains(spec))
@@ -223,12 +452,18 @@ public class ManagedBluetoothCharacteristic
 			// save the back reference
 			spec.setManagedCharacteristic(this);
 
+			// the new spec shall receive the next value, even if unchanged
+			this.lastDispatchedValue = null;
+
 			// update the polling time for the managed
 			// characteristic
-			if (this.getPollingTimeMillis() > spec
-					.getMaximumAcceptablePollingTimeMillis())
-				this.setPollingTimeMillis(
-						spec.getMaximumAcceptablePollingTimeMillis());
+			this.specPeriods
+					.add(spec.getMaximumAcceptablePollingTimeMillis());
+			this.pollingTimeMillis = this.specPeriods.getMinimum();
+
+			// update the notification requirement
+			if (spec.getDeliveryMode() != DeliveryMode.POLL)
+				this.notificationRequired = true;
 		}
 
 	}
@@ -248,27 +483,88 @@ public class ManagedBluetoothCharacteristic
 		boolean removed = this.monitoringSpecs.remove(charSpec);
 
 		// if removed successfully, the managed char polling time shall be
-		// recomputed
+		// updated
 		if (removed)
 		{
-			// recompute polling time
-			int pollingTime = Integer.MAX_VALUE;
+			// the new polling time is the minimum between the remaining specs
+			this.specPeriods
+					.remove(charSpec.getMaximumAcceptablePollingTimeMillis());
+			this.pollingTimeMillis = this.specPeriods.getMinimum();
 
+			// recompute the notification requirement
+			boolean required = false;
 			for (CharacteristicMonitorSpec spec : this.monitoringSpecs)
 			{
-				if (spec.getMaximumAcceptablePollingTimeMillis() < pollingTime)
-					pollingTime = spec.getMaximumAcceptablePollingTimeMillis();
+				if (spec.getDeliveryMode() != DeliveryMode.POLL)
+					required = true;
 			}
+			this.notificationRequired = required;
 
-			// update the polling time, again as this is a removal, the new
-			// polling time can only be higher or equal to the current one
-			if (pollingTime > this.pollingTimeMillis)
-				this.pollingTimeMillis = pollingTime;
+			// stop notifications which are not needed anymore
+			if (!required)
+				this.disableNotifications();
 		}
 
 		return removed;
 	}
 
+	/**
+	 * Checks whether at least one of the monitoring specs associated to this
+	 * characteristic requires values to be notified or indicated by the
+	 * device, rather than polled
+	 * 
+	 * @return true if notifications are required, false otherwise
+	 */
+	public boolean isNotificationRequired()
+	{
+		return notificationRequired;
+	}
+
+	/**
+	 * Checks whether value notifications are currently enabled on the
+	 * low-level characteristic
+	 * 
+	 * @return the notifying flag
+	 */
+	public boolean isNotifying()
+	{
+		return notifying;
+	}
+
+	/**
+	 * Sets whether value notifications are currently enabled on the low-level
+	 * characteristic
+	 * 
+	 * @param notifying
+	 *            the notifying flag to set
+	 */
+	public void setNotifying(boolean notifying)
+	{
+		this.notifying = notifying;
+	}
+
+	/**
+	 * Disables value notifications on the low-level characteristic, if
+	 * enabled. Failures are ignored as the device might be already
+	 * disconnected.
+	 */
+	public void disableNotifications()
+	{
+		if ((this.notifying) && (this.lowCharacteristic != null))
+		{
+			try
+			{
+				this.lowCharacteristic.disableValueNotifications();
+			}
+			catch (BluetoothException e)
+			{
+				// the subscription is dropped anyway
+			}
+		}
+
+		this.notifying = false;
+	}
+
 	/**
 	 * Get the low-level Gatt characteristic referred by this instance
 	 * 
@@ -18,9 +18,11 @@
 package org.doggateway.drivers.bluetooth.ble.network.info;
 
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.doggateway.drivers.bluetooth.ble.network.tasks.DeviceOperationQueue;
 
 import tinyb.BluetoothDevice;
 
@@ -28,7 +30,10 @@ public class ManagedBluetoothDevice
 {
 
 	// the device polling time in milliseconds
-	private int pollingTimeMillis;
+	private volatile int pollingTimeMillis;
+
+	// the polling times of the services of this device
+	private PollingPeriods servicePeriods;
 
 	// the last time at which the device was polled
 	private long lastPollFromEpoch;
@@ -36,20 +41,35 @@ public class ManagedBluetoothDevice
 	// the MAC address of the device represented by this object
 	private String deviceMacAddress;
 
-	// the MAC address of the adapter to use for connecting to the given device
-	// TODO: implement multiple-adapter support
+	// the MAC address of the device, packed into a long (see
+	// MacAddress#toLong(String))
+	private long macAddress = MacAddress.INVALID;
+
+	// the MAC address of the adapter to use for connecting to the given
+	// device, as pinned by registrations, null if any adapter can be used
 	private String adapterMacAddress;
 
+	// the key of the adapter actually used for connecting to the given
+	// device, assigned by the network driver
+	private volatile String assignedAdapterKey;
+
 	// The set of "managed", i.e., "monitored" services offered by this managed
-	// device
-	private Hashtable<String, ManagedBluetoothService> services;
+	// device, can be iterated while services are added or removed
+	private ConcurrentHashMap<String, ManagedBluetoothService> services;
 
-	// The set of {@link BLEDeviceRegistrations} pointing at this managed device
+	// The set of {@link BLEDeviceRegistrations} pointing at this managed
+	// device, copy-on-write as registrations change rarely
 	private Set<BLEDeviceRegistration> deviceInfos;
 
 	// The low-level device to which this object is associated
 	private BluetoothDevice lowDevice;
 
+	// The queue serializing operations on this device
+	private DeviceOperationQueue operationQueue;
+
+	// The reachability state of this device
+	private DeviceHealth health;
+
 	/**
 	 * Builds a new instance of managed device pointing at the actual bluetooth
 	 * device having the given MAC address, possibly using the adapter having
@@ -62,7 +82,7 @@ public class ManagedBluetoothDevice
 			String adapterMacAddress)
 	{
 		// store the device MAC address
-		this.deviceMacAddress = deviceMacAddress;
+		this.setDeviceMacAddress(deviceMacAddress);
 		// store the adapter MAC address
 		this.adapterMacAddress = adapterMacAddress;
 		// common initialization
@@ -84,10 +104,14 @@ public class ManagedBluetoothDevice
 	private void init()
 	{
 		// initialize the set of managed services
-		this.services = new Hashtable<String, ManagedBluetoothService>();
+		this.services = new ConcurrentHashMap<String, ManagedBluetoothService>();
+		this.servicePeriods = new PollingPeriods();
 
 		// initialize the set of associated device registrations
-		this.deviceInfos = new HashSet<BLEDeviceRegistration>();
+		this.deviceInfos = new CopyOnWriteArraySet<BLEDeviceRegistration>();
+
+		// initially the device is assumed to be reachable
+		this.health = new DeviceHealth();
 
 		// set the polling time at the maximum value
 		this.pollingTimeMillis = Integer.MAX_VALUE;
@@ -158,6 +182,19 @@ public class ManagedBluetoothDevice
 	public void setDeviceMacAddress(String deviceMacAddress)
 	{
 		this.deviceMacAddress = deviceMacAddress;
+		this.macAddress = MacAddress.toLong(deviceMacAddress);
+	}
+
+	/**
+	 * Gets the MAC address of the device to which this object refers, packed
+	 * into a long
+	 * 
+	 * @return the packed MAC address, or {@link MacAddress#INVALID} if the
+	 *         device MAC address is not valid
+	 */
+	public long getMacAddress()
+	{
+		return macAddress;
 	}
 
 	/**
@@ -183,6 +220,30 @@ public class ManagedBluetoothDevice
 		this.adapterMacAddress = adapterMacAddress;
 	}
 
+	/**
+	 * Gets the key of the adapter actually used to access the device
+	 * represented by this object, either the pinned adapter or the adapter
+	 * chosen by the network driver
+	 * 
+	 * @return the assignedAdapterKey, or null if not yet assigned
+	 */
+	public String getAssignedAdapterKey()
+	{
+		return assignedAdapterKey;
+	}
+
+	/**
+	 * Sets the key of the adapter actually used to access the device
+	 * represented by this object
+	 * 
+	 * @param assignedAdapterKey
+	 *            the assignedAdapterKey to set
+	 */
+	public void setAssignedAdapterKey(String assignedAdapterKey)
+	{
+		this.assignedAdapterKey = assignedAdapterKey;
+	}
+
 	/**
 	 * Gets the low-level BluetoothDevice to which this object is associated
 	 * 
@@ -201,9 +262,80 @@ public class ManagedBluetoothDevice
 	 */
 	public void setLowDevice(BluetoothDevice lowDevice)
 	{
+		// handles resolved on a different low-level device are not valid
+		if (this.lowDevice != lowDevice)
+			this.invalidateHandles();
+
 		this.lowDevice = lowDevice;
 	}
 
+	/**
+	 * Invalidates the low-level service and characteristic handles cached by
+	 * the services of this device, forcing their resolution at the next
+	 * access. Shall be called whenever the device disconnects or services are
+	 * resolved again.
+	 */
+	public void invalidateHandles()
+	{
+		for (ManagedBluetoothService service : this.services.values())
+		{
+			service.invalidateHandles();
+		}
+	}
+
+	/**
+	 * Checks if at least one characteristic of this device is currently
+	 * subscribed for notifications
+	 * 
+	 * @return true if notifying, false otherwise
+	 */
+	public boolean isNotifying()
+	{
+		for (ManagedBluetoothService service : this.services.values())
+		{
+			for (ManagedBluetoothCharacteristic characteristic : service
+					.getCharacteristics().values())
+			{
+				if (characteristic.isNotifying())
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the queue on which operations targeting this device shall be
+	 * executed, to keep them serialized
+	 * 
+	 * @return the operationQueue
+	 */
+	public DeviceOperationQueue getOperationQueue()
+	{
+		return operationQueue;
+	}
+
+	/**
+	 * Sets the queue on which operations targeting this device shall be
+	 * executed
+	 * 
+	 * @param operationQueue
+	 *            the operationQueue to set
+	 */
+	public void setOperationQueue(DeviceOperationQueue operationQueue)
+	{
+		this.operationQueue = operationQueue;
+	}
+
+	/**
+	 * Gets the reachability state of this device
+	 * 
+	 * @return the health
+	 */
+	public DeviceHealth getHealth()
+	{
+		return health;
+	}
+
 	/**
 	 * Get the set of all services of the represented device which are currently
 	 * managed (typically a subset of the actual device services.
@@ -215,6 +347,18 @@ public class ManagedBluetoothDevice
 		return this.services.values();
 	}
 
+	/**
+	 * Gets the managed service having the given UUID, if any
+	 * 
+	 * @param serviceUUID
+	 *            The UUID of the service
+	 * @return The managed service, or null if the service is not managed
+	 */
+	public ManagedBluetoothService getService(String serviceUUID)
+	{
+		return this.services.get(serviceUUID);
+	}
+
 	/**
 	 * Add the given service to the list of services managed by this device
 	 * 
@@ -243,11 +387,21 @@ public class ManagedBluetoothDevice
 		return deviceInfos;
 	}
 
-	public void addBLEDeviceRegistration(BLEDeviceRegistration bleRegistration)
+	/**
+	 * Adds the given device registration to this
+	 * {@link ManagedBluetoothDevice} instance, updating the managed services
+	 * and the device polling time. Thread-safe implementation to avoid
+	 * synchronization issues.
+	 * 
+	 * @param bleRegistration
+	 *            The registration to add
+	 */
+	public synchronized void addBLEDeviceRegistration(
+			BLEDeviceRegistration bleRegistration)
 	{
 		// check if the registration refers to this device
-		if (this.deviceMacAddress
-				.equalsIgnoreCase(bleRegistration.getDeviceMacAddress()))
+		if ((MacAddress.isValid(this.macAddress))
+				&& (this.macAddress == bleRegistration.getMacAddress()))
 		{
 			// add the device registration
 			this.deviceInfos.add(bleRegistration);
@@ -278,15 +432,17 @@ public class ManagedBluetoothDevice
 							managedService);
 				}
 
-				// update the managed service according to the service spec
+				// update the managed service according to the service spec,
+				// tracking the service polling time change
+				int previousPollingTime = managedService
+						.getPollingTimeMillis();
 				managedService.addServiceSpec(serviceSpec);
-				
-				// update the overall device polling time
-				if (this.pollingTimeMillis > managedService
-						.getPollingTimeMillis())
-					this.pollingTimeMillis = managedService
-							.getPollingTimeMillis();
+				this.servicePeriods.replace(previousPollingTime,
+						managedService.getPollingTimeMillis());
 			}
+
+			// update the overall device polling time
+			this.pollingTimeMillis = this.servicePeriods.getMinimum();
 		}
 	}
 
@@ -305,8 +461,8 @@ public class ManagedBluetoothDevice
 		boolean removed = false;
 
 		// check if the registration refers to this device
-		if (this.deviceMacAddress
-				.equalsIgnoreCase(bleRegistration.getDeviceMacAddress()))
+		if ((MacAddress.isValid(this.macAddress))
+				&& (this.macAddress == bleRegistration.getMacAddress()))
 		{
 			// remove all services spec
 			removed = this.deviceInfos.remove(bleRegistration);
@@ -315,9 +471,6 @@ public class ManagedBluetoothDevice
 			// back references
 			bleRegistration.setManagedDevice(null);
 
-			// the amount of removed services, if 0 no need to recompute the
-			// polling time
-			int nRemoved = 0;
 			// get the spec services and remove all
 			for (ServiceMonitorSpec serviceSpec : bleRegistration
 					.getServiceSpecs())
@@ -328,29 +481,18 @@ public class ManagedBluetoothDevice
 				// check not null, otherwise create and add
 				if (managedService != null)
 				{
-					// remove the service spec
+					// remove the service spec, tracking the service polling
+					// time change
+					int previousPollingTime = managedService
+							.getPollingTimeMillis();
 					managedService.removeServiceSpec(serviceSpec);
-
-					// update the amount of removed services
-					nRemoved++;
+					this.servicePeriods.replace(previousPollingTime,
+							managedService.getPollingTimeMillis());
 				}
 			}
 
-			// if at least one service has been removed, update the polling time
-			// for the device.
-			if (nRemoved > 0)
-			{
-				// re-compute the polling time
-				int pollingTime = Integer.MAX_VALUE;
-				for (ManagedBluetoothService service : this.services.values())
-				{
-					if (pollingTime > service.getPollingTimeMillis())
-						pollingTime = service.getPollingTimeMillis();
-				}
-
-				// store the new minimum
-				this.pollingTimeMillis = pollingTime;
-			}
+			// update the polling time for the device
+			this.pollingTimeMillis = this.servicePeriods.getMinimum();
 		}
 		return removed;
 	}
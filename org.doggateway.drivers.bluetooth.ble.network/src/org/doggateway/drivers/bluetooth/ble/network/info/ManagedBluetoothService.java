@@ -17,7 +17,8 @@
  */
 package org.doggateway.drivers.bluetooth.ble.network.info;
 
-import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import tinyb.BluetoothGattService;
 
@@ -28,7 +29,10 @@ public class ManagedBluetoothService
 
 	// the polling time for this service, computed as minimum between polling
 	// times of all characteristics associated to this service
-	private int pollingTimeMillis;
+	private volatile int pollingTimeMillis;
+
+	// the polling times of the characteristics of this service
+	private PollingPeriods characteristicPeriods;
 
 	// the last time, in milliseconds from the Epoch, at which this service has
 	// been polled
@@ -38,7 +42,7 @@ public class ManagedBluetoothService
 	private ManagedBluetoothDevice device;
 
 	// the set of characteristics of this service that shall be monitored.
-	private Hashtable<String, ManagedBluetoothCharacteristic> characteristics;
+	private ConcurrentHashMap<String, ManagedBluetoothCharacteristic> characteristics;
 
 	// the low-level service to which this object refers
 	private BluetoothGattService lowService;
@@ -77,7 +81,8 @@ public class ManagedBluetoothService
 	private void init()
 	{
 		// initialize the list of managed characteristics
-		this.characteristics = new Hashtable<String, ManagedBluetoothCharacteristic>();
+		this.characteristics = new ConcurrentHashMap<String, ManagedBluetoothCharacteristic>();
+		this.characteristicPeriods = new PollingPeriods();
 
 		// set the polling time at the maximum value
 		this.pollingTimeMillis = Integer.MAX_VALUE;
@@ -175,11 +180,12 @@ public class ManagedBluetoothService
 
 	/**
 	 * Gets all the characteristics to monitor that are associated to this
-	 * service
+	 * service. The returned map can be iterated while characteristics are
+	 * added or removed.
 	 * 
 	 * @return the characteristics
 	 */
-	public Hashtable<String, ManagedBluetoothCharacteristic> getCharacteristics()
+	public Map<String, ManagedBluetoothCharacteristic> getCharacteristics()
 	{
 		return characteristics;
 	}
@@ -239,14 +245,17 @@ public class ManagedBluetoothService
 			}
 
 			// just add the char spec to the set of specs satisfied by the
-			// managed characteristic
+			// managed characteristic, tracking the characteristic polling
+			// time change
+			int previousPollingTime = managedCharacteristic
+					.getPollingTimeMillis();
 			managedCharacteristic.addCharacteristicMonitorSpec(charSpec);
-
-			// update the computed service polling time
-			if (this.pollingTimeMillis > managedCharacteristic
-					.getPollingTimeMillis())
-				this.pollingTimeMillis = managedCharacteristic.getPollingTimeMillis();
+			this.characteristicPeriods.replace(previousPollingTime,
+					managedCharacteristic.getPollingTimeMillis());
 		}
+
+		// update the computed service polling time
+		this.pollingTimeMillis = this.characteristicPeriods.getMinimum();
 	}
 
 	/**
@@ -271,10 +280,18 @@ public class ManagedBluetoothService
 			// check null
 			if (managedCharacteristic != null)
 			{
+				// the characteristic polling time before removal
+				int previousPollingTime = managedCharacteristic
+						.getPollingTimeMillis();
+
 				// remove the spec
 				if (managedCharacteristic
 						.removeCharacteristicMonitorSpec(charSpec))
 				{
+					// track the characteristic polling time change
+					this.characteristicPeriods.replace(previousPollingTime,
+							managedCharacteristic.getPollingTimeMillis());
+
 					// remove back reference for safety purposes
 					charSpec.setManagedCharacteristic(null);
 
@@ -282,6 +299,9 @@ public class ManagedBluetoothService
 					// pointing at it, otherwise remove it
 					if (managedCharacteristic.getMonitoringSpecs().size() < 1)
 					{
+						// stop any active notification
+						managedCharacteristic.disableNotifications();
+
 						// remove back reference
 						managedCharacteristic.setService(null);
 
@@ -296,19 +316,8 @@ public class ManagedBluetoothService
 			}
 		}
 
-		// recompute the polling time required for this service
-		int pollingTime = Integer.MAX_VALUE;
-		for (ManagedBluetoothCharacteristic managedChar : this.characteristics
-				.values())
-		{
-			if (pollingTime > managedChar.getPollingTimeMillis())
-				pollingTime = managedChar.getPollingTimeMillis();
-		}
-
-		// if changed, update it. As this is a removal operation, any change can
-		// only lead to higher polling times
-		if (pollingTime > this.pollingTimeMillis)
-			this.pollingTimeMillis = pollingTime;
+		// update the polling time required for this service
+		this.pollingTimeMillis = this.characteristicPeriods.getMinimum();
 
 		return removed;
 
@@ -335,4 +344,22 @@ public class ManagedBluetoothService
 		this.lowService = lowService;
 	}
 
+	/**
+	 * Invalidates the cached low-level service handle and the handles of all
+	 * the managed characteristics of this service
+	 */
+	public void invalidateHandles()
+	{
+		this.lowService = null;
+
+		for (ManagedBluetoothCharacteristic characteristic : this.characteristics
+				.values())
+		{
+			characteristic.setLowCharacteristic(null);
+
+			// subscriptions do not survive handles
+			characteristic.setNotifying(false);
+		}
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.info;
+
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * A counted multiset of polling periods, in milliseconds, keeping track of
+ * the polling periods required by the children of a managed entity (e.g., the
+ * characteristics of a service) to provide the effective, i.e., minimum,
+ * period in constant time. Adding, removing and replacing a period cost
+ * O(log n) in the number of distinct periods.
+ * 
+ * {@link Integer#MAX_VALUE} stands for "no polling requirement" and is never
+ * counted. The class is not thread-safe, callers shall synchronize on the
+ * owning entity.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class PollingPeriods
+{
+	// the number of occurrences of each period
+	private TreeMap<Integer, Integer> counts;
+
+	/**
+	 * Builds a new, empty, multiset of periods
+	 */
+	public PollingPeriods()
+	{
+		this.counts = new TreeMap<Integer, Integer>();
+	}
+
+	/**
+	 * Adds an occurrence of the given period
+	 * 
+	 * @param periodMillis
+	 *            The period, in milliseconds
+	 */
+	public void add(int periodMillis)
+	{
+		if (periodMillis != Integer.MAX_VALUE)
+		{
+			Integer count = this.counts.get(periodMillis);
+			this.counts.put(periodMillis, (count == null) ? 1 : count + 1);
+		}
+	}
+
+	/**
+	 * Removes an occurrence of the given period
+	 * 
+	 * @param periodMillis
+	 *            The period, in milliseconds
+	 * @return true if removed, false if not counted
+	 */
+	public boolean remove(int periodMillis)
+	{
+		Integer count = this.counts.get(periodMillis);
+		if (count == null)
+			return false;
+
+		if (count > 1)
+			this.counts.put(periodMillis, count - 1);
+		else
+			this.counts.remove(periodMillis);
+		return true;
+	}
+
+	/**
+	 * Replaces an occurrence of the given old period with the given new
+	 * period, typically after a child entity changed its period
+	 * 
+	 * @param oldPeriodMillis
+	 *            The previous period, {@link Integer#MAX_VALUE} if the child
+	 *            was not counted
+	 * @param newPeriodMillis
+	 *            The new period, {@link Integer#MAX_VALUE} if the child shall
+	 *            not be counted anymore
+	 */
+	public void replace(int oldPeriodMillis, int newPeriodMillis)
+	{
+		if (oldPeriodMillis != newPeriodMillis)
+		{
+			this.remove(oldPeriodMillis);
+			this.add(newPeriodMillis);
+		}
+	}
+
+	/**
+	 * Gets the minimum counted period
+	 * 
+	 * @return the minimum period, in milliseconds, or
+	 *         {@link Integer#MAX_VALUE} if no period is counted
+	 */
+	public int getMinimum()
+	{
+		Entry<Integer, Integer> first = this.counts.firstEntry();
+		return (first != null) ? first.getKey() : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Checks if no period is counted
+	 * 
+	 * @return true if empty, false otherwise
+	 */
+	public boolean isEmpty()
+	{
+		return this.counts.isEmpty();
+	}
+}
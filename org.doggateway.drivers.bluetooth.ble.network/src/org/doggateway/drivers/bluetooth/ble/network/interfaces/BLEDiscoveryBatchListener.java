@@ -0,0 +1,55 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.interfaces;
+
+import java.util.List;
+
+import org.doggateway.drivers.bluetooth.ble.network.info.DiscoveredDevice;
+
+/**
+ * An interface to be notified, once per discovery attempt, about the devices
+ * discovered and lost at the network level. Only devices accepted by the
+ * {@link BLEDiscoveryFilter} given at registration time are reported.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public interface BLEDiscoveryBatchListener
+{
+	/**
+	 * Notifies the devices reported by one discovery attempt, only called if
+	 * at least one device is reported
+	 * 
+	 * @param discovered
+	 *            The devices discovered, or whose RSSI changed, in the attempt,
+	 *            read-only and possibly empty
+	 * @param lost
+	 *            The devices not in range anymore, only reported when
+	 *            discovery runs in incremental mode, read-only and possibly
+	 *            empty
+	 */
+	public void discoveredDevices(List<DiscoveredDevice> discovered,
+			List<DiscoveredDevice> lost);
+
+	/**
+	 * Notifies the current discovery status
+	 * 
+	 * @param enabled
+	 */
+	public void discoveryEnabled(boolean enabled);
+}
@@ -0,0 +1,48 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.interfaces;
+
+/**
+ * A predicate selecting the devices a {@link BLEDiscoveryBatchListener} is
+ * interested in. Filters are evaluated by the discovery thread on raw
+ * advertisement data, before any event is built or dispatched, therefore they
+ * shall be fast and shall not block.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public interface BLEDiscoveryFilter
+{
+	/**
+	 * Checks if the given device shall be reported to the listener
+	 * 
+	 * @param devName
+	 *            The device name, possibly null
+	 * @param devAddress
+	 *            The device MAC address
+	 * @param rssi
+	 *            The current (or last seen, for lost devices) RSSI level for
+	 *            the device
+	 * @param managed
+	 *            A flag indicating whether the device is already managed by Dog
+	 *            or not
+	 * @return true if the device shall be reported, false otherwise
+	 */
+	public boolean accept(String devName, String devAddress, short rssi,
+			boolean managed);
+}
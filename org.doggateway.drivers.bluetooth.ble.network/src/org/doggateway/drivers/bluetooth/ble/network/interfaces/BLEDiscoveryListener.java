@@ -41,6 +41,18 @@ public interface BLEDiscoveryListener
 	 */
 	public void discoveredDevice(String devName, String devAddress, short rssi,
 			boolean managed);
+
+	/**
+	 * Notifies that a previously discovered device is not in range anymore,
+	 * only notified when discovery runs in incremental mode
+	 * 
+	 * @param devAddress
+	 *            The device MAC address
+	 * @param managed
+	 *            A flag indicating whether the device is managed by Dog or
+	 *            not
+	 */
+	public void lostDevice(String devAddress, boolean managed);
 	
 	/**
 	 * Notifies the current discovery status
@@ -17,6 +17,8 @@
  */
 package org.doggateway.drivers.bluetooth.ble.network.interfaces;
 
+import java.util.concurrent.Future;
+
 import org.doggateway.drivers.bluetooth.ble.network.BLEDriverInstance;
 import org.doggateway.drivers.bluetooth.ble.network.info.BLEDeviceRegistration;
 
@@ -84,6 +86,47 @@ public interface BLENetwork
 	public byte[] readValue(String deviceMacAddress, String serviceUUID,
 			String characteristicUUID);
 
+	/**
+	 * Asynchronously writes the given raw value to the given characteristic
+	 * of the device having the given mac address. The write is queued with
+	 * all the other operations targeting the same device and the caller is
+	 * not blocked. Writes not completed within the configured operation
+	 * timeout are cancelled.
+	 * 
+	 * @param deviceMacAddress
+	 *            The MAC address of the device to write
+	 * @param serviceUUID
+	 *            The UUID of the service to which belongs the characteristic to
+	 *            be written
+	 * @param characteristicUUID
+	 *            The UUID of the characteristic to write
+	 * @param value
+	 *            The value to write.
+	 * @return a {@link Future} holding true if successfully written, false
+	 *         otherwise
+	 */
+	public Future<Boolean> writeValueAsync(String deviceMacAddress,
+			String serviceUUID, String characteristicUUID, byte[] value);
+
+	/**
+	 * Asynchronously reads the given characteristic of the device having the
+	 * given mac address. The read is queued with all the other operations
+	 * targeting the same device and the caller is not blocked. Reads not
+	 * completed within the configured operation timeout are cancelled.
+	 * 
+	 * @param deviceMacAddress
+	 *            The MAC address of the device to read
+	 * @param serviceUUID
+	 *            The UUID of the service to which belongs the characteristic to
+	 *            be read
+	 * @param characteristicUUID
+	 *            The UUID of the characteristic to read
+	 * @return a {@link Future} holding the value read or null if read
+	 *         operation is not possible
+	 */
+	public Future<byte[]> readValueAsync(String deviceMacAddress,
+			String serviceUUID, String characteristicUUID);
+
 	/**
 	 * Starts the discovery mode on the default adapter
 	 */
@@ -107,4 +150,29 @@ public interface BLENetwork
 	 */
 	public boolean removeDiscoveryListener(BLEDiscoveryListener listener);
 
+	/**
+	 * Adds a batch discovery listener to be notified, once per discovery
+	 * attempt, about the devices accepted by the given filter. Filters are
+	 * evaluated before any discovery event is built, see
+	 * {@link org.doggateway.drivers.bluetooth.ble.network.BLEDiscoveryFilters}
+	 * for stock filters.
+	 * 
+	 * @param listener
+	 *            The listener to notify
+	 * @param filter
+	 *            The filter, null to accept all devices
+	 */
+	public void addDiscoveryBatchListener(BLEDiscoveryBatchListener listener,
+			BLEDiscoveryFilter filter);
+
+	/**
+	 * Removes a batch discovery listener
+	 * 
+	 * @param listener
+	 *            The listener to remove
+	 * @return true if removed, false otherwise
+	 */
+	public boolean removeDiscoveryBatchListener(
+			BLEDiscoveryBatchListener listener);
+
 }
@@ -0,0 +1,76 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.interfaces;
+
+import java.util.Map;
+
+/**
+ * Counters and gauges describing the activity of the BLE network driver.
+ * Reading metrics never blocks the driver, snapshots are cheap enough to be
+ * taken every second.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public interface BLENetworkMetrics
+{
+	// counters, monotonically increasing since driver activation
+	public static final String POLLS_ATTEMPTED = "ble.polls.attempted";
+	public static final String POLLS_SUCCEEDED = "ble.polls.succeeded";
+	public static final String NOTIFICATIONS_RECEIVED = "ble.notifications.received";
+	public static final String CONNECT_HITS = "ble.connect.hits";
+	public static final String CONNECT_MISSES = "ble.connect.misses";
+	public static final String CONNECT_FAILURES = "ble.connect.failures";
+	public static final String CONNECT_REJECTIONS = "ble.connect.rejections";
+	public static final String CONNECT_EVICTIONS = "ble.connect.evictions";
+	public static final String DISPATCH_COALESCED = "ble.dispatch.coalesced";
+	public static final String DISPATCH_SUPPRESSED = "ble.dispatch.suppressed";
+	public static final String ADAPTER_FAILURES = "ble.adapters.failures";
+	public static final String ADAPTER_REHOMED_DEVICES = "ble.adapters.rehomed.devices";
+
+	// gauges, reflecting the current driver state
+	public static final String DISPATCH_QUEUE_DEPTH = "ble.dispatch.queue.depth";
+	public static final String DEVICES_WAITING_FOR_DISCOVERY = "ble.discovery.waiting.devices";
+	public static final String ACTUAL_POLLING_TIME_MILLIS = "ble.polling.actual.time.millis";
+	public static final String LIVE_CONNECTIONS = "ble.connections.live";
+	public static final String ADAPTERS = "ble.adapters";
+	public static final String ADAPTER_REHOMING_LAST_MILLIS = "ble.adapters.rehoming.last.millis";
+	public static final String DISCOVERY_DUTY_CYCLE = "ble.discovery.duty.cycle";
+	public static final String DISCOVERY_INTERVAL_MILLIS = "ble.discovery.interval.millis";
+	public static final String DISCOVERY_BATCHES_MERGED = "ble.discovery.batches.merged";
+	public static final String POLL_LATENCY_P50_MILLIS = "ble.polls.latency.p50.millis";
+	public static final String POLL_LATENCY_P99_MILLIS = "ble.polls.latency.p99.millis";
+
+	/**
+	 * Provides a snapshot of all the metrics, keyed by metric name. Counters
+	 * and gauges are read independently, therefore the snapshot is not an
+	 * atomic view of the driver state.
+	 * 
+	 * @return the metric values, keyed by metric name
+	 */
+	public Map<String, Number> getSnapshot();
+
+	/**
+	 * Gets the current value of the given metric
+	 * 
+	 * @param metric
+	 *            The metric name
+	 * @return The metric value, or null if the metric is unknown
+	 */
+	public Number getMetric(String metric);
+}
@@ -0,0 +1,70 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.tasks;
+
+import org.doggateway.drivers.bluetooth.ble.network.BLEAdapterContext;
+import org.doggateway.drivers.bluetooth.ble.network.BLENetworkDriverImpl;
+
+import tinyb.BluetoothNotification;
+
+/**
+ * Tracks the power state of an adapter: powered-off adapters are failed
+ * over, i.e., their devices are moved to the remaining adapters, and
+ * powered-on adapters are used again.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class AdapterPowerHandler implements BluetoothNotification<Boolean>
+{
+	// the driver
+	private BLENetworkDriverImpl theDriver;
+
+	// the tracked adapter
+	private BLEAdapterContext adapter;
+
+	/**
+	 * Class constructor
+	 * 
+	 * @param theDriver
+	 *            The network driver
+	 * @param adapter
+	 *            The adapter whose power state shall be tracked
+	 */
+	public AdapterPowerHandler(BLENetworkDriverImpl theDriver,
+			BLEAdapterContext adapter)
+	{
+		// store the values
+		this.theDriver = theDriver;
+		this.adapter = adapter;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see tinyb.BluetoothNotification#run(java.lang.Object)
+	 */
+	@Override
+	public void run(Boolean powered)
+	{
+		if (powered != null)
+			this.theDriver.adapterPowerChanged(this.adapter,
+					powered.booleanValue());
+	}
+
+}
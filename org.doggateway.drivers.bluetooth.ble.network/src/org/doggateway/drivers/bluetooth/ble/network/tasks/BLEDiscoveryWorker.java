@@ -17,15 +17,15 @@
  */
 package org.doggateway.drivers.bluetooth.ble.network.tasks;
 
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.doggateway.drivers.bluetooth.ble.network.BLENetworkDriverImpl;
+import org.doggateway.drivers.bluetooth.ble.network.info.MacAddress;
 import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothDevice;
+import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLEDiscoveryBatchListener;
+import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLEDiscoveryFilter;
 import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLEDiscoveryListener;
+import org.doggateway.drivers.bluetooth.ble.network.tasks.DiscoveryTracker.SeenDevice;
 import org.osgi.service.log.LogService;
 
 import tinyb.BluetoothDevice;
@@ -42,11 +42,14 @@ public class BLEDiscoveryWorker extends Thread
 	// the running flag
 	private boolean canRun;
 	
-	// the set of discovery listeners
-	private HashSet<BLEDiscoveryListener> listeners;
-	
-	// the dispatcher service
-	private ExecutorService dispatcher;
+	// the dispatcher of discovery events to listeners
+	private DiscoveryDispatcher dispatcher;
+
+	// the devices seen in the last attempt, for incremental discovery
+	private DiscoveryTracker tracker;
+
+	// the current interval between discovery cycles, in milliseconds
+	private volatile long intervalMillis;
 
 	/**
 	 * Builds a new instance of discovery thread, TODO: evaluate how to handle
@@ -60,11 +63,11 @@ public class BLEDiscoveryWorker extends Thread
 		//store the driver reference
 		this.theDriver = theDriver;
 		
-		//create the set of discovery listeners
-		this.listeners = new HashSet<BLEDiscoveryListener>();
-		
-		//create the executor service, single threaded,
-		this.dispatcher = Executors.newCachedThreadPool();
+		//create the dispatcher, single threaded and bounded
+		this.dispatcher = new DiscoveryDispatcher();
+
+		//create the tracker of seen devices
+		this.tracker = new DiscoveryTracker();
 		
 	}
 
@@ -78,8 +81,15 @@ public class BLEDiscoveryWorker extends Thread
 	{
 		while (canRun)
 		{
-			for (int i = 0; ((i < this.theDriver.getDiscoveryTrials())
-					&& (canRun)); i++)
+			// in adaptive mode, scan aggressively only while devices are
+			// waiting for discovery, otherwise run a single census attempt
+			boolean adaptive = this.theDriver.isAdaptiveDiscovery();
+
+			int trials = ((adaptive) && (this.theDriver
+					.getDevicesWaitingForDiscoveryCount() == 0)) ? 1
+							: this.theDriver.getDiscoveryTrials();
+
+			for (int i = 0; ((i < trials) && (canRun)); i++)
 			{
 				// open the adapter in discovery, wait for a while and check if
 				// any
@@ -87,60 +97,80 @@ public class BLEDiscoveryWorker extends Thread
 				// the devices listed in the waiting to discover list are
 				// available.
 				this.theDriver.setDiscovery(true);
-				
-				// TODO this part shall be "re-thought" and "re-factored"!!!
-				this.dispatcher.submit(new DispatchDiscoveryStatusTask(this.listeners, true));
+
+				// all the events of the attempt are delivered at once
+				DiscoveryBatch batch = this.dispatcher
+						.newBatch(Boolean.TRUE);
 
 				// get the currently available devices
 				List<BluetoothDevice> devices = this.theDriver
 						.getLowLevelDevices();
 
-				// iterate over the devices waiting for discovery
-				ArrayList<ManagedBluetoothDevice> devicesWaitingForDiscovery = this.theDriver
-						.getManagedDevicesWaitingForDiscovery();
+				// the discovery mode
+				boolean incremental = this.theDriver.isIncrementalDiscovery();
+				int rssiThreshold = this.theDriver.getDiscoveryRssiThreshold();
+				if (incremental)
+					this.tracker.beginAttempt();
+				else
+					this.tracker.reset();
 
 				for (BluetoothDevice lowDevice : devices)
 				{
+					// the device data
+					String address = lowDevice.getAddress();
+					long macAddress = MacAddress.toLong(address);
 
-					// log device
-					this.theDriver.getLogger().log(LogService.LOG_INFO,
-							"Found: " + lowDevice.getName() + "[MAC: "
-									+ lowDevice.getAddress() + "][RSSI: "
-									+ lowDevice.getRSSI() + "]");
-					
-					//try to detect managed devices waiting for discovery
-					for (ManagedBluetoothDevice deviceToDiscover : devicesWaitingForDiscovery)
-					{
-						if (deviceToDiscover.getDeviceMacAddress()
-								.equalsIgnoreCase(lowDevice.getAddress()))
-						{
-							// attach the device
-							deviceToDiscover.setLowDevice(lowDevice);
+					//try to detect managed devices waiting for discovery, by
+					//packed MAC address
+					ManagedBluetoothDevice deviceToDiscover = this.theDriver
+							.getDeviceWaitingForDiscovery(macAddress);
 
-							// remove the device from the list of devices
-							// waiting
-							// for discovery
-							this.theDriver.discoveredDevice(deviceToDiscover);
-
-							// should break here...
-							break;
-						}
+					//the device shall be seen by its adapter
+					BluetoothDevice assignedLowDevice = (deviceToDiscover != null)
+							? this.theDriver.onAssignedAdapter(
+									deviceToDiscover, lowDevice)
+							: null;
+					if (assignedLowDevice != null)
+					{
+						// attach the device
+						this.theDriver.setLowLevelDevice(deviceToDiscover,
+								assignedLowDevice);
 
+						// remove the device from the list of devices waiting
+						// for discovery
+						this.theDriver.discoveredDevice(deviceToDiscover);
 					}
 					
-					//dispatch discovery
-					if(this.theDriver.getManagedDevice(lowDevice.getAddress())!=null)
+					if (incremental)
 					{
-						// notify listeners
-						this.dispatcher.submit(new DispatchDiscoveryTask(lowDevice,listeners,true));
+						// only track the device, changes are dispatched at
+						// the end of the attempt
+						this.tracker.seen(macAddress, lowDevice.getName(),
+								address, lowDevice.getRSSI(), rssiThreshold);
 					}
 					else
 					{
-						// notify listeners
-						this.dispatcher.submit(new DispatchDiscoveryTask(lowDevice,listeners,false));
-					}
+						// log device
+						String name = lowDevice.getName();
+						short rssi = lowDevice.getRSSI();
+						this.theDriver.getLogger().log(LogService.LOG_INFO,
+								"Found: " + name + "[MAC: " + address
+										+ "][RSSI: " + rssi + "]");
 
+						//collect discovery
+						batch.addDiscovered(name, address, rssi,
+								(deviceToDiscover != null)
+										|| (this.isManaged(macAddress)));
+					}
 				}
+
+				// collect changes only
+				if (incremental)
+					this.collectChanges(batch);
+
+				// dispatch the attempt events
+				this.dispatcher.dispatch(batch);
+
 				// sleep
 				try
 				{
@@ -150,23 +180,132 @@ public class BLEDiscoveryWorker extends Thread
 				{
 					//do nothing, we exploit interrupt to wake up the thread on demand
 				}
+
+				// in adaptive mode, stop scanning as soon as all devices
+				// are attached
+				if ((adaptive) && (this.theDriver
+						.getDevicesWaitingForDiscoveryCount() == 0))
+					break;
 			}
 			// stop discovery
 			this.theDriver.setDiscovery(false);
 			
-			// TODO this part shall be "re-thought" and "re-factored"!!!
-			this.dispatcher.submit(new DispatchDiscoveryStatusTask(this.listeners, false));
+			// dispatch the discovery status
+			this.dispatcher.dispatch(this.dispatcher.newBatch(Boolean.FALSE));
+
+			// compute the interval to the next cycle: in adaptive mode the
+			// interval is doubled at each cycle with no device waiting for
+			// discovery, up to the maximum
+			if ((adaptive) && (this.theDriver
+					.getDevicesWaitingForDiscoveryCount() == 0))
+				this.intervalMillis = Math.min(
+						Math.max(this.intervalMillis * 2,
+								this.theDriver.getDiscoveryIntervalMillis()),
+						Math.max(this.theDriver.getMaxDiscoveryIntervalMillis(),
+								this.theDriver.getDiscoveryIntervalMillis()));
+			else
+				this.intervalMillis = this.theDriver
+						.getDiscoveryIntervalMillis();
 
 			// sleep
 			try
 			{
-				Thread.sleep(this.theDriver.getDiscoveryIntervalMillis());
+				Thread.sleep(this.intervalMillis);
 			}
 			catch (InterruptedException e)
 			{
 				//do nothing, we exploit interrupt to wake up the thread on demand
 			}
 		}
+
+		// stop dispatching
+		this.dispatcher.shutdown();
+	}
+
+	/**
+	 * Collects the changes detected by the tracker in the current discovery
+	 * attempt
+	 * 
+	 * @param batch
+	 *            The batch of the current attempt
+	 */
+	private void collectChanges(DiscoveryBatch batch)
+	{
+		// detect lost devices
+		this.tracker.endAttempt();
+
+		// new devices
+		for (SeenDevice device : this.tracker.getFound())
+		{
+			// log device
+			this.theDriver.getLogger().log(LogService.LOG_INFO,
+					"Found: " + device.getName() + "[MAC: "
+							+ device.getAddress() + "][RSSI: "
+							+ device.getRssi() + "]");
+
+			batch.addDiscovered(device.getName(), device.getAddress(),
+					device.getRssi(), this.isManaged(device.getMacAddress()));
+		}
+
+		// RSSI changes
+		for (SeenDevice device : this.tracker.getChanged())
+		{
+			// log device
+			this.theDriver.getLogger().log(LogService.LOG_DEBUG,
+					"RSSI changed: " + device.getName() + "[MAC: "
+							+ device.getAddress() + "][RSSI: "
+							+ device.getRssi() + "]");
+
+			batch.addDiscovered(device.getName(), device.getAddress(),
+					device.getRssi(), this.isManaged(device.getMacAddress()));
+		}
+
+		// lost devices
+		for (SeenDevice device : this.tracker.getLost())
+		{
+			// log device
+			this.theDriver.getLogger().log(LogService.LOG_INFO,
+					"Lost: " + device.getName() + "[MAC: "
+							+ device.getAddress() + "]");
+
+			batch.addLost(device.getName(), device.getAddress(),
+					device.getRssi(), this.isManaged(device.getMacAddress()));
+		}
+	}
+
+	/**
+	 * Checks if the device having the given MAC address is managed by the
+	 * driver
+	 * 
+	 * @param macAddress
+	 *            The packed device MAC address
+	 * @return true if managed, false otherwise
+	 */
+	private boolean isManaged(long macAddress)
+	{
+		return this.theDriver.getManagedDevice(macAddress) != null;
+	}
+
+	/**
+	 * Gets the current interval between discovery cycles, which in adaptive
+	 * mode grows while no device is waiting for discovery
+	 * 
+	 * @return the interval in milliseconds
+	 */
+	public long getIntervalMillis()
+	{
+		return this.intervalMillis;
+	}
+
+	/**
+	 * Gets the number of discovery batches merged into pending ones because
+	 * listeners lagged behind
+	 * 
+	 * @return the number of merged batches
+	 */
+	public long getMergedDiscoveryBatches()
+	{
+		return this.dispatcher.getMergedBatches();
 	}
 
 	/**
@@ -186,10 +325,7 @@ public class BLEDiscoveryWorker extends Thread
 	 */
 	public void addDiscoveryListener(BLEDiscoveryListener listener)
 	{
-		synchronized (this.listeners)
-		{
-			this.listeners.add(listener);
-		}
+		this.dispatcher.addListener(listener);
 	}
 	
 	/**
@@ -199,13 +335,35 @@ public class BLEDiscoveryWorker extends Thread
 	 */
 	public boolean removeDiscoveryListener(BLEDiscoveryListener listener)
 	{
-		boolean removed = false;
-		synchronized (this.listeners)
-		{
-			removed = this.listeners.remove(listener);
-		}
-		
-		return removed;
+		return this.dispatcher.removeListener(listener);
+	}
+
+	/**
+	 * Adds a batch discovery listener to be notified, once per discovery
+	 * attempt, about the devices accepted by the given filter
+	 * 
+	 * @param listener
+	 *            The listener to notify
+	 * @param filter
+	 *            The filter, null to accept all devices
+	 */
+	public void addDiscoveryBatchListener(BLEDiscoveryBatchListener listener,
+			BLEDiscoveryFilter filter)
+	{
+		this.dispatcher.addListener(listener, filter);
+	}
+
+	/**
+	 * Removes a batch discovery listener
+	 * 
+	 * @param listener
+	 *            The listener to remove
+	 * @return true if removed, false otherwise
+	 */
+	public boolean removeDiscoveryBatchListener(
+			BLEDiscoveryBatchListener listener)
+	{
+		return this.dispatcher.removeListener(listener);
 	}
 
 }
@@ -17,11 +17,16 @@
  */
 package org.doggateway.drivers.bluetooth.ble.network.tasks;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
 import org.doggateway.drivers.bluetooth.ble.network.BLENetworkDriverImpl;
 import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothCharacteristic;
 import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothDevice;
 import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothService;
-import org.osgi.service.log.LogService;
 
 /**
  * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
@@ -35,14 +40,22 @@ public class BLEPollingWorker extends Thread
 	// the running flag
 	private boolean canRun;
 
+	// the deadline-ordered schedule of characteristics to poll
+	private PollingSchedule schedule;
+
 	/**
 	 * @param theDriver
+	 * @param schedule
 	 */
-	public BLEPollingWorker(BLENetworkDriverImpl theDriver)
+	public BLEPollingWorker(BLENetworkDriverImpl theDriver,
+			PollingSchedule schedule)
 	{
 		// store a reference to the owning driver
 		this.theDriver = theDriver;
 
+		// store a reference to the polling schedule
+		this.schedule = schedule;
+
 		// initially can run
 		this.canRun = true;
 	}
@@ -69,100 +82,129 @@ public class BLEPollingWorker extends Thread
 	{
 		while ((!this.isInterrupted()) && canRun)
 		{
-			// iterate over all managed devices
-			for (String deviceMac : this.theDriver
-					.getManagedBluetoothDeviceAddresses())
+			// the characteristics due at this time
+			List<ManagedBluetoothCharacteristic> dueCharacteristics;
+
+			// wait for the next deadline
+			try
 			{
-				// quick stop
-				if ((!this.isInterrupted()) && canRun)
+				dueCharacteristics = this.schedule.awaitDue();
+			}
+			catch (InterruptedException e)
+			{
+				this.interrupt();
+				break;
+			}
+
+			// group due characteristics by device, to poll each device in a
+			// single session
+			Map<ManagedBluetoothDevice, List<ManagedBluetoothCharacteristic>> dueDevices = new LinkedHashMap<ManagedBluetoothDevice, List<ManagedBluetoothCharacteristic>>();
+
+			// only touch due characteristics
+			for (ManagedBluetoothCharacteristic currentCharacteristic : dueCharacteristics)
+			{
+				// get the owning service, if null the characteristic is no
+				// more monitored and can be dropped from the schedule
+				ManagedBluetoothService currentService = currentCharacteristic
+						.getService();
+				if (currentService == null)
+					continue;
+
+				// get the owning device and check that it is still managed,
+				// otherwise drop the characteristic from the schedule
+				ManagedBluetoothDevice device = currentService.getDevice();
+				if ((device == null) || (this.theDriver
+						.getManagedDevice(device.getMacAddress()) != device))
+					continue;
+
+				// characteristics delivered by an active subscription only
+				// need their subscription to be checked, which does not
+				// require any GATT operation: subscriptions are dropped when
+				// the device disconnects
+				if ((currentCharacteristic.isNotificationRequired())
+						&& (currentCharacteristic.isNotifying()))
 				{
-					// this shall be atomic...
-					ManagedBluetoothDevice device = this.theDriver
-							.getManagedDevice(deviceMac);
+					this.schedule.schedule(currentCharacteristic);
+					continue;
+				}
 
-					// check if available
-					if (device.getLowDevice() != null)
+				// check if available
+				if (device.getLowDevice() != null)
+				{
+					// skip characteristics whose previous poll is still
+					// queued or running, they will be re-scheduled once
+					// completed
+					if (!currentCharacteristic.isPollPending())
 					{
-						// TODO: check if this makes any sense
-						synchronized (device)
+						currentCharacteristic.setPollPending(true);
+
+						// add to the device group
+						List<ManagedBluetoothCharacteristic> group = dueDevices
+								.get(device);
+						if (group == null)
 						{
-							// use this time for all checks to preserve
-							// coherence of
-							// checks
-							long time = System.currentTimeMillis();
-
-							if (time - device.getLastPollFromEpoch() >= device
-									.getPollingTimeMillis())
-							{
-								// device shall be polled
-								for (ManagedBluetoothService currentService : device
-										.getServices())
-								{
-									
-									// re-check for polling need
-									if (time - currentService
-											.getLastPollFromEpoch() >= currentService
-													.getPollingTimeMillis())
-									{
-										// this service shall be polled
-										for (ManagedBluetoothCharacteristic currentCharacteristic : currentService
-												.getCharacteristics().values())
-										{
-											// check if needs polling
-											if (time - currentCharacteristic
-													.getLastPollFromEpoch() >= currentCharacteristic
-															.getPollingTimeMillis())
-											{
-												long eTime = System.currentTimeMillis();
-												
-												// poll the characteristic
-												byte[] value = this.theDriver
-														.readValue(device,
-																currentService
-																		.getServiceUUID(),
-																currentCharacteristic
-																		.getCharacteristicUUID());
-												
-												this.theDriver.getLogger().log(LogService.LOG_INFO,"Elapsed: "+(System.currentTimeMillis()-eTime));
-
-												// dispatch the results
-												// TODO check if shall be done
-												// in a
-												// separate thread??
-												this.theDriver.notifyNewValue(
-														currentCharacteristic
-																.getCharacteristicUUID(),
-														value,
-														currentService
-																.getServiceUUID(),
-														currentCharacteristic
-																.getMonitoringSpecs());
-												
-												//adjust last read time stamp
-												currentCharacteristic.setLastPollFromEpoch(time);
-												currentService.setLastPollFromEpoch(time);
-												device.setLastPollFromEpoch(time);
-											}
-										}
-									}
-
-								}
-							}
+							group = new ArrayList<ManagedBluetoothCharacteristic>();
+							dueDevices.put(device, group);
 						}
+						group.add(currentCharacteristic);
 					}
 				}
-				Thread.yield();
-			}
+				else
+				{
+					// not yet discovered, check again after one polling
+					// time
 
-			// sleep for the current polling time
-			try
-			{
-				this.theDriver.getLogger().log(LogService.LOG_INFO,"Sleeping for: "+theDriver.getActualPollingTimeMillis());
-				Thread.sleep(theDriver.getActualPollingTimeMillis());
+					// schedule the next poll
+					this.schedule.schedule(currentCharacteristic);
+				}
 			}
-			catch (InterruptedException e)
+
+			// poll each device in one session
+			long now = System.nanoTime();
+			for (Entry<ManagedBluetoothDevice, List<ManagedBluetoothCharacteristic>> dueDevice : dueDevices
+					.entrySet())
 			{
-				this.interrupt();
+				// quick stop
+				if ((this.isInterrupted()) || (!canRun))
+					break;
+
+				ManagedBluetoothDevice device = dueDevice.getKey();
+				List<ManagedBluetoothCharacteristic> group = dueDevice
+						.getValue();
+
+				// skip unreachable devices until their backoff elapses,
+				// without touching the radio
+				if (!device.getHealth().allowAttempt(now))
+				{
+					long retryAt = device.getHealth().getRetryAtNanos();
+					for (ManagedBluetoothCharacteristic characteristic : group)
+					{
+						characteristic.setPollPending(false);
+
+						// next deadline, not earlier than the retry time
+						this.schedule.schedule(characteristic);
+						if (characteristic.getNextPollDueNanos() - retryAt < 0)
+							this.schedule.schedule(characteristic, retryAt);
+					}
+					continue;
+				}
+
+				// piggyback characteristics of the same device falling due
+				// within the allowed jitter window
+				for (ManagedBluetoothCharacteristic nextCharacteristic : this.schedule
+						.takeDueWithinJitter(device, now,
+								this.theDriver.getAllowedTimeJitter()))
+				{
+					if (!nextCharacteristic.isPollPending())
+					{
+						nextCharacteristic.setPollPending(true);
+						group.add(nextCharacteristic);
+					}
+				}
+
+				// poll on the device queue, concurrently with other devices
+				device.getOperationQueue().execute(new PollDeviceTask(
+						this.theDriver, this.schedule, device, group, now));
 			}
 		}
 	}
@@ -0,0 +1,94 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.tasks;
+
+import org.doggateway.drivers.bluetooth.ble.network.BLENetworkDriverImpl;
+import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothCharacteristic;
+import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothDevice;
+import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothService;
+
+import tinyb.BluetoothNotification;
+
+/**
+ * Receives values notified (or indicated) by a subscribed characteristic and
+ * dispatches them to the driver instances monitoring the characteristic,
+ * exactly as polled values are dispatched.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class CharacteristicNotificationHandler
+		implements BluetoothNotification<byte[]>
+{
+	// the driver
+	private BLENetworkDriverImpl theDriver;
+
+	// the subscribed characteristic
+	private ManagedBluetoothCharacteristic characteristic;
+
+	/**
+	 * Class constructor
+	 * 
+	 * @param theDriver
+	 *            The network driver
+	 * @param characteristic
+	 *            The subscribed characteristic
+	 */
+	public CharacteristicNotificationHandler(BLENetworkDriverImpl theDriver,
+			ManagedBluetoothCharacteristic characteristic)
+	{
+		// store the values
+		this.theDriver = theDriver;
+		this.characteristic = characteristic;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see tinyb.BluetoothNotification#run(java.lang.Object)
+	 */
+	@Override
+	public void run(byte[] value)
+	{
+		// get the service, null if the characteristic is not managed anymore
+		ManagedBluetoothService service = this.characteristic.getService();
+
+		if ((service != null) && (value != null))
+		{
+			// count the notification
+			this.theDriver.getMetrics().notificationReceived();
+
+			// use this time for all updates to preserve coherence
+			long time = System.currentTimeMillis();
+
+			// dispatch the value
+			this.theDriver.notifyNewValue(
+					this.characteristic.getCharacteristicUUID(), value,
+					service.getServiceUUID(),
+					this.characteristic.getMonitoringSpecs());
+
+			// a notification counts as a poll
+			this.characteristic.setLastPollFromEpoch(time);
+			service.setLastPollFromEpoch(time);
+			ManagedBluetoothDevice device = service.getDevice();
+			if (device != null)
+				device.setLastPollFromEpoch(time);
+		}
+	}
+
+}
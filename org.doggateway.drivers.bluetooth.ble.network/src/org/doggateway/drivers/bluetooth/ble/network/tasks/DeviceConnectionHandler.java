@@ -0,0 +1,70 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.tasks;
+
+import org.doggateway.drivers.bluetooth.ble.network.BLENetworkDriverImpl;
+import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothDevice;
+
+import tinyb.BluetoothNotification;
+
+/**
+ * Tracks the connection state of a managed device: upon disconnection, cached
+ * handles and value subscriptions are dropped, and subscriptions are
+ * re-established as soon as possible.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class DeviceConnectionHandler implements BluetoothNotification<Boolean>
+{
+	// the driver
+	private BLENetworkDriverImpl theDriver;
+
+	// the tracked device
+	private ManagedBluetoothDevice device;
+
+	/**
+	 * Class constructor
+	 * 
+	 * @param theDriver
+	 *            The network driver
+	 * @param device
+	 *            The device whose connection state shall be tracked
+	 */
+	public DeviceConnectionHandler(BLENetworkDriverImpl theDriver,
+			ManagedBluetoothDevice device)
+	{
+		// store the values
+		this.theDriver = theDriver;
+		this.device = device;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see tinyb.BluetoothNotification#run(java.lang.Object)
+	 */
+	@Override
+	public void run(Boolean connected)
+	{
+		// handle disconnections only, connections are driven by the driver
+		if ((connected != null) && (!connected.booleanValue()))
+			this.theDriver.disconnectedDevice(this.device);
+	}
+
+}
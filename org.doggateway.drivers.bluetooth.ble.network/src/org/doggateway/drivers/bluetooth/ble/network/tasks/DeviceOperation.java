@@ -0,0 +1,81 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.tasks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A cancellable operation targeting a single Bluetooth device, executed on
+ * the device {@link DeviceOperationQueue}. Operations cancelled (e.g., by
+ * timeout) before being run are simply skipped by the queue, operations
+ * cancelled while running complete anyway but their result is discarded.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ * @param <V>
+ *            The type of the operation result
+ */
+public class DeviceOperation<V> extends FutureTask<V>
+{
+	// the pending timeout, if any
+	private Future<?> timeout;
+
+	/**
+	 * Builds a new operation executing the given callable
+	 * 
+	 * @param callable
+	 *            The callable implementing the operation
+	 */
+	public DeviceOperation(Callable<V> callable)
+	{
+		super(callable);
+	}
+
+	/**
+	 * Sets the timeout associated to this operation, which is discarded as
+	 * soon as the operation completes
+	 * 
+	 * @param timeout
+	 *            the pending timeout
+	 */
+	public synchronized void setTimeout(Future<?> timeout)
+	{
+		// store the timeout
+		this.timeout = timeout;
+
+		// the operation might already be over
+		if (this.isDone())
+			this.timeout.cancel(false);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.FutureTask#done()
+	 */
+	@Override
+	protected synchronized void done()
+	{
+		// discard the timeout, if any
+		if (this.timeout != null)
+			this.timeout.cancel(false);
+	}
+
+}
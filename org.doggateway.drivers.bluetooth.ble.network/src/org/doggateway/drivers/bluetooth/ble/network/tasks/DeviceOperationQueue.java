@@ -0,0 +1,175 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.tasks;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A queue of operations targeting a single Bluetooth device. Operations are
+ * executed one at a time, in submission order, on a shared (adapter-level)
+ * executor. This allows operations on different devices to run concurrently
+ * while keeping operations on the same device serialized.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class DeviceOperationQueue implements Executor
+{
+	// the pending operations
+	private Queue<Runnable> operations;
+
+	// true if an operation of this queue is currently submitted to, or
+	// running on, the underlying executor
+	private AtomicBoolean active;
+
+	// the shared executor on which operations are run
+	private volatile Executor executor;
+
+	// the runnable executing the head of the queue
+	private Runnable runner;
+
+	/**
+	 * Builds a new operation queue running on the given executor
+	 * 
+	 * @param executor
+	 *            The executor, typically shared by all the devices of an
+	 *            adapter, on which operations are run
+	 */
+	public DeviceOperationQueue(Executor executor)
+	{
+		// store the executor
+		this.executor = executor;
+
+		// build inner data structures
+		this.operations = new ConcurrentLinkedQueue<Runnable>();
+		this.active = new AtomicBoolean(false);
+		this.runner = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				runNext();
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+	 */
+	@Override
+	public void execute(Runnable operation)
+	{
+		// enqueue the operation
+		this.operations.add(operation);
+
+		// submit, if not already active
+		this.submitIfIdle();
+	}
+
+	/**
+	 * Gets the number of operations waiting for execution
+	 * 
+	 * @return the number of pending operations
+	 */
+	public int getPendingOperations()
+	{
+		return this.operations.size();
+	}
+
+	/**
+	 * Checks if the queue is idle, i.e., if no operation is running or waiting
+	 * for execution
+	 * 
+	 * @return true if idle, false otherwise
+	 */
+	public boolean isIdle()
+	{
+		return (!this.active.get()) && (this.operations.isEmpty());
+	}
+
+	/**
+	 * Sets the executor on which operations shall be run, already submitted
+	 * operations will complete on the previous executor.
+	 * 
+	 * @param executor
+	 *            the executor to set
+	 */
+	public void setExecutor(Executor executor)
+	{
+		this.executor = executor;
+	}
+
+	/**
+	 * Submits the runner to the underlying executor if no operation of this
+	 * queue is currently active
+	 */
+	private void submitIfIdle()
+	{
+		if ((!this.operations.isEmpty())
+				&& (this.active.compareAndSet(false, true)))
+		{
+			try
+			{
+				this.executor.execute(this.runner);
+			}
+			catch (RejectedExecutionException e)
+			{
+				// the executor has been shut down, drop pending operations,
+				// cancelling them to release callers waiting on their result
+				Runnable operation;
+				while ((operation = this.operations.poll()) != null)
+				{
+					if (operation instanceof Future<?>)
+						((Future<?>) operation).cancel(false);
+				}
+				this.active.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Runs the operation at the head of the queue and re-submits the runner
+	 * if further operations are pending. Running one operation per submission
+	 * lets operations of other devices interleave fairly on the shared
+	 * executor.
+	 */
+	private void runNext()
+	{
+		try
+		{
+			Runnable operation = this.operations.poll();
+			if (operation != null)
+				operation.run();
+		}
+		finally
+		{
+			// not active anymore
+			this.active.set(false);
+
+			// handle operations queued in the meanwhile
+			this.submitIfIdle();
+		}
+	}
+}
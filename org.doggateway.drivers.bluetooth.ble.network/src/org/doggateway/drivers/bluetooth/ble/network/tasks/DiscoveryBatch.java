@@ -0,0 +1,341 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.tasks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.doggateway.drivers.bluetooth.ble.network.info.DiscoveredDevice;
+import org.doggateway.drivers.bluetooth.ble.network.info.MacAddress;
+import org.doggateway.drivers.bluetooth.ble.network.tasks.DiscoveryDispatcher.Subscription;
+
+/**
+ * The discovery events collected in one discovery attempt, delivered to
+ * discovery listeners at once: the discovery status, if changed, the devices
+ * discovered (or whose RSSI changed) and the devices lost.
+ * 
+ * Events are filtered, per listener, as soon as they are added, using the
+ * listeners registered when the batch is created: events rejected by all the
+ * listeners are neither allocated nor dispatched, and listeners only receive
+ * the events they accepted.
+ * 
+ * Batches of incremental discovery carry one-time deltas, which are never
+ * sent again: a batch can therefore be merged with a newer one (see
+ * {@link #merge(DiscoveryBatch)}), keeping the latest event of each device,
+ * but shall never be discarded.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class DiscoveryBatch
+{
+	// the discovery status, null if not changed
+	private Boolean discoveryStatus;
+
+	// the listeners to notify, with their filters
+	private Subscription[] subscriptions;
+
+	// the discovered devices accepted by each listener, by listener
+	// position, lazily created
+	private List<List<DiscoveredDevice>> discovered;
+
+	// the lost devices accepted by each listener, by listener position,
+	// lazily created
+	private List<List<DiscoveredDevice>> lost;
+
+	// true if at least one device has been accepted
+	private boolean accepted;
+
+	/**
+	 * Builds a new batch for the given listeners, see
+	 * {@link DiscoveryDispatcher#newBatch(Boolean)}
+	 * 
+	 * @param discoveryStatus
+	 *            The discovery status to notify, or null if not changed
+	 * @param subscriptions
+	 *            The listeners to notify
+	 */
+	DiscoveryBatch(Boolean discoveryStatus, Subscription[] subscriptions)
+	{
+		this.discoveryStatus = discoveryStatus;
+		this.subscriptions = subscriptions;
+		this.discovered = new ArrayList<List<DiscoveredDevice>>(
+				Collections.<List<DiscoveredDevice>> nCopies(
+						subscriptions.length, null));
+		this.lost = new ArrayList<List<DiscoveredDevice>>(
+				Collections.<List<DiscoveredDevice>> nCopies(
+						subscriptions.length, null));
+	}
+
+	/**
+	 * Adds a discovered device, or a device whose RSSI changed, to the batch
+	 * 
+	 * @param name
+	 *            The device name
+	 * @param address
+	 *            The device MAC address
+	 * @param rssi
+	 *            The device RSSI
+	 * @param managed
+	 *            The managed flag
+	 */
+	public void addDiscovered(String name, String address, short rssi,
+			boolean managed)
+	{
+		this.add(this.discovered, name, address, rssi, managed);
+	}
+
+	/**
+	 * Adds a lost device to the batch
+	 * 
+	 * @param name
+	 *            The device name, as last seen
+	 * @param address
+	 *            The device MAC address
+	 * @param rssi
+	 *            The device RSSI, as last seen
+	 * @param managed
+	 *            The managed flag
+	 */
+	public void addLost(String name, String address, short rssi,
+			boolean managed)
+	{
+		this.add(this.lost, name, address, rssi, managed);
+	}
+
+	/**
+	 * Checks if the batch carries no event
+	 * 
+	 * @return true if empty, false otherwise
+	 */
+	public boolean isEmpty()
+	{
+		return (this.discoveryStatus == null) && (!this.accepted);
+	}
+
+	/**
+	 * Merges the given, newer, batch into this one, which shall not have been
+	 * delivered yet. For each listener and device only the newest event is
+	 * kept, therefore delivering the merged batch brings listeners to the
+	 * same view as delivering both batches in order. Listeners registered
+	 * after this batch was created are added.
+	 * 
+	 * @param newer
+	 *            The batch to merge
+	 */
+	void merge(DiscoveryBatch newer)
+	{
+		// the newest discovery status wins
+		if (newer.discoveryStatus != null)
+			this.discoveryStatus = newer.discoveryStatus;
+
+		for (int j = 0; j < newer.subscriptions.length; j++)
+		{
+			List<DiscoveredDevice> newerDiscovered = newer.discovered.get(j);
+			List<DiscoveredDevice> newerLost = newer.lost.get(j);
+			if ((newerDiscovered == null) && (newerLost == null))
+				continue;
+
+			// the listener position in this batch
+			int i = this.indexOf(newer.subscriptions[j]);
+
+			// the devices having a newer event
+			Set<Long> superseded = new HashSet<Long>();
+			DiscoveryBatch.collectAddresses(newerDiscovered, superseded);
+			DiscoveryBatch.collectAddresses(newerLost, superseded);
+
+			// drop superseded events and append the newer ones
+			this.discovered.set(i, DiscoveryBatch.merge(
+					this.discovered.get(i), superseded, newerDiscovered));
+			this.lost.set(i, DiscoveryBatch.merge(this.lost.get(i),
+					superseded, newerLost));
+			this.accepted = true;
+		}
+	}
+
+	/**
+	 * Delivers the batch to all its listeners. A failing listener does not
+	 * prevent delivery to the others.
+	 */
+	void deliver()
+	{
+		for (int i = 0; i < this.subscriptions.length; i++)
+		{
+			try
+			{
+				// the discovery status
+				if (this.discoveryStatus != null)
+					this.subscriptions[i].getListener().discoveryEnabled(
+							this.discoveryStatus.booleanValue());
+
+				// the accepted devices
+				List<DiscoveredDevice> discoveredDevices = this.discovered
+						.get(i);
+				List<DiscoveredDevice> lostDevices = this.lost.get(i);
+				if ((discoveredDevices != null) || (lostDevices != null))
+					this.subscriptions[i].getListener().discoveredDevices(
+							DiscoveryBatch.readOnly(discoveredDevices),
+							DiscoveryBatch.readOnly(lostDevices));
+			}
+			catch (RuntimeException e)
+			{
+				// go on with the next listener, as for tasks submitted to an
+				// executor service
+			}
+		}
+	}
+
+	/**
+	 * Adds the given device to the lists of the listeners accepting it
+	 * 
+	 * @param lists
+	 *            The per-listener lists
+	 * @param name
+	 *            The device name
+	 * @param address
+	 *            The device MAC address
+	 * @param rssi
+	 *            The device RSSI
+	 * @param managed
+	 *            The managed flag
+	 */
+	private void add(List<List<DiscoveredDevice>> lists, String name,
+			String address, short rssi, boolean managed)
+	{
+		// allocated at the first acceptance, shared by all the listeners
+		DiscoveredDevice device = null;
+
+		for (int i = 0; i < this.subscriptions.length; i++)
+		{
+			if (this.subscriptions[i].accept(name, address, rssi, managed))
+			{
+				if (device == null)
+					device = new DiscoveredDevice(name, address, rssi,
+							managed);
+				List<DiscoveredDevice> list = lists.get(i);
+				if (list == null)
+				{
+					list = new ArrayList<DiscoveredDevice>();
+					lists.set(i, list);
+				}
+				list.add(device);
+				this.accepted = true;
+			}
+		}
+	}
+
+	/**
+	 * Gets the position of the given listener in this batch, adding it if
+	 * not yet targeted by this batch
+	 * 
+	 * @param subscription
+	 *            The listener
+	 * @return The listener position
+	 */
+	private int indexOf(Subscription subscription)
+	{
+		for (int i = 0; i < this.subscriptions.length; i++)
+		{
+			if (this.subscriptions[i] == subscription)
+				return i;
+		}
+
+		// new listener, grow the per-listener lists
+		int i = this.subscriptions.length;
+		this.subscriptions = Arrays.copyOf(this.subscriptions, i + 1);
+		this.subscriptions[i] = subscription;
+		this.discovered.add(null);
+		this.lost.add(null);
+
+		return i;
+	}
+
+	/**
+	 * Adds the packed addresses of the given devices to the given set
+	 * 
+	 * @param devices
+	 *            The devices, possibly null
+	 * @param addresses
+	 *            The set to fill
+	 */
+	private static void collectAddresses(List<DiscoveredDevice> devices,
+			Set<Long> addresses)
+	{
+		if (devices != null)
+		{
+			for (DiscoveredDevice device : devices)
+				addresses.add(MacAddress.toLong(device.getAddress()));
+		}
+	}
+
+	/**
+	 * Removes from the given older events the superseded ones and appends
+	 * the newer events
+	 * 
+	 * @param older
+	 *            The older events, possibly null
+	 * @param superseded
+	 *            The packed addresses of the devices having newer events
+	 * @param newer
+	 *            The newer events, possibly null
+	 * @return The merged events, possibly null
+	 */
+	private static List<DiscoveredDevice> merge(List<DiscoveredDevice> older,
+			Set<Long> superseded, List<DiscoveredDevice> newer)
+	{
+		if (older != null)
+		{
+			Iterator<DiscoveredDevice> iterator = older.iterator();
+			while (iterator.hasNext())
+			{
+				if (superseded.contains(
+						MacAddress.toLong(iterator.next().getAddress())))
+					iterator.remove();
+			}
+		}
+
+		if (newer != null)
+		{
+			if (older == null)
+				older = new ArrayList<DiscoveredDevice>();
+			older.addAll(newer);
+		}
+
+		return older;
+	}
+
+	/**
+	 * Wraps the given list in a read-only view, an empty list if null
+	 * 
+	 * @param list
+	 *            The list to wrap, possibly null
+	 * @return The read-only list
+	 */
+	private static List<DiscoveredDevice> readOnly(
+			List<DiscoveredDevice> list)
+	{
+		if (list == null)
+			return Collections.emptyList();
+		return Collections.unmodifiableList(list);
+	}
+}
@@ -0,0 +1,395 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.tasks;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.doggateway.drivers.bluetooth.ble.network.info.DiscoveredDevice;
+import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLEDiscoveryBatchListener;
+import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLEDiscoveryFilter;
+import org.doggateway.drivers.bluetooth.ble.network.interfaces.BLEDiscoveryListener;
+
+/**
+ * Delivers {@link DiscoveryBatch}es to discovery listeners on a single
+ * thread, through a bounded queue. Listeners are kept in a copy-on-write
+ * list, therefore batches are built and delivered on a snapshot without
+ * holding any lock, and (un)registration never waits for delivery.
+ * 
+ * Each listener is registered together with a {@link BLEDiscoveryFilter},
+ * evaluated while the batch is built; per-device
+ * {@link BLEDiscoveryListener}s are supported by registering them with no
+ * filter.
+ * 
+ * When listeners lag behind and the queue is full, the newest batch is
+ * merged into the last pending one rather than queued (see
+ * {@link DiscoveryBatch#merge(DiscoveryBatch)}). Batches are never dropped:
+ * in incremental discovery each batch is a one-time delta of found and lost
+ * devices, and losing one would leave listeners with a diverging view of
+ * the devices in range.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class DiscoveryDispatcher
+{
+	/**
+	 * A registered listener, with its filter
+	 */
+	static class Subscription
+	{
+		// the registered object, either a batch or a per-device listener
+		private Object owner;
+
+		// the listener to notify
+		private BLEDiscoveryBatchListener listener;
+
+		// the filter, null to accept all devices
+		private BLEDiscoveryFilter filter;
+
+		/**
+		 * Builds a new subscription
+		 * 
+		 * @param owner
+		 *            The registered object
+		 * @param listener
+		 *            The listener to notify
+		 * @param filter
+		 *            The filter, null to accept all devices
+		 */
+		Subscription(Object owner, BLEDiscoveryBatchListener listener,
+				BLEDiscoveryFilter filter)
+		{
+			this.owner = owner;
+			this.listener = listener;
+			this.filter = filter;
+		}
+
+		/**
+		 * Gets the listener to notify
+		 * 
+		 * @return the listener
+		 */
+		BLEDiscoveryBatchListener getListener()
+		{
+			return listener;
+		}
+
+		/**
+		 * Checks if the given device shall be reported to the listener
+		 * 
+		 * @param name
+		 *            The device name
+		 * @param address
+		 *            The device MAC address
+		 * @param rssi
+		 *            The device RSSI
+		 * @param managed
+		 *            The managed flag
+		 * @return true if accepted, false otherwise
+		 */
+		boolean accept(String name, String address, short rssi,
+				boolean managed)
+		{
+			return (this.filter == null)
+					|| (this.filter.accept(name, address, rssi, managed));
+		}
+	}
+
+	// the maximum number of pending batches
+	public static final int DEFAULT_CAPACITY = 64;
+
+	// the keep alive time of the idle dispatching thread
+	private static final long KEEP_ALIVE_MILLIS = 60000;
+
+	// the empty set of subscriptions
+	private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+	// the registered listeners
+	private CopyOnWriteArrayList<Subscription> subscriptions;
+
+	// the single-threaded delivery executor
+	private ThreadPoolExecutor executor;
+
+	// the batches waiting for delivery, guarded by their own lock
+	private ArrayDeque<DiscoveryBatch> pending;
+
+	// the maximum number of pending batches
+	private int capacity;
+
+	// true if the delivery task is submitted or running, guarded by the
+	// pending batches lock
+	private boolean delivering;
+
+	// the task delivering pending batches, in order
+	private Runnable deliveryTask;
+
+	// the number of batches merged because of lagging listeners
+	private AtomicLong mergedBatches;
+
+	/**
+	 * Builds a new dispatcher with the default capacity
+	 */
+	public DiscoveryDispatcher()
+	{
+		this(DiscoveryDispatcher.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Builds a new dispatcher queueing at most the given number of batches
+	 * 
+	 * @param capacity
+	 *            The maximum number of pending batches, at least 1
+	 */
+	public DiscoveryDispatcher(int capacity)
+	{
+		// build inner data structures
+		this.subscriptions = new CopyOnWriteArrayList<Subscription>();
+		this.pending = new ArrayDeque<DiscoveryBatch>();
+		this.capacity = Math.max(1, capacity);
+		this.mergedBatches = new AtomicLong();
+		this.deliveryTask = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				deliverPending();
+			}
+		};
+
+		// build the executor, the thread is released when idle; at most one
+		// delivery task is queued at any time
+		this.executor = new ThreadPoolExecutor(1, 1,
+				DiscoveryDispatcher.KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>());
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Adds a per-device listener to notify about all devices
+	 * 
+	 * @param listener
+	 *            The listener to add
+	 */
+	public void addListener(final BLEDiscoveryListener listener)
+	{
+		this.subscribe(new Subscription(listener,
+				new BLEDiscoveryBatchListener()
+				{
+					@Override
+					public void discoveredDevices(
+							List<DiscoveredDevice> discovered,
+							List<DiscoveredDevice> lost)
+					{
+						for (DiscoveredDevice device : discovered)
+							listener.discoveredDevice(device.getName(),
+									device.getAddress(), device.getRssi(),
+									device.isManaged());
+						for (DiscoveredDevice device : lost)
+							listener.lostDevice(device.getAddress(),
+									device.isManaged());
+					}
+
+					@Override
+					public void discoveryEnabled(boolean enabled)
+					{
+						listener.discoveryEnabled(enabled);
+					}
+				}, null));
+	}
+
+	/**
+	 * Adds a batch listener to notify about the devices accepted by the given
+	 * filter, replacing any previous filter of the same listener
+	 * 
+	 * @param listener
+	 *            The listener to add
+	 * @param filter
+	 *            The filter, null to accept all devices
+	 */
+	public void addListener(BLEDiscoveryBatchListener listener,
+			BLEDiscoveryFilter filter)
+	{
+		this.subscribe(new Subscription(listener, listener, filter));
+	}
+
+	/**
+	 * Removes a listener, either a batch or a per-device one
+	 * 
+	 * @param listener
+	 *            The listener to remove
+	 * @return true if removed, false otherwise
+	 */
+	public synchronized boolean removeListener(Object listener)
+	{
+		for (Subscription subscription : this.subscriptions)
+		{
+			if (subscription.owner == listener)
+				return this.subscriptions.remove(subscription);
+		}
+		return false;
+	}
+
+	/**
+	 * Creates a new, empty, batch targeting the listeners currently
+	 * registered
+	 * 
+	 * @param discoveryStatus
+	 *            The discovery status to notify, or null if not changed
+	 * @return The batch
+	 */
+	public DiscoveryBatch newBatch(Boolean discoveryStatus)
+	{
+		return new DiscoveryBatch(discoveryStatus, this.subscriptions
+				.toArray(DiscoveryDispatcher.NO_SUBSCRIPTIONS));
+	}
+
+	/**
+	 * Queues the given batch for delivery, without blocking. Empty batches
+	 * are discarded, batches exceeding the capacity are merged into the last
+	 * pending one.
+	 * 
+	 * @param batch
+	 *            The batch to deliver
+	 */
+	public void dispatch(DiscoveryBatch batch)
+	{
+		if (batch.isEmpty())
+			return;
+
+		boolean submit = false;
+		synchronized (this.pending)
+		{
+			// the dispatcher has been shut down, discard the batch
+			if (this.executor.isShutdown())
+				return;
+
+			if (this.pending.size() >= this.capacity)
+			{
+				// the last pending batch is not being delivered, as batches
+				// are removed from the queue before delivery
+				this.pending.peekLast().merge(batch);
+				this.mergedBatches.incrementAndGet();
+			}
+			else
+				this.pending.addLast(batch);
+
+			// start delivering, if not already started
+			if (!this.delivering)
+			{
+				this.delivering = true;
+				submit = true;
+			}
+		}
+
+		if (submit)
+		{
+			try
+			{
+				this.executor.execute(this.deliveryTask);
+			}
+			catch (RejectedExecutionException e)
+			{
+				// the dispatcher has been shut down, discard pending batches
+				synchronized (this.pending)
+				{
+					this.pending.clear();
+					this.delivering = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of batches merged into pending ones because listeners
+	 * lagged behind
+	 * 
+	 * @return the number of merged batches
+	 */
+	public long getMergedBatches()
+	{
+		return this.mergedBatches.get();
+	}
+
+	/**
+	 * Gets the number of batches waiting for delivery
+	 * 
+	 * @return the number of pending batches
+	 */
+	public int getPendingBatches()
+	{
+		synchronized (this.pending)
+		{
+			return this.pending.size();
+		}
+	}
+
+	/**
+	 * Stops the dispatcher, pending batches are discarded
+	 */
+	public void shutdown()
+	{
+		synchronized (this.pending)
+		{
+			this.executor.shutdownNow();
+			this.pending.clear();
+		}
+	}
+
+	/**
+	 * Delivers the pending batches, in order, until none is left
+	 */
+	private void deliverPending()
+	{
+		while (true)
+		{
+			// take the oldest batch, before delivering it
+			DiscoveryBatch batch;
+			synchronized (this.pending)
+			{
+				batch = this.pending.pollFirst();
+				if ((batch == null) || (this.executor.isShutdown()))
+				{
+					this.delivering = false;
+					return;
+				}
+			}
+
+			batch.deliver();
+		}
+	}
+
+	/**
+	 * Registers the given subscription, replacing any previous subscription
+	 * of the same listener
+	 * 
+	 * @param subscription
+	 *            The subscription to register
+	 */
+	private synchronized void subscribe(Subscription subscription)
+	{
+		this.removeListener(subscription.owner);
+		this.subscriptions.add(subscription);
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.doggateway.drivers.bluetooth.ble.network.info.MacAddress;
+import org.doggateway.drivers.bluetooth.ble.network.info.MacAddressMap;
+
+/**
+ * Keeps the table of devices seen in the last discovery attempt and computes,
+ * at each attempt, the difference with the previous one: devices seen for the
+ * first time, devices whose RSSI changed by at least a given threshold since
+ * last reported, and devices not seen anymore. Devices are keyed by packed
+ * MAC address, each attempt costs time proportional to the number of
+ * devices in range, while the number of reported changes only depends on the
+ * churn.
+ * 
+ * Not thread-safe, meant to be used by the discovery thread only.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class DiscoveryTracker
+{
+	/**
+	 * A device seen during discovery
+	 */
+	public static class SeenDevice
+	{
+		// the device name
+		private String name;
+
+		// the device MAC address
+		private String address;
+
+		// the device MAC address, packed into a long
+		private long macAddress;
+
+		// the RSSI last reported to listeners
+		private short reportedRssi;
+
+		// the attempt in which the device has been seen for the last time
+		private long lastSeenAttempt;
+
+		/**
+		 * Builds a new seen device
+		 * 
+		 * @param macAddress
+		 *            The packed device MAC address
+		 * @param name
+		 *            The device name
+		 * @param address
+		 *            The device MAC address
+		 * @param rssi
+		 *            The device RSSI
+		 */
+		private SeenDevice(long macAddress, String name, String address,
+				short rssi)
+		{
+			this.macAddress = macAddress;
+			this.name = name;
+			this.address = address;
+			this.reportedRssi = rssi;
+		}
+
+		/**
+		 * Gets the device name
+		 * 
+		 * @return the name
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * Gets the device MAC address
+		 * 
+		 * @return the address
+		 */
+		public String getAddress()
+		{
+			return address;
+		}
+
+		/**
+		 * Gets the device MAC address, packed into a long
+		 * 
+		 * @return the packed address
+		 */
+		public long getMacAddress()
+		{
+			return macAddress;
+		}
+
+		/**
+		 * Gets the RSSI last reported for the device
+		 * 
+		 * @return the RSSI
+		 */
+		public short getRssi()
+		{
+			return reportedRssi;
+		}
+	}
+
+	// the devices seen so far, keyed by packed MAC address
+	private MacAddressMap<SeenDevice> seen;
+
+	// the current attempt
+	private long attempt;
+
+	// the changes detected in the current attempt
+	private List<SeenDevice> found;
+	private List<SeenDevice> changed;
+	private List<SeenDevice> lost;
+
+	/**
+	 * Builds a new, empty, tracker
+	 */
+	public DiscoveryTracker()
+	{
+		this.seen = new MacAddressMap<SeenDevice>();
+		this.found = new ArrayList<SeenDevice>();
+		this.changed = new ArrayList<SeenDevice>();
+		this.lost = new ArrayList<SeenDevice>();
+	}
+
+	/**
+	 * Starts a new discovery attempt, clearing the changes detected in the
+	 * previous one
+	 */
+	public void beginAttempt()
+	{
+		this.attempt++;
+		this.found.clear();
+		this.changed.clear();
+		this.lost.clear();
+	}
+
+	/**
+	 * Records a device seen in the current attempt, devices with an invalid
+	 * MAC address cannot be tracked and are ignored
+	 * 
+	 * @param macAddress
+	 *            The packed device MAC address
+	 * @param name
+	 *            The device name
+	 * @param address
+	 *            The device MAC address
+	 * @param rssi
+	 *            The current device RSSI
+	 * @param rssiThreshold
+	 *            The minimum RSSI change, in dBm, to be reported
+	 */
+	public void seen(long macAddress, String name, String address, short rssi,
+			int rssiThreshold)
+	{
+		if (!MacAddress.isValid(macAddress))
+			return;
+
+		SeenDevice device = this.seen.get(macAddress);
+
+		if (device == null)
+		{
+			// new device
+			device = new SeenDevice(macAddress, name, address, rssi);
+			this.seen.put(macAddress, device);
+			this.found.add(device);
+		}
+		else if (Math.abs(rssi - device.reportedRssi) >= rssiThreshold)
+		{
+			// significant RSSI change
+			device.reportedRssi = rssi;
+			device.name = name;
+			this.changed.add(device);
+		}
+
+		device.lastSeenAttempt = this.attempt;
+	}
+
+	/**
+	 * Ends the current attempt, detecting devices which have not been seen
+	 */
+	public void endAttempt()
+	{
+		// values are a copy, devices can be removed while scanning
+		for (SeenDevice device : this.seen.values())
+		{
+			if (device.lastSeenAttempt != this.attempt)
+			{
+				this.seen.remove(device.macAddress);
+				this.lost.add(device);
+			}
+		}
+	}
+
+	/**
+	 * Clears the table of seen devices, the next attempt will report all the
+	 * devices in range as new
+	 */
+	public void reset()
+	{
+		this.seen.clear();
+	}
+
+	/**
+	 * Gets the devices seen for the first time in the current attempt
+	 * 
+	 * @return the found devices
+	 */
+	public List<SeenDevice> getFound()
+	{
+		return found;
+	}
+
+	/**
+	 * Gets the devices whose RSSI significantly changed in the current
+	 * attempt
+	 * 
+	 * @return the changed devices
+	 */
+	public List<SeenDevice> getChanged()
+	{
+		return changed;
+	}
+
+	/**
+	 * Gets the devices not seen anymore in the current attempt
+	 * 
+	 * @return the lost devices
+	 */
+	public List<SeenDevice> getLost()
+	{
+		return lost;
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.tasks;
+
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.doggateway.drivers.bluetooth.ble.network.info.MacAddress;
+
+/**
+ * Dispatches value notifications to driver instances on a configurable
+ * number of ordered lanes. Each notification is hashed, by device MAC
+ * address, onto one lane: notifications of the same device are delivered in
+ * submission order, while notifications of unrelated devices are delivered in
+ * parallel, one thread per lane at most, so that a slow driver instance only
+ * delays the devices sharing its lane.
+ * 
+ * Lanes are {@link DeviceOperationQueue}s sharing a single pool whose size
+ * follows the number of lanes.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class DispatchLanes
+{
+	// the keep alive time of idle dispatching threads
+	private static final long KEEP_ALIVE_MILLIS = 60000;
+
+	// the pool running the lanes
+	private ThreadPoolExecutor pool;
+
+	// the lanes
+	private volatile DeviceOperationQueue[] lanes;
+
+	/**
+	 * Builds a new dispatcher with the given number of lanes
+	 * 
+	 * @param laneCount
+	 *            The number of lanes, at least 1
+	 */
+	public DispatchLanes(int laneCount)
+	{
+		// build the pool, idle threads are released after the keep alive time
+		this.pool = new ThreadPoolExecutor(laneCount, laneCount,
+				DispatchLanes.KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>());
+		this.pool.allowCoreThreadTimeOut(true);
+
+		// build the lanes
+		this.lanes = this.createLanes(laneCount);
+	}
+
+	/**
+	 * Dispatches the given task on the lane of the device having the given MAC
+	 * address
+	 * 
+	 * @param macAddress
+	 *            The MAC address of the device originating the task, packed
+	 *            into a long (see {@link MacAddress#toLong(String)})
+	 * @param task
+	 *            The task to dispatch
+	 */
+	public void execute(long macAddress, Runnable task)
+	{
+		// failures of a driver instance shall not affect the lane, as for
+		// tasks submitted to an executor service
+		DeviceOperationQueue[] currentLanes = this.lanes;
+		currentLanes[DispatchLanes.laneOf(macAddress,
+				currentLanes.length)].execute(new FutureTask<Void>(task, null));
+	}
+
+	/**
+	 * Changes the number of lanes. Tasks already dispatched complete on their
+	 * previous lane, therefore ordering is only guaranteed for tasks
+	 * dispatched after the change; the lane count is expected to change
+	 * rarely, e.g., at configuration time.
+	 * 
+	 * @param laneCount
+	 *            The new number of lanes, at least 1
+	 */
+	public synchronized void setLaneCount(int laneCount)
+	{
+		if (laneCount != this.lanes.length)
+		{
+			// the maximum pool size can never be lower than the core size
+			if (laneCount > this.pool.getMaximumPoolSize())
+			{
+				this.pool.setMaximumPoolSize(laneCount);
+				this.pool.setCorePoolSize(laneCount);
+			}
+			else
+			{
+				this.pool.setCorePoolSize(laneCount);
+				this.pool.setMaximumPoolSize(laneCount);
+			}
+
+			// replace the lanes
+			this.lanes = this.createLanes(laneCount);
+		}
+	}
+
+	/**
+	 * Gets the number of lanes
+	 * 
+	 * @return the lane count
+	 */
+	public int getLaneCount()
+	{
+		return this.lanes.length;
+	}
+
+	/**
+	 * Gets the number of tasks waiting for being dispatched, over all the
+	 * lanes
+	 * 
+	 * @return the queue depth
+	 */
+	public int getQueueDepth()
+	{
+		int depth = 0;
+		for (DeviceOperationQueue lane : this.lanes)
+			depth += lane.getPendingOperations();
+		return depth;
+	}
+
+	/**
+	 * Stops the dispatcher, tasks not yet dispatched are dropped
+	 */
+	public void shutdown()
+	{
+		this.pool.shutdownNow();
+	}
+
+	/**
+	 * Builds the given number of lanes, on the dispatching pool
+	 * 
+	 * @param laneCount
+	 *            The number of lanes
+	 * @return The lanes
+	 */
+	private DeviceOperationQueue[] createLanes(int laneCount)
+	{
+		DeviceOperationQueue[] newLanes = new DeviceOperationQueue[laneCount];
+		for (int i = 0; i < laneCount; i++)
+			newLanes[i] = new DeviceOperationQueue(this.pool);
+		return newLanes;
+	}
+
+	/**
+	 * Computes the lane of the device having the given packed MAC address
+	 * 
+	 * @param macAddress
+	 *            The packed device MAC address, possibly invalid
+	 * @param laneCount
+	 *            The number of lanes
+	 * @return The lane index
+	 */
+	private static int laneOf(long macAddress, int laneCount)
+	{
+		// spread the hash bits, as MAC addresses of the same vendor share
+		// their prefix
+		return (MacAddress.hash(macAddress) & Integer.MAX_VALUE) % laneCount;
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.tasks;
+
+import java.util.List;
+
+/**
+ * Dispatches a batch of values, typically read in a single GATT session, to
+ * the corresponding driver instances, in batch order.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class NotifyBatchTask implements Runnable
+{
+	// the notifications to deliver
+	private List<NotifyValueTask> batch;
+
+	public NotifyBatchTask(List<NotifyValueTask> batch)
+	{
+		// store the batch
+		this.batch = batch;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run()
+	{
+		// the first failure of a driver instance, if any
+		RuntimeException failure = null;
+
+		// deliver all the notifications in order, a failing driver instance
+		// shall not prevent the delivery of the remaining notifications,
+		// which would otherwise leave their dispatch slots pending forever
+		for (NotifyValueTask notification : this.batch)
+		{
+			try
+			{
+				notification.run();
+			}
+			catch (RuntimeException e)
+			{
+				if (failure == null)
+					failure = e;
+			}
+		}
+
+		// report the failure, as for single notifications
+		if (failure != null)
+			throw failure;
+	}
+
+}
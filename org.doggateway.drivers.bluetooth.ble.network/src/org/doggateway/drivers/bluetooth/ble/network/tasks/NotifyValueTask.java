@@ -18,6 +18,9 @@
 package org.doggateway.drivers.bluetooth.ble.network.tasks;
 
 import org.doggateway.drivers.bluetooth.ble.network.BLEDriverInstance;
+import org.doggateway.drivers.bluetooth.ble.network.ValueBufferPool;
+import org.doggateway.drivers.bluetooth.ble.network.ValueBufferPool.PooledBuffer;
+import org.doggateway.drivers.bluetooth.ble.network.info.DispatchSlot;
 
 /**
  * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
@@ -36,6 +39,12 @@ public class NotifyValueTask implements Runnable
 	
 	//the sriver instance to which the value shall be dispatched
 	private BLEDriverInstance drvInstance;
+
+	// the slot holding the value to dispatch, if any, read at dispatching time
+	private DispatchSlot slot;
+
+	// the pool of buffers used to deliver values as byte buffers, if any
+	private ValueBufferPool bufferPool;
 	
 	
 	public NotifyValueTask(String characteristicUUID, String serviceUUID,
@@ -48,6 +57,34 @@ public class NotifyValueTask implements Runnable
 		this.drvInstance = drvInstance;
 	}
 
+	/**
+	 * Builds a task dispatching the newest value held by the given slot at
+	 * the time the task runs
+	 * 
+	 * @param characteristicUUID
+	 *            The UUID of the characteristic
+	 * @param serviceUUID
+	 *            The UUID of the service owning the characteristic
+	 * @param slot
+	 *            The slot holding the value to dispatch
+	 * @param drvInstance
+	 *            The driver instance to which the value shall be dispatched
+	 * @param bufferPool
+	 *            The pool of buffers through which values are delivered to
+	 *            driver instances supporting byte buffers
+	 */
+	public NotifyValueTask(String characteristicUUID, String serviceUUID,
+			DispatchSlot slot, BLEDriverInstance drvInstance,
+			ValueBufferPool bufferPool)
+	{
+		// store the values
+		this.characteristicUUID = characteristicUUID;
+		this.serviceUUID = serviceUUID;
+		this.slot = slot;
+		this.drvInstance = drvInstance;
+		this.bufferPool = bufferPool;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -56,8 +93,38 @@ public class NotifyValueTask implements Runnable
 	@Override
 	public void run()
 	{
-		//dispatch to the usual event handling method on driver instances...
-		this.drvInstance.newMessageFromHouse(this.characteristicUUID, this.serviceUUID, this.value);
+		// get the freshest value
+		byte[] currentValue = (this.slot != null) ? this.slot.take()
+				: this.value;
+
+		// check not null
+		if (currentValue != null)
+		{
+			if ((this.bufferPool != null)
+					&& (this.drvInstance.isBufferDeliverySupported()))
+			{
+				// deliver a read-only view of a recycled buffer, valid for
+				// the duration of the call only
+				PooledBuffer buffer = this.bufferPool
+						.acquire(currentValue.length);
+				try
+				{
+					this.drvInstance.newMessageFromHouse(
+							this.characteristicUUID, this.serviceUUID,
+							buffer.fill(currentValue));
+				}
+				finally
+				{
+					this.bufferPool.release(buffer);
+				}
+			}
+			else
+			{
+				//dispatch to the usual event handling method on driver instances...
+				this.drvInstance.newMessageFromHouse(this.characteristicUUID,
+						this.serviceUUID, currentValue);
+			}
+		}
 	}
 
 }
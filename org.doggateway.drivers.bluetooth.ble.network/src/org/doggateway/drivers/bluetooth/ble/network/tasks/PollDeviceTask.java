@@ -0,0 +1,216 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.tasks;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.doggateway.drivers.bluetooth.ble.network.BLEGattSession;
+import org.doggateway.drivers.bluetooth.ble.network.BLENetworkDriverImpl;
+import org.doggateway.drivers.bluetooth.ble.network.info.LatencyStats.Metric;
+import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothCharacteristic;
+import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothDevice;
+import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothService;
+import org.osgi.service.log.LogService;
+
+/**
+ * A task polling all the due characteristics of a managed device in a single
+ * {@link BLEGattSession}: the device is connected once, characteristics are
+ * read back-to-back, across services, and read values are dispatched as one
+ * batch. Characteristics delivered by notifications are not read: the task
+ * only (re-)subscribes them, if needed. Polled characteristics are then
+ * re-scheduled for the next poll. Tasks are run on the device
+ * {@link DeviceOperationQueue}.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class PollDeviceTask implements Runnable
+{
+	// the driver
+	private BLENetworkDriverImpl theDriver;
+
+	// the schedule in which characteristics shall be re-inserted
+	private PollingSchedule schedule;
+
+	// the device to poll
+	private ManagedBluetoothDevice device;
+
+	// the characteristics to poll
+	private List<ManagedBluetoothCharacteristic> characteristics;
+
+	// the time at which the characteristics have been taken from the
+	// schedule, in nanoseconds
+	private long takenNanos;
+
+	/**
+	 * Class constructor, collects the data needed to poll the given
+	 * characteristics
+	 * 
+	 * @param theDriver
+	 *            The network driver
+	 * @param schedule
+	 *            The polling schedule
+	 * @param device
+	 *            The device to poll
+	 * @param characteristics
+	 *            The characteristics to poll, all belonging to the given
+	 *            device
+	 * @param takenNanos
+	 *            The time at which the characteristics have been taken from
+	 *            the schedule, as given by {@link System#nanoTime()}
+	 */
+	public PollDeviceTask(BLENetworkDriverImpl theDriver,
+			PollingSchedule schedule, ManagedBluetoothDevice device,
+			List<ManagedBluetoothCharacteristic> characteristics,
+			long takenNanos)
+	{
+		// store the values
+		this.theDriver = theDriver;
+		this.schedule = schedule;
+		this.device = device;
+		this.characteristics = characteristics;
+		this.takenNanos = takenNanos;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run()
+	{
+		try
+		{
+			// the values read in this session
+			Map<ManagedBluetoothCharacteristic, byte[]> values = new LinkedHashMap<ManagedBluetoothCharacteristic, byte[]>();
+
+			synchronized (this.device)
+			{
+				// connect once for all the characteristics
+				BLEGattSession session = this.theDriver
+						.openSession(this.device);
+
+				for (ManagedBluetoothCharacteristic characteristic : this.characteristics)
+				{
+					// get the owning service, null if no more monitored
+					ManagedBluetoothService service = characteristic
+							.getService();
+					if (service == null)
+						continue;
+
+					// characteristics delivered by notifications or
+					// indications are only checked for an active
+					// subscription, values are pushed by the device
+					boolean subscribed = (characteristic
+							.isNotificationRequired())
+							&& (session.subscribe(service, characteristic));
+
+					// fall back to polling if not subscribed
+					if (!subscribed)
+					{
+						// check the actual read time against the deadline
+						this.checkJitter(characteristic);
+
+						// failed reads are not dispatched
+						byte[] value = session.read(service, characteristic);
+						this.theDriver.getMetrics()
+								.pollAttempted(value != null);
+						if (value != null)
+						{
+							values.put(characteristic, value);
+
+							// track the end-to-end poll latency, characteristics
+							// piggybacked before their deadline are measured
+							// from the time they have been taken
+							long deadline = characteristic.getNextPollDueNanos();
+							long pollStart = (deadline - this.takenNanos > 0)
+									? this.takenNanos : deadline;
+							long pollLatency = System.nanoTime() - pollStart;
+							this.theDriver.getLatencyStats().record(
+									this.device.getDeviceMacAddress(),
+									characteristic.getCharacteristicUUID(),
+									Metric.POLL, pollLatency);
+							this.theDriver.getMetrics()
+									.pollCompleted(pollLatency);
+						}
+					}
+
+					// adjust last read time stamp, at the actual read time
+					long time = System.currentTimeMillis();
+					characteristic.setLastPollFromEpoch(time);
+					service.setLastPollFromEpoch(time);
+					this.device.setLastPollFromEpoch(time);
+				}
+			}
+
+			// dispatch the results as one batch
+			this.theDriver.notifyNewValues(values);
+		}
+		finally
+		{
+			for (ManagedBluetoothCharacteristic characteristic : this.characteristics)
+			{
+				// the poll is over
+				characteristic.setPollPending(false);
+
+				// schedule the next poll
+				this.schedule.schedule(characteristic);
+			}
+		}
+	}
+
+	/**
+	 * Measures the jitter between the current time and the deadline of the
+	 * given characteristic, warning when the allowed jitter is exceeded for
+	 * the first time after a compliant read.
+	 * 
+	 * @param characteristic
+	 *            The characteristic about to be read
+	 */
+	private void checkJitter(ManagedBluetoothCharacteristic characteristic)
+	{
+		// the allowed jitter, in nanoseconds
+		long allowedJitterNanos = TimeUnit.MILLISECONDS
+				.toNanos(characteristic.getPollingTimeMillis())
+				* this.theDriver.getAllowedTimeJitter() / 100;
+
+		// was the previous read compliant?
+		boolean wasCompliant = Math.abs(
+				characteristic.getLastJitterNanos()) <= allowedJitterNanos;
+
+		// measure
+		long jitterNanos = System.nanoTime()
+				- characteristic.getNextPollDueNanos();
+		if ((characteristic.recordJitter(jitterNanos, allowedJitterNanos))
+				&& (wasCompliant))
+		{
+			this.theDriver.getLogger().log(LogService.LOG_WARNING,
+					"Characteristic " + characteristic.getCharacteristicUUID()
+							+ " of device " + this.device.getDeviceMacAddress()
+							+ " read " + TimeUnit.NANOSECONDS.toMillis(jitterNanos)
+							+ " ms away from its deadline, exceeding the allowed jitter of "
+							+ TimeUnit.NANOSECONDS.toMillis(allowedJitterNanos)
+							+ " ms");
+		}
+	}
+
+}
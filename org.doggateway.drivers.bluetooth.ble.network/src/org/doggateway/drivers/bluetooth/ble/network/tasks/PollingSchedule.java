@@ -0,0 +1,469 @@
+/*
+ * Dog - Bluetooth Low Energy Network Driver
+ * 
+ * Copyright (c) 2016 Dario Bonino 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package org.doggateway.drivers.bluetooth.ble.network.tasks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothCharacteristic;
+import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothDevice;
+import org.doggateway.drivers.bluetooth.ble.network.info.ManagedBluetoothService;
+
+/**
+ * A deadline-ordered schedule of {@link ManagedBluetoothCharacteristic}
+ * instances to poll. Characteristics are kept in a binary heap ordered by
+ * their next due time, therefore the polling thread can sleep exactly until
+ * the next deadline and, when woken up, only touches the characteristics
+ * which are actually due. Each characteristic stores its own heap position
+ * (see {@link ManagedBluetoothCharacteristic#getScheduleIndex()}), thus
+ * re-scheduling and removing a characteristic take logarithmic time.
+ * Scheduled characteristics are also indexed by device, so that the
+ * characteristics of a device can be collected without scanning the whole
+ * schedule.
+ * 
+ * Deadlines are expressed on the monotonic clock ({@link System#nanoTime()}),
+ * thus they are not affected by wall-clock adjustments, and follow fixed-rate
+ * semantics: each deadline is computed from the previous one, not from the
+ * end of the previous read, so that time spent reading does not accumulate
+ * as drift.
+ * 
+ * @author <a href="mailto:dario.bonino@gmail.com">Dario Bonino</a>
+ * 
+ */
+public class PollingSchedule
+{
+	// the initial capacity of the schedule heap
+	private static final int INITIAL_CAPACITY = 64;
+
+	// the characteristics to poll, as a binary heap ordered by next due time
+	private ManagedBluetoothCharacteristic[] heap;
+
+	// the number of scheduled characteristics
+	private int size;
+
+	// the scheduled characteristics, indexed by owning device
+	private HashMap<ManagedBluetoothDevice, List<ManagedBluetoothCharacteristic>> byDevice;
+
+	// the device under which each scheduled characteristic is indexed, as
+	// the owning service might be detached while scheduled
+	private HashMap<ManagedBluetoothCharacteristic, ManagedBluetoothDevice> owners;
+
+	/**
+	 * Builds a new, empty, polling schedule
+	 */
+	public PollingSchedule()
+	{
+		// build the heap
+		this.heap = new ManagedBluetoothCharacteristic[PollingSchedule.INITIAL_CAPACITY];
+
+		// build the device index
+		this.byDevice = new HashMap<ManagedBluetoothDevice, List<ManagedBluetoothCharacteristic>>();
+		this.owners = new HashMap<ManagedBluetoothCharacteristic, ManagedBluetoothDevice>();
+	}
+
+	/**
+	 * Schedules the given characteristic at its next fixed-rate deadline, one
+	 * polling time after its previous deadline. Deadlines missed in the
+	 * meanwhile (e.g., because of slow reads) are skipped, rather than
+	 * polled in a burst, preserving the polling phase. The deadline is
+	 * computed under the schedule lock, thus concurrent re-schedules never
+	 * lose an update.
+	 * 
+	 * @param characteristic
+	 *            The characteristic to schedule
+	 */
+	public synchronized void schedule(
+			ManagedBluetoothCharacteristic characteristic)
+	{
+		// the polling period
+		long periodNanos = TimeUnit.MILLISECONDS
+				.toNanos(characteristic.getPollingTimeMillis());
+
+		// next fixed-rate deadline
+		long now = System.nanoTime();
+		long dueTime = characteristic.getNextPollDueNanos() + periodNanos;
+
+		// skip missed deadlines
+		if ((periodNanos > 0) && (dueTime - now < 0))
+			dueTime += ((now - dueTime) / periodNanos + 1) * periodNanos;
+
+		this.schedule(characteristic, dueTime);
+	}
+
+	/**
+	 * Adds the given characteristic to the schedule, typically upon
+	 * registration. New characteristics are due immediately, characteristics
+	 * already scheduled are moved earlier if their (possibly shortened)
+	 * polling time requires so. Characteristics whose poll is pending are
+	 * re-scheduled at poll completion.
+	 * 
+	 * @param characteristic
+	 *            The characteristic to add
+	 */
+	public synchronized void add(ManagedBluetoothCharacteristic characteristic)
+	{
+		long now = System.nanoTime();
+
+		if (characteristic.getScheduleIndex() >= 0)
+		{
+			// account for polling time changes
+			long dueTime = now + TimeUnit.MILLISECONDS
+					.toNanos(characteristic.getPollingTimeMillis());
+			if (dueTime - characteristic.getNextPollDueNanos() < 0)
+				this.schedule(characteristic, dueTime);
+		}
+		else if (!characteristic.isPollPending())
+		{
+			// new characteristic, poll as soon as possible
+			this.schedule(characteristic, now);
+		}
+	}
+
+	/**
+	 * Schedules the given characteristic for being polled at the given
+	 * monotonic time, in nanoseconds (see {@link System#nanoTime()}). If the
+	 * characteristic is already scheduled, it is moved to the new due time.
+	 * 
+	 * @param characteristic
+	 *            The characteristic to schedule
+	 * @param dueTime
+	 *            The time at which the characteristic shall be polled
+	 */
+	public synchronized void schedule(
+			ManagedBluetoothCharacteristic characteristic, long dueTime)
+	{
+		// store the new due time
+		characteristic.setNextPollDueNanos(dueTime);
+
+		int index = characteristic.getScheduleIndex();
+		if (index < 0)
+		{
+			// enqueue, growing the heap if needed
+			if (this.size == this.heap.length)
+				this.heap = Arrays.copyOf(this.heap, this.heap.length * 2);
+			this.heap[this.size] = characteristic;
+			characteristic.setScheduleIndex(this.size);
+			this.size++;
+			this.siftUp(this.size - 1);
+
+			// index by device
+			this.index(characteristic);
+		}
+		else
+		{
+			// move the entry in place, towards the root or the leaves
+			this.siftDown(this.siftUp(index));
+		}
+
+		// wake up any thread waiting for the next deadline, as it might have
+		// changed
+		this.notifyAll();
+	}
+
+	/**
+	 * Removes the given characteristic from the schedule
+	 * 
+	 * @param characteristic
+	 *            The characteristic to remove
+	 * @return true if the characteristic was scheduled, false otherwise
+	 */
+	public synchronized boolean unschedule(
+			ManagedBluetoothCharacteristic characteristic)
+	{
+		int index = characteristic.getScheduleIndex();
+		if (index < 0)
+			return false;
+
+		this.removeAt(index);
+		return true;
+	}
+
+	/**
+	 * Waits until at least one characteristic is due and provides back all
+	 * the characteristics due at that time, in deadline order. Returned
+	 * characteristics are removed from the schedule and shall be re-scheduled
+	 * by the caller after being polled.
+	 * 
+	 * @return The list of due characteristics, never empty
+	 * @throws InterruptedException
+	 *             if the calling thread is interrupted while waiting
+	 */
+	public synchronized List<ManagedBluetoothCharacteristic> awaitDue()
+			throws InterruptedException
+	{
+		// the time at which the due check is performed
+		long now = System.nanoTime();
+
+		// wait for the first deadline
+		ManagedBluetoothCharacteristic head = this.peek();
+		while ((head == null) || (head.getNextPollDueNanos() - now > 0))
+		{
+			if (head == null)
+			{
+				// nothing to poll, wait for new schedules
+				this.wait();
+			}
+			else
+			{
+				// wait exactly until the next deadline, or until a new, more
+				// urgent, schedule is added
+				TimeUnit.NANOSECONDS.timedWait(this,
+						head.getNextPollDueNanos() - now);
+			}
+
+			// re-check
+			now = System.nanoTime();
+			head = this.peek();
+		}
+
+		// collect all the due characteristics
+		List<ManagedBluetoothCharacteristic> due = new ArrayList<ManagedBluetoothCharacteristic>();
+		while ((head != null) && (head.getNextPollDueNanos() - now <= 0))
+		{
+			this.removeAt(0);
+			due.add(head);
+			head = this.peek();
+		}
+
+		return due;
+	}
+
+	/**
+	 * Removes from the schedule, and provides back, all the characteristics
+	 * of the given device falling due within their allowed jitter window,
+	 * i.e., not later than the given monotonic time plus the given percentage
+	 * of their polling time. This allows to poll them together with characteristics of
+	 * the same device which are already due.
+	 * 
+	 * @param device
+	 *            The device whose characteristics shall be collected
+	 * @param now
+	 *            The current monotonic time, in nanoseconds
+	 * @param jitterPercentage
+	 *            The allowed jitter, as percentage of the polling time
+	 * @return The list of collected characteristics, possibly empty
+	 */
+	public synchronized List<ManagedBluetoothCharacteristic> takeDueWithinJitter(
+			ManagedBluetoothDevice device, long now, int jitterPercentage)
+	{
+		List<ManagedBluetoothCharacteristic> due = new ArrayList<ManagedBluetoothCharacteristic>();
+
+		// the characteristics of the device, only
+		List<ManagedBluetoothCharacteristic> deviceCharacteristics = this.byDevice
+				.get(device);
+		if (deviceCharacteristics == null)
+			return due;
+
+		for (ManagedBluetoothCharacteristic characteristic : deviceCharacteristics)
+		{
+			ManagedBluetoothService service = characteristic.getService();
+
+			// check the owning device and the jitter window
+			if ((service != null) && (service.getDevice() == device)
+					&& (characteristic.getNextPollDueNanos()
+							- now <= TimeUnit.MILLISECONDS.toNanos(
+									characteristic.getPollingTimeMillis())
+									* jitterPercentage / 100))
+				due.add(characteristic);
+		}
+
+		// remove the collected characteristics, heap positions and the
+		// device index change at each removal
+		for (ManagedBluetoothCharacteristic characteristic : due)
+			this.removeAt(characteristic.getScheduleIndex());
+
+		return due;
+	}
+
+	/**
+	 * Gets the number of characteristics currently scheduled
+	 * 
+	 * @return the number of scheduled characteristics
+	 */
+	public synchronized int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Gets the characteristic due first, without removing it
+	 * 
+	 * @return the characteristic due first, or null if the schedule is empty
+	 */
+	private ManagedBluetoothCharacteristic peek()
+	{
+		return (this.size > 0) ? this.heap[0] : null;
+	}
+
+	/**
+	 * Removes the characteristic at the given heap position
+	 * 
+	 * @param index
+	 *            The heap position
+	 */
+	private void removeAt(int index)
+	{
+		ManagedBluetoothCharacteristic removed = this.heap[index];
+		removed.setScheduleIndex(-1);
+		this.unindex(removed);
+
+		// move the last entry into the hole and restore the heap order
+		this.size--;
+		ManagedBluetoothCharacteristic last = this.heap[this.size];
+		this.heap[this.size] = null;
+		if (index < this.size)
+		{
+			this.place(last, index);
+			this.siftDown(this.siftUp(index));
+		}
+	}
+
+	/**
+	 * Indexes the given, newly scheduled, characteristic by its owning
+	 * device, if any
+	 * 
+	 * @param characteristic
+	 *            The characteristic
+	 */
+	private void index(ManagedBluetoothCharacteristic characteristic)
+	{
+		ManagedBluetoothService service = characteristic.getService();
+		ManagedBluetoothDevice device = (service != null) ? service.getDevice()
+				: null;
+		if (device == null)
+			return;
+
+		List<ManagedBluetoothCharacteristic> deviceCharacteristics = this.byDevice
+				.get(device);
+		if (deviceCharacteristics == null)
+		{
+			deviceCharacteristics = new ArrayList<ManagedBluetoothCharacteristic>();
+			this.byDevice.put(device, deviceCharacteristics);
+		}
+		deviceCharacteristics.add(characteristic);
+		this.owners.put(characteristic, device);
+	}
+
+	/**
+	 * Removes the given, no more scheduled, characteristic from the device
+	 * index, in time proportional to the number of characteristics of its
+	 * device
+	 * 
+	 * @param characteristic
+	 *            The characteristic
+	 */
+	private void unindex(ManagedBluetoothCharacteristic characteristic)
+	{
+		ManagedBluetoothDevice device = this.owners.remove(characteristic);
+		if (device == null)
+			return;
+
+		List<ManagedBluetoothCharacteristic> deviceCharacteristics = this.byDevice
+				.get(device);
+		if (deviceCharacteristics != null)
+		{
+			deviceCharacteristics.remove(characteristic);
+			if (deviceCharacteristics.isEmpty())
+				this.byDevice.remove(device);
+		}
+	}
+
+	/**
+	 * Moves the entry at the given position towards the root while it is due
+	 * before its parent
+	 * 
+	 * @param index
+	 *            The entry position
+	 * @return The final entry position
+	 */
+	private int siftUp(int index)
+	{
+		ManagedBluetoothCharacteristic entry = this.heap[index];
+		while (index > 0)
+		{
+			int parent = (index - 1) >>> 1;
+			if (!PollingSchedule.isBefore(entry, this.heap[parent]))
+				break;
+			this.place(this.heap[parent], index);
+			index = parent;
+		}
+		this.place(entry, index);
+
+		return index;
+	}
+
+	/**
+	 * Moves the entry at the given position towards the leaves while one of
+	 * its children is due before it
+	 * 
+	 * @param index
+	 *            The entry position
+	 */
+	private void siftDown(int index)
+	{
+		ManagedBluetoothCharacteristic entry = this.heap[index];
+		int half = this.size >>> 1;
+		while (index < half)
+		{
+			// the child due first
+			int child = 2 * index + 1;
+			int right = child + 1;
+			if ((right < this.size) && (PollingSchedule
+					.isBefore(this.heap[right], this.heap[child])))
+				child = right;
+
+			if (!PollingSchedule.isBefore(this.heap[child], entry))
+				break;
+			this.place(this.heap[child], index);
+			index = child;
+		}
+		this.place(entry, index);
+	}
+
+	/**
+	 * Stores the given entry at the given heap position
+	 * 
+	 * @param entry
+	 *            The entry
+	 * @param index
+	 *            The heap position
+	 */
+	private void place(ManagedBluetoothCharacteristic entry, int index)
+	{
+		this.heap[index] = entry;
+		entry.setScheduleIndex(index);
+	}
+
+	/**
+	 * Overflow-safe comparison of the due times of the given characteristics
+	 * 
+	 * @param c1
+	 *            The first characteristic
+	 * @param c2
+	 *            The second characteristic
+	 * @return true if the first characteristic is due before the second one
+	 */
+	private static boolean isBefore(ManagedBluetoothCharacteristic c1,
+			ManagedBluetoothCharacteristic c2)
+	{
+		return c1.getNextPollDueNanos() - c2.getNextPollDueNanos() < 0;
+	}
+}